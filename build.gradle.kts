@@ -39,6 +39,9 @@ tasks.named("buildPlugin") {
 dependencies {
     val lg4j_version = "0.36.2"
 
+    // The platform-independent completion core, see core/
+    implementation(project(":core"))
+
     // TDG : Add Log4j dependencies
     implementation("org.apache.logging.log4j:log4j-api:2.22.1")
     implementation("org.apache.logging.log4j:log4j-core:2.22.1")
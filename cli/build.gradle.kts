@@ -0,0 +1,25 @@
+plugins {
+    application
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation(project(":core"))
+    // The embedded mock server behind --mock
+    implementation(testFixtures(project(":core")))
+    implementation("com.fasterxml.jackson.core:jackson-databind:2.16.0")
+    compileOnly("org.jetbrains:annotations:24.0.1")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// ./gradlew :cli:run --args="--endpoint http://127.0.0.1:8012 --users 8 --duration 60"
+application {
+    mainClass.set("com.devoxx.llamacpp.cli.LoadGenerator")
+}
@@ -0,0 +1,135 @@
+package com.devoxx.llamacpp.cli;
+
+import com.devoxx.llamacpp.core.CompletionMetrics;
+import com.devoxx.llamacpp.core.ContextBudget;
+import com.devoxx.llamacpp.core.DefaultCompletionSettings;
+import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.core.ServerCapabilities;
+import com.devoxx.llamacpp.core.SessionReplayer;
+import com.devoxx.llamacpp.mock.LatencyDistribution;
+import com.devoxx.llamacpp.mock.MockLlamaServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays typing sessions of concurrent simulated developers against a llama-server endpoint and
+ * reports throughput, latency percentiles and cache hit rates, to size shared inference servers.
+ * Each developer runs their own headless {@link LlamaCore}, so completion caches and extra context
+ * behave as in separate IDEs. Instead of typing, the developers can replay a session recorded in the IDE.
+ */
+public final class LoadGenerator {
+
+    private static final int PROGRESS_INTERVAL_SECONDS = 5;
+    private static final int SYNTHETIC_FILE_LINES = 400;
+    private static final int MAX_SESSION_FILE_BYTES = 256 * 1024;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<TypingSession> sessions = List.of();
+        if (options.replay() == null) {
+            sessions = options.sessionDirectory() != null
+                    ? TypingSession.fromDirectory(options.sessionDirectory(), options.extensions(), MAX_SESSION_FILE_BYTES)
+                    : TypingSession.synthetic(options.syntheticFiles(), SYNTHETIC_FILE_LINES, options.seed());
+            if (sessions.isEmpty()) {
+                System.err.println("No session files found in " + options.sessionDirectory());
+                System.exit(1);
+            }
+        }
+
+        MockLlamaServer mock = null;
+        String endpoint = options.endpoint();
+        if (options.mock()) {
+            mock = new MockLlamaServer(0, options.seed())
+                    .setPromptLatency(LatencyDistribution.logNormal(30, 0.5))
+                    .setPromptTokensPerSecond(2000)
+                    .setTokensPerSecond(options.mockTokensPerSecond())
+                    .start();
+            endpoint = mock.getEndpoint();
+        }
+
+        if (options.replay() != null) {
+            System.out.printf("%d users replaying %s against %s at %sx%n",
+                    options.users(), options.replay(), endpoint, options.replaySpeed() > 0 ? options.replaySpeed() : "max");
+        } else {
+            System.out.printf("%d users typing %d files against %s for %d s%n",
+                    options.users(), sessions.size(), endpoint, options.durationSeconds());
+        }
+
+        CompletionMetrics metrics = new CompletionMetrics();
+        LoadReport report = new LoadReport(metrics);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.durationSeconds());
+
+        ExecutorService developers = Executors.newFixedThreadPool(options.users());
+        List<Future<SessionReplayer.ReplayResult>> replays = new ArrayList<>();
+        for (int user = 0; user < options.users(); user++) {
+            DefaultCompletionSettings settings = new DefaultCompletionSettings();
+            settings.setEndpoint(endpoint);
+            settings.setApiKey(options.apiKey());
+            settings.setStreamCompletions(options.stream());
+            LlamaCore core = new LlamaCore(settings, metrics);
+            ServerCapabilities capabilities = core.probeServer().join();
+            if (user == 0 && capabilities != null) {
+                ContextBudget budget = core.getContextBudget();
+                System.out.printf("Server has %d slots of %d tokens (%s): %d prefix lines, %d suffix lines, %d ring chunks%n",
+                        capabilities.totalSlots(), capabilities.contextSize(), capabilities.model(),
+                        budget.prefixLines(), budget.suffixLines(), budget.ringChunks());
+            }
+            if (options.replay() != null) {
+                SessionReplayer replayer = new SessionReplayer(core, settings);
+                replays.add(developers.submit(() -> replayer.replay(options.replay(), options.replaySpeed(),
+                        (response, latencyMs) -> report.recordRequest(response != null, latencyMs))));
+            } else {
+                // Spread the developers over the files, so they do not all send the same prompts
+                int firstSession = user * sessions.size() / options.users();
+                developers.submit(new SimulatedDeveloper(core, settings, sessions,
+                        firstSession, options.keystrokeMs(), deadline, report));
+            }
+        }
+
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> report.printProgress(System.out),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+        developers.shutdown();
+        if (options.replay() != null) {
+            developers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } else {
+            developers.awaitTermination(options.durationSeconds() + 60L, TimeUnit.SECONDS);
+        }
+        progress.shutdownNow();
+
+        report.print(System.out, options.users());
+        for (Future<SessionReplayer.ReplayResult> replay : replays) {
+            try {
+                report.printReplay(System.out, replay.get());
+            } catch (ExecutionException e) {
+                System.err.println("Replay failed: " + e.getCause());
+            }
+        }
+        if (mock != null) {
+            mock.stop();
+        }
+        // Completions prefetched in the background are not waited for
+        System.exit(0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.devoxx.llamacpp.cli;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The command line options of the {@link LoadGenerator}.
+ */
+record LoadOptions(
+        @NotNull String endpoint,
+        @NotNull String apiKey,
+        int users,
+        int durationSeconds,
+        int keystrokeMs,
+        @Nullable Path sessionDirectory,
+        @NotNull List<String> extensions,
+        int syntheticFiles,
+        boolean stream,
+        boolean mock,
+        double mockTokensPerSecond,
+        @Nullable Path replay,
+        double replaySpeed,
+        long seed
+) {
+    static final String USAGE = """
+            Usage: LoadGenerator [options]
+              --endpoint <url>        llama-server endpoint (default http://127.0.0.1:8012)
+              --api-key <key>         API key sent as a bearer token
+              --users <n>             concurrent simulated developers (default 4)
+              --duration <seconds>    how long to run (default 60)
+              --keystroke-ms <ms>     time between typed characters (default 150)
+              --sessions <dir>        type through the source files in this directory
+              --extensions <list>     comma separated file extensions for --sessions (default .java,.kt,.py,.ts,.js)
+              --synthetic <n>         number of generated files when no --sessions is given (default 8)
+              --no-stream             use blocking instead of streamed completions
+              --mock [tokens/s]       run against an embedded mock server (default 100 tokens/s)
+              --replay <file>         replay a recorded session log instead of typing, until its end
+              --speed <factor>        replay speed, 0 replays without waiting (default 1)
+              --seed <n>              random seed (default 42)
+            """;
+
+    @NotNull
+    static LoadOptions parse(@NotNull String[] args) {
+        String endpoint = "http://127.0.0.1:8012";
+        String apiKey = "";
+        int users = 4;
+        int duration = 60;
+        int keystrokeMs = 150;
+        Path sessions = null;
+        List<String> extensions = List.of(".java", ".kt", ".py", ".ts", ".js");
+        int synthetic = 8;
+        boolean stream = true;
+        boolean mock = false;
+        double mockTokensPerSecond = 100;
+        Path replay = null;
+        double replaySpeed = 1;
+        long seed = 42;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--endpoint" -> endpoint = value(args, ++i);
+                case "--api-key" -> apiKey = value(args, ++i);
+                case "--users" -> users = Integer.parseInt(value(args, ++i));
+                case "--duration" -> duration = Integer.parseInt(value(args, ++i));
+                case "--keystroke-ms" -> keystrokeMs = Integer.parseInt(value(args, ++i));
+                case "--sessions" -> sessions = Path.of(value(args, ++i));
+                case "--extensions" -> extensions = List.of(value(args, ++i).split(","));
+                case "--synthetic" -> synthetic = Integer.parseInt(value(args, ++i));
+                case "--no-stream" -> stream = false;
+                case "--mock" -> {
+                    mock = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        mockTokensPerSecond = Double.parseDouble(args[++i]);
+                    }
+                }
+                case "--replay" -> replay = Path.of(value(args, ++i));
+                case "--speed" -> replaySpeed = Double.parseDouble(value(args, ++i));
+                case "--seed" -> seed = Long.parseLong(value(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        return new LoadOptions(endpoint, apiKey, users, duration, keystrokeMs, sessions, extensions,
+                synthetic, stream, mock, mockTokensPerSecond, replay, replaySpeed, seed);
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,107 @@
+package com.devoxx.llamacpp.cli;
+
+import com.devoxx.llamacpp.core.CompletionMetrics;
+import com.devoxx.llamacpp.core.LRUCache;
+import com.devoxx.llamacpp.core.LatencyHistogram;
+import com.devoxx.llamacpp.core.SessionReplayer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests of all simulated developers and prints progress and the final report,
+ * next to the {@link CompletionMetrics} they share.
+ */
+class LoadReport {
+
+    private final CompletionMetrics metrics;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder emptyResponses = new LongAdder();
+    private final LatencyHistogram clientLatency = new LatencyHistogram();
+
+    LoadReport(@NotNull CompletionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param answered  whether a completion came back, from the cache, the server or the local model
+     * @param latencyMs the latency seen by the developer, including requests that were dropped
+     */
+    void recordRequest(boolean answered, double latencyMs) {
+        requests.increment();
+        if (!answered) {
+            emptyResponses.increment();
+        }
+        clientLatency.record(latencyMs);
+    }
+
+    void printProgress(@NotNull PrintStream out) {
+        double seconds = elapsedSeconds();
+        out.printf("%6.0fs  %8d requests  %7.1f req/s  p50 %7.1f ms  p95 %7.1f ms%n",
+                seconds, requests.sum(), requests.sum() / seconds,
+                clientLatency.getPercentileMs(0.50), clientLatency.getPercentileMs(0.95));
+    }
+
+    void print(@NotNull PrintStream out, int users) {
+        double seconds = elapsedSeconds();
+        long total = requests.sum();
+        out.println();
+        out.printf("Users                 %d%n", users);
+        out.printf("Duration              %.1f s%n", seconds);
+        out.printf("Requests              %d (%.1f req/s)%n", total, total / seconds);
+        out.printf("Completions           %d (%.1f /s)%n", metrics.getCompletionCount(),
+                metrics.getCompletionCount() / seconds);
+        out.printf("Empty responses       %d%n", emptyResponses.sum());
+        out.printf("Dropped requests      %d%n", metrics.getDroppedRequests());
+        out.printf("Cancelled streams     %d, %d n_predict tokens unused%n", metrics.getCancelledStreams(),
+                metrics.getUnusedPredictTokens());
+        out.printf("Stale connections     %d%n", metrics.getStaleConnections());
+        out.println();
+        out.printf("%-20s %8s %10s %10s %10s %10s%n", "Latency (ms)", "count", "mean", "p50", "p95", "p99");
+        printLatency(out, "Client", clientLatency);
+        printLatency(out, "End to end", metrics.getEndToEnd());
+        printLatency(out, "Queue wait", metrics.getQueueWait());
+        printLatency(out, "Prompt", metrics.getPrompt());
+        printLatency(out, "Predicted", metrics.getPredicted());
+        printLatency(out, "First byte", metrics.getTimeToFirstByte());
+        printLatency(out, "First byte idle", metrics.getColdTimeToFirstByte());
+        printLatency(out, "Preconnect", metrics.getConnect());
+        out.println();
+        for (CompletionMetrics.CacheTier tier : CompletionMetrics.CacheTier.values()) {
+            out.printf("%-21s %d hits, %d misses (%.1f%%)%n", tier.name().toLowerCase() + " cache",
+                    metrics.getCacheHits(tier), metrics.getCacheMisses(tier), metrics.getCacheHitRate(tier) * 100);
+        }
+        out.printf("Speculative hits      %d of %d completion cache hits%n",
+                metrics.getCompletionCacheHits(LRUCache.Origin.SPECULATIVE),
+                metrics.getCacheHits(CompletionMetrics.CacheTier.COMPLETION));
+        out.printf("Candidate requests    %d, %d completions reranked%n", metrics.getCandidateRequests(),
+                metrics.getRerankedCompletions());
+        out.printf("Prefetch requests     %d in batches of %.1f, %d dropped%n", metrics.getPrefetchRequests(),
+                metrics.getPrefetchBatchSize(), metrics.getPrefetchDropped());
+        out.printf("Tokens cached ratio   %.1f%%%n", metrics.getTokensCachedRatio() * 100);
+    }
+
+    /**
+     * Prints the outcome of one developer's replay next to the recorded session.
+     */
+    void printReplay(@NotNull PrintStream out, @NotNull SessionReplayer.ReplayResult result) {
+        out.println();
+        out.printf("Replay                answered %d of %d requests, recorded %d%n",
+                result.getAnswered(), result.getTriggers(), result.getRecordedAnswered());
+        out.printf("Accepts covered       %d of %d%n", result.getAcceptsAnswered(), result.getAccepts());
+        out.printf("%-20s %8s %10s %10s %10s %10s%n", "Latency (ms)", "count", "mean", "p50", "p95", "p99");
+        printLatency(out, "Recorded", result.getRecordedLatency());
+        printLatency(out, "Replayed", result.getReplayedLatency());
+    }
+
+    private static void printLatency(PrintStream out, String name, LatencyHistogram histogram) {
+        out.printf("%-20s %8d %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(), histogram.getMeanMs(),
+                histogram.getPercentileMs(0.50), histogram.getPercentileMs(0.95), histogram.getPercentileMs(0.99));
+    }
+
+    private double elapsedSeconds() {
+        return Math.max(0.001, (System.nanoTime() - startNanos) / 1_000_000_000.0);
+    }
+}
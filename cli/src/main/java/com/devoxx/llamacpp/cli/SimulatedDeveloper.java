@@ -0,0 +1,125 @@
+package com.devoxx.llamacpp.cli;
+
+import com.devoxx.llamacpp.core.CompletionSettings;
+import com.devoxx.llamacpp.core.ContextBudget;
+import com.devoxx.llamacpp.core.LineIndex;
+import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.core.LlamaResponse;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One developer with their own {@link LlamaCore}, as if running their own IDE: it types through the
+ * sessions in turn, feeds the ring the way the caret listener does and requests a completion after
+ * every word.
+ */
+class SimulatedDeveloper implements Runnable {
+
+    private final LlamaCore core;
+    private final CompletionSettings settings;
+    private final List<TypingSession> sessions;
+    private final int firstSession;
+    private final int keystrokeMs;
+    private final long deadline;
+    private final LoadReport report;
+
+    SimulatedDeveloper(@NotNull LlamaCore core, @NotNull CompletionSettings settings,
+                       @NotNull List<TypingSession> sessions, int firstSession, int keystrokeMs,
+                       long deadline, @NotNull LoadReport report) {
+        this.core = core;
+        this.settings = settings;
+        this.sessions = sessions;
+        this.firstSession = firstSession;
+        this.keystrokeMs = keystrokeMs;
+        this.deadline = deadline;
+        this.report = report;
+    }
+
+    @Override
+    public void run() {
+        // Like the project indexer, every file of the project is indexed up front
+        for (TypingSession session : sessions) {
+            core.getExtraContext().getContextIndex().indexFile(session.filename(), session.text());
+        }
+
+        try {
+            for (int i = firstSession; System.currentTimeMillis() < deadline; i++) {
+                type(sessions.get(i % sessions.size()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void type(TypingSession session) throws InterruptedException {
+        String text = session.text();
+        LineIndex lines = LineIndex.of(text);
+        int[] lineStarts = lineStarts(text);
+        long lastRingUpdate = System.currentTimeMillis();
+        int previousOffset = 0;
+        int previousLine = -1;
+
+        for (int offset : session.triggerOffsets()) {
+            TimeUnit.MILLISECONDS.sleep((long) (offset - previousOffset) * keystrokeMs);
+            previousOffset = offset;
+            if (System.currentTimeMillis() >= deadline) {
+                return;
+            }
+
+            int line = lineOf(lineStarts, offset);
+            if (line != previousLine) {
+                core.getExtraContext().updateContextAroundCursor(line, lines, session.filename());
+                previousLine = line;
+            }
+            if (System.currentTimeMillis() - lastRingUpdate >= settings.getRingUpdateMs()) {
+                core.getExtraContext().updateRingBuffer();
+                lastRingUpdate = System.currentTimeMillis();
+            }
+
+            // The same windows as the completion contributor
+            ContextBudget budget = core.getContextBudget();
+            int prefixStart = lineStarts[Math.max(0, line - budget.prefixLines())];
+            int endLine = Math.min(lineStarts.length - 1, line + budget.suffixLines());
+            int suffixEnd = endLine + 1 < lineStarts.length ? lineStarts[endLine + 1] - 1 : text.length();
+            String prefix = text.substring(prefixStart, offset);
+            String suffix = text.substring(offset, suffixEnd);
+
+            long start = System.nanoTime();
+            LlamaResponse response = core.getCompletion(prefix, suffix, indentation(text, lineStarts[line]));
+            report.recordRequest(response != null, (System.nanoTime() - start) / 1_000_000.0);
+        }
+    }
+
+    private static int[] lineStarts(String text) {
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        int line = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                starts[line++] = i + 1;
+            }
+        }
+        return starts;
+    }
+
+    private static int lineOf(int[] lineStarts, int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static int indentation(String text, int lineStart) {
+        int indent = 0;
+        while (lineStart + indent < text.length() && text.charAt(lineStart + indent) == ' ') {
+            indent++;
+        }
+        return indent;
+    }
+}
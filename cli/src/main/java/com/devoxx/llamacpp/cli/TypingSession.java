@@ -0,0 +1,105 @@
+package com.devoxx.llamacpp.cli;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * A file a simulated developer types through: the caret walks the text from the top, and a completion
+ * is requested at every word boundary with the text before and after the caret as prefix and suffix.
+ */
+public record TypingSession(@NotNull String filename, @NotNull String text) {
+
+    private static final String[] TYPES = {"String", "int", "long", "List<String>", "Map<String, Object>", "boolean"};
+    private static final String[] NAMES = {"request", "response", "settings", "chunk", "offset", "prefix",
+            "suffix", "completion", "filename", "timestamp", "listener", "context"};
+
+    /**
+     * @return the caret offsets at which a completion is requested, after each word typed
+     */
+    @NotNull
+    public int[] triggerOffsets() {
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 1; i < text.length(); i++) {
+            char current = text.charAt(i);
+            char previous = text.charAt(i - 1);
+            if (Character.isJavaIdentifierPart(previous) && !Character.isJavaIdentifierPart(current)) {
+                offsets.add(i);
+            }
+        }
+        return offsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Loads every regular file below the directory with one of the extensions as a session.
+     */
+    @NotNull
+    public static List<TypingSession> fromDirectory(@NotNull Path directory, @NotNull List<String> extensions,
+                                                    int maxFileBytes) throws IOException {
+        List<TypingSession> sessions = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.filter(Files::isRegularFile)
+                    .filter(file -> extensions.stream().anyMatch(ext -> file.toString().endsWith(ext)))
+                    .sorted()
+                    .forEach(file -> {
+                        try {
+                            if (Files.size(file) <= maxFileBytes) {
+                                sessions.add(new TypingSession(directory.relativize(file).toString(),
+                                        Files.readString(file, StandardCharsets.UTF_8)));
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+        return sessions;
+    }
+
+    /**
+     * Generates Java-like files with realistic line lengths, indentation and identifier reuse.
+     */
+    @NotNull
+    public static List<TypingSession> synthetic(int files, int lines, long seed) {
+        List<TypingSession> sessions = new ArrayList<>();
+        for (int file = 0; file < files; file++) {
+            Random random = new Random(seed + file);
+            StringBuilder text = new StringBuilder(lines * 40);
+            text.append("package com.example.service;\n\npublic class Service").append(file).append(" {\n");
+            int written = 3;
+            int method = 0;
+            while (written < lines - 1) {
+                text.append("\n    public ").append(pick(random, TYPES)).append(" handle").append(method++)
+                        .append("(").append(pick(random, TYPES)).append(" ").append(pick(random, NAMES)).append(") {\n");
+                written += 2;
+                int body = 3 + random.nextInt(12);
+                for (int i = 0; i < body && written < lines - 2; i++, written++) {
+                    String name = pick(random, NAMES);
+                    if (random.nextBoolean()) {
+                        text.append("        ").append(pick(random, TYPES)).append(" ").append(name).append(i)
+                                .append(" = ").append(pick(random, NAMES)).append(".get(").append(i).append(");\n");
+                    } else {
+                        text.append("        ").append(name).append(".update(").append(pick(random, NAMES))
+                                .append(", ").append(random.nextInt(1000)).append(");\n");
+                    }
+                }
+                text.append("    }\n");
+                written++;
+            }
+            text.append("}\n");
+            sessions.add(new TypingSession("Service" + file + ".java", text.toString()));
+        }
+        return sessions;
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
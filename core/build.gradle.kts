@@ -0,0 +1,78 @@
+plugins {
+    `java-library`
+    `java-test-fixtures`
+    id("me.champeau.jmh") version "0.7.2"
+    id("io.github.reyerizo.gradle.jcstress") version "0.8.15"
+}
+
+repositories {
+    mavenCentral()
+}
+
+val jacksonVersion = "2.16.0"
+
+dependencies {
+    // Jackson and the annotations are provided by the IntelliJ Platform inside the plugin,
+    // headless users such as the CLI add them at runtime
+    compileOnly("com.fasterxml.jackson.core:jackson-databind:$jacksonVersion")
+    compileOnly("org.jetbrains:annotations:24.0.1")
+
+    compileOnly("org.projectlombok:lombok:1.18.34")
+    annotationProcessor("org.projectlombok:lombok:1.18.34")
+
+    testFixturesImplementation("com.fasterxml.jackson.core:jackson-databind:$jacksonVersion")
+    testFixturesCompileOnly("org.jetbrains:annotations:24.0.1")
+
+    testImplementation("com.fasterxml.jackson.core:jackson-databind:$jacksonVersion")
+    testCompileOnly("org.jetbrains:annotations:24.0.1")
+    testImplementation("org.junit.jupiter:junit-jupiter-api:5.11.0-M2")
+    testImplementation("org.assertj:assertj-core:3.26.0")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.11.0-M2")
+
+    jmhImplementation("com.fasterxml.jackson.core:jackson-databind:$jacksonVersion")
+    jmhCompileOnly("org.jetbrains:annotations:24.0.1")
+
+    jcstressImplementation("com.fasterxml.jackson.core:jackson-databind:$jacksonVersion")
+    jcstressCompileOnly("org.jetbrains:annotations:24.0.1")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// Run with ./gradlew :core:jmh, or ./gradlew :core:jmh -PjmhIncludes=LRUCache to run a single benchmark class
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Reports allocation rates (gc.alloc.rate.norm) next to the timings
+    profilers.add("gc")
+    if (project.hasProperty("jmhIncludes")) {
+        includes.add(project.property("jmhIncludes").toString())
+    }
+}
+
+// Concurrency stress tests of the shared state, run with ./gradlew :core:jcstress,
+// or ./gradlew :core:jcstress -PjcstressIncludes=ExtraContext for a single class
+jcstress {
+    jcstressDependency = "org.openjdk.jcstress:jcstress-core:0.16"
+    mode = "quick"
+    if (project.hasProperty("jcstressIncludes")) {
+        regexp = ".*" + project.property("jcstressIncludes").toString() + ".*"
+    }
+}
+
+// Starts the mock llama-server on port 8012: ./gradlew :core:runMockServer --args="8012 100 50"
+tasks.register<JavaExec>("runMockServer") {
+    group = "verification"
+    description = "Runs a mock llama-server with programmable latency"
+    classpath = sourceSets["testFixtures"].runtimeClasspath
+    mainClass.set("com.devoxx.llamacpp.mock.MockLlamaServer")
+}
@@ -0,0 +1,118 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+/**
+ * The ring and the queue of {@link ExtraContext} under contention: pooled threads add chunks and
+ * move them into the ring while others do the same.
+ */
+public class ExtraContextStress {
+
+    private static String chunk(int n) {
+        return "class Chunk" + n + " {\n    int first" + n + ";\n    int second" + n + ";\n    int third" + n + ";\n}\n";
+    }
+
+    @NotNull
+    private static ExtraContext extraContext(int ringChunks) {
+        DefaultCompletionSettings settings = new DefaultCompletionSettings();
+        settings.setRingChunks(ringChunks);
+        settings.setRingChunksPerFile(ringChunks);
+        return new ExtraContext(settings);
+    }
+
+    /**
+     * Two chunks reach a ring of one at the same time, exactly one is evicted.
+     */
+    @JCStressTest
+    @Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "The ring holds one chunk")
+    @Outcome(id = "0", expect = Expect.FORBIDDEN, desc = "Both chunks were evicted")
+    @Outcome(id = "2", expect = Expect.FORBIDDEN, desc = "The ring overflowed")
+    @State
+    public static class RingBound {
+        private final ExtraContext extraContext = extraContext(1);
+
+        @Actor
+        public void first() {
+            extraContext.addChunk(chunk(1), "First.java");
+            extraContext.updateRingBuffer();
+        }
+
+        @Actor
+        public void second() {
+            extraContext.addChunk(chunk(2), "Second.java");
+            extraContext.updateRingBuffer();
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            r.r1 = extraContext.getRingSize();
+        }
+    }
+
+    /**
+     * Chunks added while another thread moves chunks into a ring with room are all kept, in the ring or the queue.
+     */
+    @JCStressTest
+    @Outcome(id = "2", expect = Expect.ACCEPTABLE, desc = "Both chunks are kept")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "A chunk was lost or duplicated")
+    @State
+    public static class NoLostChunks {
+        private final ExtraContext extraContext = extraContext(8);
+
+        @Actor
+        public void first() {
+            extraContext.addChunk(chunk(1), "First.java");
+        }
+
+        @Actor
+        public void second() {
+            extraContext.addChunk(chunk(2), "Second.java");
+        }
+
+        @Actor
+        public void mover() {
+            extraContext.updateRingBuffer();
+            extraContext.updateRingBuffer();
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            r.r1 = extraContext.getRingSize() + extraContext.getQueuedSize();
+        }
+    }
+
+    /**
+     * Two chunks are added to a queue with room for one, the oldest queued chunk makes room for the other.
+     */
+    @JCStressTest
+    @Outcome(id = "16", expect = Expect.ACCEPTABLE, desc = "The queue is full")
+    @Outcome(id = "17", expect = Expect.FORBIDDEN, desc = "The queue overflowed")
+    @Outcome(expect = Expect.FORBIDDEN, desc = "Chunks were lost")
+    @State
+    public static class QueueBound {
+        private final ExtraContext extraContext = extraContext(8);
+
+        public QueueBound() {
+            for (int i = 0; i < CompletionSettings.MAX_QUEUED_CHUNKS - 1; i++) {
+                extraContext.addChunk(chunk(100 + i), "Queued.java");
+            }
+        }
+
+        @Actor
+        public void first() {
+            extraContext.addChunk(chunk(1), "First.java");
+        }
+
+        @Actor
+        public void second() {
+            extraContext.addChunk(chunk(2), "Second.java");
+        }
+
+        @Arbiter
+        public void arbiter(I_Result r) {
+            r.r1 = extraContext.getQueuedSize();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.devoxx.llamacpp.core;
+
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A listener registered from the UI thread while a pooled thread notifies the listeners. The
+ * notification must not fail, and reaches the listeners registered before it, the new one or not.
+ */
+@JCStressTest
+@Outcome(id = "1, 0", expect = Expect.ACCEPTABLE, desc = "Notified before the registration")
+@Outcome(id = "1, 1", expect = Expect.ACCEPTABLE, desc = "Notified after the registration")
+@Outcome(expect = Expect.FORBIDDEN, desc = "A listener was skipped or notified twice")
+@State
+public class LlamaCoreListenerStress {
+    private static final LlamaResponse RESPONSE = LlamaResponse.local("return null;", Map.of(), 0);
+
+    private final LlamaCore core = new LlamaCore(new DefaultCompletionSettings());
+    private final AtomicInteger existing = new AtomicInteger();
+    private final AtomicInteger added = new AtomicInteger();
+
+    public LlamaCoreListenerStress() {
+        core.addCompletionListener(response -> existing.incrementAndGet());
+    }
+
+    @Actor
+    public void register() {
+        core.addCompletionListener(response -> added.incrementAndGet());
+    }
+
+    @Actor
+    public void notifyListeners() {
+        core.notifyListeners(RESPONSE);
+    }
+
+    @Arbiter
+    public void arbiter(II_Result r) {
+        r.r1 = existing.get();
+        r.r2 = added.get();
+    }
+}
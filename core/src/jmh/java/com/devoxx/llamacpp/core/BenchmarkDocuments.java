@@ -0,0 +1,75 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * Generates Java-like source text with the line lengths, indentation and identifier reuse of a
+ * typical file, so the benchmarks work on realistic document sizes.
+ */
+final class BenchmarkDocuments {
+
+    private static final String[] TYPES = {"String", "int", "long", "List<String>", "Map<String, Object>", "boolean"};
+    private static final String[] NAMES = {"request", "response", "settings", "chunk", "offset", "prefix",
+            "suffix", "completion", "filename", "timestamp", "listener", "context"};
+
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * @return a document of the given number of lines, identical for the same seed
+     */
+    @NotNull
+    static String javaSource(int lines, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(lines * 40);
+        text.append("package com.example.service;\n\n");
+        text.append("public class Service").append(seed).append(" {\n");
+        int written = 3;
+        int method = 0;
+        while (written < lines - 1) {
+            text.append("\n    public ").append(pick(random, TYPES)).append(" handle").append(method++)
+                    .append("(").append(pick(random, TYPES)).append(" ").append(pick(random, NAMES)).append(") {\n");
+            written += 2;
+            int body = 3 + random.nextInt(12);
+            for (int i = 0; i < body && written < lines - 2; i++, written++) {
+                String name = pick(random, NAMES);
+                switch (random.nextInt(4)) {
+                    case 0 -> text.append("        ").append(pick(random, TYPES)).append(" ").append(name).append(i)
+                            .append(" = ").append(pick(random, NAMES)).append(".get").append(capitalize(name)).append("();\n");
+                    case 1 -> text.append("        if (").append(name).append(" == null) {\n")
+                            .append("            return null;\n        }\n");
+                    case 2 -> text.append("        LOG.debug(\"Processing ").append(name).append(": \" + ")
+                            .append(name).append(");\n");
+                    default -> text.append("        ").append(name).append(".update(").append(pick(random, NAMES))
+                            .append(", ").append(random.nextInt(1000)).append(");\n");
+                }
+            }
+            text.append("    }\n");
+            written++;
+        }
+        text.append("}\n");
+        return text.toString();
+    }
+
+    /**
+     * @return a completion of the given number of lines, indented like a method body
+     */
+    @NotNull
+    static String completion(int lines) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("        String value").append(i).append(" = context.getValue(").append(i).append(");\n");
+        }
+        return text.append("\n\n").toString();
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
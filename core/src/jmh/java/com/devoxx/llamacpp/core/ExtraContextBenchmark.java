@@ -0,0 +1,62 @@
+package com.devoxx.llamacpp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding chunks to the extra context: the duplicate check and the similarity eviction run against
+ * the queue and a full ring, and moving the chunk into the ring evicts the coldest chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExtraContextBenchmark {
+
+    private static final int FILES = 32;
+
+    @Param({"16", "64", "256"})
+    public int ringChunks;
+
+    @Param({"2000"})
+    public int documentLines;
+
+    private ExtraContext extraContext;
+    private LineIndex[] documents;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        DefaultCompletionSettings settings = new DefaultCompletionSettings();
+        settings.setRingChunks(ringChunks);
+        settings.setRingChunksPerFile(ringChunks);
+        extraContext = new ExtraContext(settings);
+
+        documents = new LineIndex[FILES];
+        for (int i = 0; i < FILES; i++) {
+            documents[i] = LineIndex.of(BenchmarkDocuments.javaSource(documentLines, i));
+        }
+
+        // Fill the ring so every benchmark iteration pays for eviction
+        for (int i = 0; i < ringChunks * 2; i++) {
+            addChunk();
+            extraContext.updateRingBuffer();
+        }
+    }
+
+    @Benchmark
+    public void addChunk() {
+        int file = next++ % FILES;
+        LineIndex document = documents[file];
+        // A different caret line each time, so the chunks differ
+        int caretLine = document.getFirstLine() + (next * 37) % documentLines;
+        extraContext.addChunk(document, document.getFirstLine(), document.getEndLine(), caretLine,
+                "Service" + file + ".java");
+    }
+
+    @Benchmark
+    public void addChunkAndUpdateRing() {
+        addChunk();
+        extraContext.updateRingBuffer();
+    }
+}
@@ -0,0 +1,65 @@
+package com.devoxx.llamacpp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key generation and lookups of the completion cache, with prefix and suffix windows of the sizes
+ * sent to the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LRUCacheBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int prefixLines;
+
+    @Param({"250"})
+    public int capacity;
+
+    private LRUCache cache;
+    private String prefix;
+    private String suffix;
+    private String hitKey;
+    private String[] keys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        String[] lines = BenchmarkDocuments.javaSource(prefixLines + 64, 1).split("\n", -1);
+        prefix = String.join("\n", java.util.Arrays.copyOfRange(lines, 0, prefixLines));
+        suffix = String.join("\n", java.util.Arrays.copyOfRange(lines, prefixLines, lines.length));
+
+        cache = new LRUCache(capacity);
+        keys = new String[capacity * 2];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = cache.generateKey(prefix + i, suffix);
+        }
+        for (int i = 0; i < capacity; i++) {
+            cache.put(keys[i], BenchmarkDocuments.completion(4));
+        }
+        hitKey = keys[capacity - 1];
+    }
+
+    @Benchmark
+    public String generateKey() {
+        return cache.generateKey(prefix, suffix);
+    }
+
+    @Benchmark
+    public String getHit() {
+        return cache.get(hitKey);
+    }
+
+    @Benchmark
+    public String getMiss() {
+        return cache.get(keys[capacity + (next++ % capacity)]);
+    }
+
+    @Benchmark
+    public void putWithEviction() {
+        cache.put(keys[next++ % keys.length], "        return value;");
+    }
+}
@@ -0,0 +1,40 @@
+package com.devoxx.llamacpp.core;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Post-processing of a server completion and the first line and first word extraction used by the
+ * accept actions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LlamaCoreBenchmark {
+
+    @Param({"1", "8", "32"})
+    public int completionLines;
+
+    private String completion;
+
+    @Setup
+    public void setUp() {
+        completion = BenchmarkDocuments.completion(completionLines);
+    }
+
+    @Benchmark
+    public String processCompletion() {
+        return LlamaCore.processCompletion(completion, "", "");
+    }
+
+    @Benchmark
+    public String firstLine() {
+        return LlamaCore.firstLine(completion);
+    }
+
+    @Benchmark
+    public String firstWord() {
+        return LlamaCore.firstWord(completion);
+    }
+}
@@ -0,0 +1,73 @@
+package com.devoxx.llamacpp.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding of /infill requests with a full ring of extra context, and parsing of the blocking
+ * response and of a single streamed event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LlamaServerBenchmark {
+
+    @Param({"0", "16", "64"})
+    public int extraChunks;
+
+    private DefaultCompletionSettings settings;
+    private String prefix;
+    private String suffix;
+    private List<ContextChunk> extraContext;
+    private byte[] responseBody;
+    private String streamEvent;
+
+    @Setup
+    public void setUp() throws IOException {
+        settings = new DefaultCompletionSettings();
+        String[] lines = BenchmarkDocuments.javaSource(settings.getPrefixLines() + settings.getSuffixLines(), 1)
+                .split("\n", -1);
+        prefix = String.join("\n", java.util.Arrays.copyOfRange(lines, 0, settings.getPrefixLines()));
+        suffix = String.join("\n", java.util.Arrays.copyOfRange(lines, settings.getPrefixLines(), lines.length));
+
+        extraContext = new ArrayList<>();
+        for (int i = 0; i < extraChunks; i++) {
+            extraContext.add(new ContextChunk(BenchmarkDocuments.javaSource(settings.getRingChunkSize() / 2, i + 2),
+                    System.currentTimeMillis(), "Service" + i + ".java"));
+        }
+
+        String content = BenchmarkDocuments.completion(4).replace("\"", "\\\"").replace("\n", "\\n");
+        responseBody = ("{\"index\":0,\"content\":\"" + content + "\",\"id_slot\":0,\"stop\":true,"
+                + "\"model\":\"qwen2.5-coder-1.5b-q8_0.gguf\",\"tokens_predicted\":48,\"tokens_evaluated\":2911,"
+                + "\"generation_settings\":{\"n_ctx\":8192,\"n_predict\":128,\"temperature\":0.8,\"top_k\":40,"
+                + "\"top_p\":0.99,\"samplers\":[\"top_k\",\"top_p\",\"infill\"]},\"prompt\":\"\",\"has_new_line\":true,"
+                + "\"truncated\":false,\"stopped_eos\":true,\"stopped_word\":false,\"stopped_limit\":false,"
+                + "\"stopping_word\":\"\",\"tokens_cached\":2958,\"timings\":{\"prompt_n\":112,\"prompt_ms\":41.3,"
+                + "\"prompt_per_token_ms\":0.37,\"prompt_per_second\":2711.8,\"predicted_n\":48,"
+                + "\"predicted_ms\":402.7,\"predicted_per_token_ms\":8.39,\"predicted_per_second\":119.2}}")
+                .getBytes(StandardCharsets.UTF_8);
+        streamEvent = "{\"index\":0,\"content\":\" context\",\"stop\":false,\"id_slot\":0,"
+                + "\"multimodal\":false,\"tokens_predicted\":7,\"tokens_evaluated\":2911}";
+    }
+
+    @Benchmark
+    public String encodeRequest() throws IOException {
+        return LlamaServer.encodeRequest(settings, prefix, suffix, extraContext, 8);
+    }
+
+    @Benchmark
+    public LlamaResponse parseResponse() throws IOException {
+        return LlamaServer.parseResponse(responseBody);
+    }
+
+    @Benchmark
+    public JsonNode parseStreamEvent() throws IOException {
+        return LlamaServer.parseEvent(streamEvent);
+    }
+}
@@ -0,0 +1,146 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Learns how often shown completions are accepted in each {@link Context}, and suppresses
+ * auto-triggered requests where the recent acceptance rate is below minAcceptancePercent.
+ * Counts decay with every completion shown in their context, so the rate follows the user's
+ * current habits. Every {@link CompletionSettings#ACCEPTANCE_EXPLORATION_INTERVAL}th suppressed
+ * request goes through anyway, so a context can recover. Manual triggers are never suppressed.
+ */
+public class AcceptanceTracker {
+
+    private static final double DECAY = 0.95;
+    private static final double PARTIAL_ACCEPT_WEIGHT = 0.5;
+    // A context starts from this rate, worth this many shown completions
+    private static final double PRIOR_RATE = 0.3;
+    private static final double PRIOR_WEIGHT = 5;
+
+    public enum CaretPosition {
+        /** Nothing but whitespace on the line */
+        EMPTY_LINE,
+        /** Code after the caret on the same line */
+        MID_LINE,
+        /** Code before the caret and nothing after it */
+        END_OF_LINE
+    }
+
+    public enum TypingPause {
+        /** Less than 150 ms since the last keystroke, the user is typing a word */
+        TYPING,
+        /** Up to a second */
+        SHORT,
+        /** A second or more, the user stopped to think or read */
+        LONG
+    }
+
+    public record Context(@NotNull String fileType, @NotNull CaretPosition caretPosition,
+                          @NotNull TypingPause typingPause) {
+    }
+
+    private final CompletionSettings settings;
+    private final CompletionMetrics metrics;
+    private final Map<Context, Outcomes> outcomes = new HashMap<>();
+    private volatile long lastKeystrokeNanos = System.nanoTime();
+    private Context lastShown;
+    private int suppressedSinceExploration;
+
+    public AcceptanceTracker(@NotNull CompletionSettings settings, @NotNull CompletionMetrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Called for every document change, to tell typing from pauses.
+     */
+    public void recordKeystroke() {
+        lastKeystrokeNanos = System.nanoTime();
+    }
+
+    /**
+     * @param filename the file, only its extension is used
+     * @param lineBeforeCaret the text of the caret line before the caret
+     * @param lineAfterCaret the text of the caret line after the caret
+     */
+    @NotNull
+    public Context contextOf(@NotNull String filename, @NotNull String lineBeforeCaret, @NotNull String lineAfterCaret) {
+        int dot = filename.lastIndexOf('.');
+        String fileType = dot >= 0 && dot > filename.lastIndexOf('/') ? filename.substring(dot + 1) : "";
+
+        CaretPosition caretPosition;
+        if (!lineAfterCaret.isBlank()) {
+            caretPosition = CaretPosition.MID_LINE;
+        } else if (lineBeforeCaret.isBlank()) {
+            caretPosition = CaretPosition.EMPTY_LINE;
+        } else {
+            caretPosition = CaretPosition.END_OF_LINE;
+        }
+
+        long pauseMs = (System.nanoTime() - lastKeystrokeNanos) / 1_000_000;
+        TypingPause typingPause = pauseMs < 150 ? TypingPause.TYPING
+                : pauseMs < 1000 ? TypingPause.SHORT : TypingPause.LONG;
+        return new Context(fileType, caretPosition, typingPause);
+    }
+
+    /**
+     * Decides whether an auto-triggered request is worth sending, and records the decision.
+     */
+    public synchronized boolean shouldRequest(@NotNull Context context) {
+        int minPercent = settings.getMinAcceptancePercent();
+        boolean request;
+        if (minPercent <= 0 || getAcceptanceRate(context) * 100 >= minPercent) {
+            request = true;
+        } else if (++suppressedSinceExploration >= CompletionSettings.ACCEPTANCE_EXPLORATION_INTERVAL) {
+            suppressedSinceExploration = 0;
+            request = true;
+        } else {
+            request = false;
+        }
+        metrics.recordAutoTrigger(!request);
+        return request;
+    }
+
+    /**
+     * Records that a completion was shown in the context, the following accepts are credited to it.
+     */
+    public synchronized void recordShown(@NotNull Context context) {
+        outcomes.computeIfAbsent(context, c -> new Outcomes()).shown();
+        lastShown = context;
+        metrics.recordCompletionShown();
+    }
+
+    /**
+     * Records that the last shown completion was accepted, or only its first word or line when partial.
+     */
+    public synchronized void recordAccepted(boolean partial) {
+        Outcomes shown = lastShown != null ? outcomes.get(lastShown) : null;
+        if (shown != null) {
+            shown.accepted += partial ? PARTIAL_ACCEPT_WEIGHT : 1;
+        }
+        metrics.recordAccepted(partial);
+    }
+
+    /**
+     * @return the recent acceptance rate in the context, the prior rate for a new context
+     */
+    public synchronized double getAcceptanceRate(@NotNull Context context) {
+        Outcomes counts = outcomes.get(context);
+        double shown = counts != null ? counts.shown : 0;
+        double accepted = counts != null ? Math.min(counts.accepted, counts.shown) : 0;
+        return (accepted + PRIOR_RATE * PRIOR_WEIGHT) / (shown + PRIOR_WEIGHT);
+    }
+
+    private static final class Outcomes {
+        private double shown;
+        private double accepted;
+
+        void shown() {
+            shown = shown * DECAY + 1;
+            accepted *= DECAY;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds auto-triggered requests back until the user pauses, so a typing burst does not send a
+ * request for every keystroke. The delay follows the user's own cadence: it is the 90th
+ * percentile of the recent intervals between keystrokes within a burst, so a gap longer than
+ * that is most likely a pause rather than the next key. A slow server lengthens it a little,
+ * since a request made obsolete by the next keystroke then costs more.
+ */
+public class AdaptiveDebouncer {
+
+    private static final int MAX_INTERVALS = 128;
+    private static final int MIN_INTERVALS = 16;
+    private static final double SERVER_LATENCY_SHARE = 0.125;
+
+    private final CompletionSettings settings;
+    private final CompletionMetrics metrics;
+    private final long[] intervalsMs = new long[MAX_INTERVALS];
+    private int intervalCount;
+    private int nextInterval;
+    private volatile long lastKeystrokeNanos;
+
+    public AdaptiveDebouncer(@NotNull CompletionSettings settings, @NotNull CompletionMetrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Called for every document change.
+     */
+    public void recordKeystroke() {
+        long now = System.nanoTime();
+        long previous = lastKeystrokeNanos;
+        lastKeystrokeNanos = now;
+        long intervalMs = (now - previous) / 1_000_000;
+        if (previous != 0 && intervalMs < CompletionSettings.TYPING_BURST_GAP_MS) {
+            synchronized (intervalsMs) {
+                intervalsMs[nextInterval] = intervalMs;
+                nextInterval = (nextInterval + 1) % MAX_INTERVALS;
+                intervalCount = Math.min(intervalCount + 1, MAX_INTERVALS);
+            }
+        }
+    }
+
+    /**
+     * @return the current delay, between DEBOUNCE_MIN_MS and DEBOUNCE_MAX_MS
+     */
+    public long getDelayMs() {
+        long cadenceMs;
+        synchronized (intervalsMs) {
+            if (intervalCount < MIN_INTERVALS) {
+                cadenceMs = CompletionSettings.DEBOUNCE_DEFAULT_MS;
+            } else {
+                long[] sorted = Arrays.copyOf(intervalsMs, intervalCount);
+                Arrays.sort(sorted);
+                cadenceMs = sorted[(int) (0.9 * (intervalCount - 1))];
+            }
+        }
+
+        LatencyHistogram endToEnd = metrics.getEndToEnd();
+        long serverMs = endToEnd.getCount() > 0
+                ? (long) (endToEnd.getPercentileMs(0.5) * SERVER_LATENCY_SHARE) : 0;
+        return Math.max(CompletionSettings.DEBOUNCE_MIN_MS,
+                Math.min(CompletionSettings.DEBOUNCE_MAX_MS, cadenceMs + serverMs));
+    }
+
+    /**
+     * Blocks until there was no keystroke for {@link #getDelayMs()}. Must not be called on the UI thread.
+     *
+     * @param triggerNanos the {@link System#nanoTime()} at which the completion was invoked
+     * @return false when a keystroke came after the trigger, the next trigger supersedes this one
+     */
+    public boolean awaitPause(long triggerNanos) {
+        if (!settings.isAdaptiveDebounce()) {
+            return true;
+        }
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(getDelayMs());
+        try {
+            while (true) {
+                long lastKeystroke = lastKeystrokeNanos;
+                if (lastKeystroke - triggerNanos > 0) {
+                    metrics.recordDebouncedRequest();
+                    return false;
+                }
+                long waitNanos = lastKeystroke + delayNanos - System.nanoTime();
+                if (lastKeystroke == 0 || waitNanos <= 0) {
+                    return true;
+                }
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
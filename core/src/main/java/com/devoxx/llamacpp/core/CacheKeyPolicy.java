@@ -0,0 +1,172 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Builds the completion cache keys from the local situation at the caret rather than the raw
+ * prefix and suffix windows, so trailing whitespace, a shifted window or an edit far above the
+ * caret do not turn an identical situation into a miss.
+ * <p>
+ * The key covers the cacheKeyLines lines before and after the caret, with trailing whitespace
+ * removed and runs of inner whitespace collapsed. The caret line is kept as it is, since the
+ * completion continues it. Each entry also stores a fingerprint of what the key leaves out, which
+ * is compared on lookup depending on {@link Verification}: a second level that turns a key match
+ * into a miss when the distant context or the raw text differ.
+ */
+public final class CacheKeyPolicy {
+
+    public enum Verification {
+        /** The nearby lines decide alone */
+        NONE,
+        /** The rest of the prefix and suffix, whitespace-canonicalized, must match too */
+        DISTANT,
+        /** The raw prefix and suffix must match, as without normalization */
+        EXACT
+    }
+
+    public record CacheKey(@NotNull String key, long fingerprint) {
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final CompletionSettings settings;
+    private final LRUCache cache;
+
+    CacheKeyPolicy(@NotNull CompletionSettings settings, @NotNull LRUCache cache) {
+        this.settings = settings;
+        this.cache = cache;
+    }
+
+    @NotNull
+    public CacheKey key(@NotNull String prefix, @NotNull String suffix) {
+        int lines = settings.getCacheKeyLines();
+        if (lines <= 0) {
+            return new CacheKey(cache.generateKey(prefix, suffix), 0);
+        }
+
+        // The near prefix starts lines lines above the caret line, the near suffix ends lines lines below
+        int nearPrefixStart = lineStartAbove(prefix, lines);
+        int nearSuffixEnd = lineEndBelow(suffix, lines);
+        String key = cache.generateKey(
+                canonicalize(prefix, nearPrefixStart, prefix.length(), false),
+                canonicalize(suffix, 0, nearSuffixEnd, true));
+
+        long fingerprint = switch (settings.getCacheKeyVerification()) {
+            case NONE -> 0;
+            case DISTANT -> canonicalHash(suffix, nearSuffixEnd, suffix.length(),
+                    canonicalHash(prefix, 0, nearPrefixStart, FNV_OFFSET));
+            case EXACT -> hash(suffix, hash(prefix, FNV_OFFSET));
+        };
+        return new CacheKey(key, fingerprint);
+    }
+
+    /**
+     * Removes trailing whitespace and collapses inner runs of whitespace of every line but the caret
+     * line, which is the last line of a prefix and the first line of a suffix. Indentation is kept.
+     * Line terminators are canonicalized too, a CR before the newline ending the caret line included.
+     */
+    @NotNull
+    static String canonicalize(@NotNull String text, int from, int to, boolean caretLineFirst) {
+        int caretLineStart = caretLineFirst ? from : text.lastIndexOf('\n', to - 1) + 1;
+        int caretLineEnd = caretLineFirst ? indexOfNewLine(text, from, to) : to;
+        if (caretLineFirst && caretLineEnd < to && caretLineEnd > from && text.charAt(caretLineEnd - 1) == '\r') {
+            caretLineEnd--;
+        }
+        StringBuilder result = new StringBuilder(to - from);
+        if (caretLineFirst) {
+            result.append(text, caretLineStart, caretLineEnd);
+            appendCanonical(result, text, caretLineEnd, to);
+        } else {
+            appendCanonical(result, text, from, Math.max(from, caretLineStart));
+            result.append(text, Math.max(from, caretLineStart), caretLineEnd);
+        }
+        return result.toString();
+    }
+
+    private static void appendCanonical(@NotNull StringBuilder result, @NotNull String text, int from, int to) {
+        int lineStart = result.length();
+        boolean indent = true;
+        boolean pendingSpace = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                if (c == '\n') {
+                    // Whitespace-only lines keep no indentation
+                    if (indent) {
+                        result.setLength(lineStart);
+                    }
+                    result.append('\n');
+                    lineStart = result.length();
+                    indent = true;
+                }
+                pendingSpace = false;
+            } else if (c == ' ' || c == '\t') {
+                if (indent) {
+                    result.append(c);
+                } else {
+                    pendingSpace = true;
+                }
+            } else {
+                if (pendingSpace) {
+                    result.append(' ');
+                    pendingSpace = false;
+                }
+                indent = false;
+                result.append(c);
+            }
+        }
+        if (indent) {
+            result.setLength(lineStart);
+        }
+    }
+
+    private static long canonicalHash(@NotNull String text, int from, int to, long hash) {
+        boolean pendingSpace = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\r') {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace && c != '\n') {
+                hash = (hash ^ ' ') * FNV_PRIME;
+            }
+            pendingSpace = false;
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(@NotNull String text, long hash) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static int lineStartAbove(@NotNull String prefix, int lines) {
+        int newLines = 0;
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            if (prefix.charAt(i) == '\n' && newLines++ == lines) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int lineEndBelow(@NotNull String suffix, int lines) {
+        int newLines = 0;
+        for (int i = 0; i < suffix.length(); i++) {
+            if (suffix.charAt(i) == '\n' && newLines++ == lines) {
+                return i;
+            }
+        }
+        return suffix.length();
+    }
+
+    private static int indexOfNewLine(@NotNull String text, int from, int to) {
+        int index = text.indexOf('\n', from);
+        return index < 0 || index > to ? to : index;
+    }
+}
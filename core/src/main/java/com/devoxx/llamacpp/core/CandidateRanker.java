@@ -0,0 +1,84 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranks the candidates of a multi-candidate request, best first. The score of a candidate is the
+ * mean log-probability of its tokens plus SUFFIX_WEIGHT times its consistency with the code after
+ * the caret:
+ * <ul>
+ *     <li>1 by default;</li>
+ *     <li>0.5 for several lines inserted in the middle of a line;</li>
+ *     <li>0 for a candidate repeating the next line of the suffix, which the model tends to do when
+ *     it has nothing to add.</li>
+ * </ul>
+ * Servers that do not report probabilities get UNKNOWN_LOG_PROB, leaving the order to the
+ * consistency and then to the candidate index. Candidates with the same text are merged.
+ */
+public final class CandidateRanker {
+
+    static final double UNKNOWN_LOG_PROB = -1.0;
+    static final double SUFFIX_WEIGHT = 0.5;
+
+    /**
+     * @param index 0 for the candidate sampled as usual, the others in the order they were requested
+     */
+    public record Candidate(@NotNull String content, double meanLogProb, double suffixConsistency,
+                            double score, int index) {
+
+        @NotNull
+        public static Candidate of(@NotNull String content, double meanLogProb, @NotNull String suffix, int index) {
+            double consistency = CandidateRanker.suffixConsistency(content, suffix);
+            double logProb = Double.isNaN(meanLogProb) ? UNKNOWN_LOG_PROB : meanLogProb;
+            return new Candidate(content, meanLogProb, consistency, logProb + SUFFIX_WEIGHT * consistency, index);
+        }
+    }
+
+    private static final Comparator<Candidate> BY_RANK = Comparator
+            .comparingDouble(Candidate::score).reversed()
+            .thenComparingInt(Candidate::index);
+
+    private CandidateRanker() {
+    }
+
+    @NotNull
+    public static List<Candidate> rank(@NotNull Collection<Candidate> candidates) {
+        Map<String, Candidate> unique = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            unique.merge(candidate.content(), candidate, (a, b) -> BY_RANK.compare(a, b) <= 0 ? a : b);
+        }
+        List<Candidate> ranked = new ArrayList<>(unique.values());
+        ranked.sort(BY_RANK);
+        return ranked;
+    }
+
+    static double suffixConsistency(@NotNull String content, @NotNull String suffix) {
+        String nextLine = firstNonBlankLine(suffix);
+        if (nextLine.length() >= CompletionSettings.MIN_SUFFIX_OVERLAP_CHARS && content.contains(nextLine)) {
+            return 0.0;
+        }
+        int lineEnd = suffix.indexOf('\n');
+        String restOfLine = lineEnd < 0 ? suffix : suffix.substring(0, lineEnd);
+        if (!restOfLine.isBlank() && content.contains("\n")) {
+            return 0.5;
+        }
+        return 1.0;
+    }
+
+    @NotNull
+    private static String firstNonBlankLine(@NotNull String text) {
+        for (String line : text.split("\n")) {
+            if (!line.isBlank()) {
+                return line.trim();
+            }
+        }
+        return "";
+    }
+}
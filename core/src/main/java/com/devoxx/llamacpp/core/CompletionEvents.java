@@ -0,0 +1,127 @@
+package com.devoxx.llamacpp.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the stages of a completion. Every event carries the id of the
+ * completion it belongs to, so a slow request can be broken down in JDK Mission Control by
+ * grouping on that field.
+ * <p>
+ * Events are created, begun and committed inline. When no recording has them enabled the JIT
+ * reduces that to nothing, and sizes that are costly to compute are guarded with
+ * {@link Event#shouldCommit()}.
+ */
+public final class CompletionEvents {
+
+    private static final String CATEGORY = "LlamaCPP";
+    private static final String SUB_CATEGORY = "Completion";
+
+    private CompletionEvents() {
+    }
+
+    @Category({CATEGORY, SUB_CATEGORY})
+    @StackTrace(false)
+    abstract static class StageEvent extends Event {
+        @Label("Completion Id")
+        public long completionId;
+    }
+
+    @Name("com.devoxx.llamacpp.LockWait")
+    @Label("Lock Wait")
+    @Description("Waiting for the previous completion request to finish")
+    public static final class LockWaitEvent extends StageEvent {
+        @Label("Acquired")
+        public boolean acquired;
+    }
+
+    @Name("com.devoxx.llamacpp.KeyGeneration")
+    @Label("Cache Key Generation")
+    public static final class KeyGenerationEvent extends StageEvent {
+        @Label("Prefix Length")
+        public int prefixLength;
+
+        @Label("Suffix Length")
+        public int suffixLength;
+    }
+
+    @Name("com.devoxx.llamacpp.CacheLookup")
+    @Label("Cache Lookup")
+    public static final class CacheLookupEvent extends StageEvent {
+        @Label("Hit")
+        public boolean hit;
+
+        @Label("Cache Size")
+        public int cacheSize;
+    }
+
+    @Name("com.devoxx.llamacpp.ContextBuild")
+    @Label("Context Build")
+    @Description("Selecting the extra context chunks sent as input_extra")
+    public static final class ContextBuildEvent extends StageEvent {
+        @Label("Chunks")
+        public int chunks;
+
+        @Label("Context Size")
+        @DataAmount
+        public long contextBytes;
+    }
+
+    @Name("com.devoxx.llamacpp.RequestEncode")
+    @Label("Request Encode")
+    public static final class RequestEncodeEvent extends StageEvent {
+        @Label("Request Size")
+        @DataAmount
+        public long requestBytes;
+    }
+
+    @Name("com.devoxx.llamacpp.HttpSend")
+    @Label("HTTP Send")
+    @Description("Sending the request until the response headers arrive")
+    public static final class HttpSendEvent extends StageEvent {
+        @Label("Status Code")
+        public int statusCode;
+
+        @Label("Streamed")
+        public boolean streamed;
+    }
+
+    @Name("com.devoxx.llamacpp.HttpReceive")
+    @Label("HTTP Receive")
+    @Description("Reading the response body, or the event stream until it ends or is cancelled")
+    public static final class HttpReceiveEvent extends StageEvent {
+        @Label("Response Size")
+        @DataAmount
+        public long responseBytes;
+
+        @Label("Chunks")
+        public int chunks;
+
+        @Label("Cancelled")
+        public boolean cancelled;
+    }
+
+    @Name("com.devoxx.llamacpp.ResponseParse")
+    @Label("Response Parse")
+    public static final class ResponseParseEvent extends StageEvent {
+        @Label("Size")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("com.devoxx.llamacpp.UiDelivery")
+    @Label("UI Delivery")
+    @Description("Adding the suggestion to the lookup and notifying the completion listeners")
+    public static final class UiDeliveryEvent extends StageEvent {
+        @Label("Elements")
+        public int elements;
+
+        @Label("Content Length")
+        public int contentLength;
+    }
+}
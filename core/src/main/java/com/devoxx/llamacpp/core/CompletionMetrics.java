@@ -0,0 +1,548 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Completion telemetry: latency histograms for the whole request, the wait for the request lock
+ * and the server's prompt and generation phases, plus cache and cancellation counters.
+ * All recording methods are lock-free so they can be called from the completion path.
+ * The numbers are shown in the tool window and exposed over JMX as {@value #OBJECT_NAME}.
+ */
+public class CompletionMetrics implements CompletionMetricsMXBean {
+
+    private static final Logger LOG = Logger.getLogger(CompletionMetrics.class.getName());
+
+    public static final String OBJECT_NAME = "com.devoxx.llamacpp:type=CompletionMetrics";
+
+    public enum CacheTier {
+        /** Completions cached by the plugin, see {@link LRUCache} */
+        COMPLETION,
+        /** The KV cache of the server slot, reused when the prompt shares a prefix with the previous one */
+        PROMPT
+    }
+
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram prompt = new LatencyHistogram();
+    private final LatencyHistogram predicted = new LatencyHistogram();
+    private final LatencyHistogram connect = new LatencyHistogram();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram coldTimeToFirstByte = new LatencyHistogram();
+
+    private final LongAdder[] cacheHits = newAdders(CacheTier.values().length);
+    private final LongAdder[] cacheMisses = newAdders(CacheTier.values().length);
+    private final LongAdder[] completionCacheHitsByOrigin = newAdders(LRUCache.Origin.values().length);
+    private final LongAdder reusedPromptTokens = new LongAdder();
+    private final LongAdder evaluatedPromptTokens = new LongAdder();
+    private final LongAdder cancelledStreams = new LongAdder();
+    private final LongAdder unusedPredictTokens = new LongAdder();
+    private final LongAdder droppedRequests = new LongAdder();
+    private final LongAdder autoTriggers = new LongAdder();
+    private final LongAdder suppressedTriggers = new LongAdder();
+    private final LongAdder shownCompletions = new LongAdder();
+    private final LongAdder acceptedCompletions = new LongAdder();
+    private final LongAdder partialAccepts = new LongAdder();
+    private final LongAdder positionSkipped = new LongAdder();
+    private final LongAdder positionLocal = new LongAdder();
+    private final LongAdder debouncedRequests = new LongAdder();
+    private final LongAdder prefetchBatches = new LongAdder();
+    private final LongAdder prefetchRequests = new LongAdder();
+    private final LongAdder prefetchDropped = new LongAdder();
+    private final LongAdder staleConnections = new LongAdder();
+    private final LongAdder candidateRequests = new LongAdder();
+    private final LongAdder rerankedCompletions = new LongAdder();
+    private final LongAdder candidateCycles = new LongAdder();
+
+    /**
+     * Registers these metrics with the platform MBean server, replacing a previous registration.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Could not register completion metrics MBean", e);
+        }
+    }
+
+    /**
+     * Removes the registration of {@link #registerMBean()}, so the server no longer holds these metrics.
+     */
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Could not unregister completion metrics MBean", e);
+        }
+    }
+
+    public void recordEndToEnd(double millis) {
+        endToEnd.record(millis);
+    }
+
+    public void recordQueueWait(double millis) {
+        queueWait.record(millis);
+    }
+
+    public void recordCacheLookup(@NotNull CacheTier tier, boolean hit) {
+        (hit ? cacheHits : cacheMisses)[tier.ordinal()].increment();
+    }
+
+    /**
+     * Records a completion cache hit by the origin of the entry, which tells how many hits the
+     * speculative entries contribute.
+     */
+    public void recordCompletionCacheHit(@NotNull LRUCache.Origin origin) {
+        completionCacheHitsByOrigin[origin.ordinal()].increment();
+    }
+
+    /**
+     * Records the server timings of a completion and whether its prompt was served from the slot's
+     * KV cache. The server reports tokens_cached as all tokens in the slot after generation,
+     * so the reused part of the prompt is what remains after the evaluated and generated tokens.
+     */
+    public void recordServerResponse(@NotNull LlamaResponse response) {
+        LlamaResponse.Timings timings = response.timings();
+        if (timings == null) {
+            return;
+        }
+        prompt.record(timings.prompt_ms());
+        predicted.record(timings.predicted_ms());
+
+        if (timings.prompt_n() == 0 && response.tokens_cached() == 0) {
+            // Cancelled streams carry no server accounting
+            return;
+        }
+        long reused = Math.max(0, response.tokens_cached() - timings.prompt_n() - timings.predicted_n());
+        reusedPromptTokens.add(reused);
+        evaluatedPromptTokens.add(timings.prompt_n());
+        recordCacheLookup(CacheTier.PROMPT, reused > 0);
+    }
+
+    /**
+     * @param unusedBudget the n_predict tokens the cancelled stream did not generate
+     */
+    public void recordCancelledStream(int unusedBudget) {
+        cancelledStreams.increment();
+        unusedPredictTokens.add(unusedBudget);
+    }
+
+    public void recordDroppedRequest() {
+        droppedRequests.increment();
+    }
+
+    public void recordAutoTrigger(boolean suppressed) {
+        autoTriggers.increment();
+        if (suppressed) {
+            suppressedTriggers.increment();
+        }
+    }
+
+    /**
+     * Records an auto-triggered request that a {@link TriggerPolicy} rule skipped or kept local.
+     */
+    public void recordPositionRule(@NotNull TriggerPolicy.Action action) {
+        switch (action) {
+            case SKIP -> positionSkipped.increment();
+            case LOCAL -> positionLocal.increment();
+            case ALLOW -> {
+            }
+        }
+    }
+
+    public void recordDebouncedRequest() {
+        debouncedRequests.increment();
+    }
+
+    /**
+     * Records a batch of speculative requests sent together by the {@link PrefetchBatcher}.
+     */
+    public void recordPrefetchBatch(int requests) {
+        prefetchBatches.increment();
+        prefetchRequests.add(requests);
+    }
+
+    /**
+     * Records a speculative request dropped before it was sent, for newer ones.
+     */
+    public void recordPrefetchDropped() {
+        prefetchDropped.increment();
+    }
+
+    /**
+     * Records the duration of a preconnect request, opening a connection and the server's answer.
+     */
+    public void recordConnect(double millis) {
+        connect.record(millis);
+    }
+
+    /**
+     * Records the time from sending a request to its response headers.
+     *
+     * @param cold sent after the server had closed the idle connections, or resent after a closed one
+     */
+    public void recordTimeToFirstByte(double millis, boolean cold) {
+        (cold ? coldTimeToFirstByte : timeToFirstByte).record(millis);
+    }
+
+    /**
+     * Records a request resent because its pooled connection had been closed by the server.
+     */
+    public void recordStaleConnection() {
+        staleConnections.increment();
+    }
+
+    /**
+     * Records the alternative candidates sent next to a completion request.
+     *
+     * @param reranked whether one of them ranked above the completion sampled as usual
+     */
+    public void recordCandidates(int alternatives, boolean reranked) {
+        candidateRequests.add(alternatives);
+        if (reranked) {
+            rerankedCompletions.increment();
+        }
+    }
+
+    public void recordCandidateCycle() {
+        candidateCycles.increment();
+    }
+
+    public void recordCompletionShown() {
+        shownCompletions.increment();
+    }
+
+    public void recordAccepted(boolean partial) {
+        (partial ? partialAccepts : acceptedCompletions).increment();
+    }
+
+    @NotNull
+    public LatencyHistogram getEndToEnd() {
+        return endToEnd;
+    }
+
+    @NotNull
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    @NotNull
+    public LatencyHistogram getPrompt() {
+        return prompt;
+    }
+
+    @NotNull
+    public LatencyHistogram getPredicted() {
+        return predicted;
+    }
+
+    @NotNull
+    public LatencyHistogram getConnect() {
+        return connect;
+    }
+
+    @NotNull
+    public LatencyHistogram getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @return the time to the response headers of the requests sent on connections the server had closed
+     */
+    @NotNull
+    public LatencyHistogram getColdTimeToFirstByte() {
+        return coldTimeToFirstByte;
+    }
+
+    public long getCacheHits(@NotNull CacheTier tier) {
+        return cacheHits[tier.ordinal()].sum();
+    }
+
+    public long getCacheMisses(@NotNull CacheTier tier) {
+        return cacheMisses[tier.ordinal()].sum();
+    }
+
+    public long getCompletionCacheHits(@NotNull LRUCache.Origin origin) {
+        return completionCacheHitsByOrigin[origin.ordinal()].sum();
+    }
+
+    public double getCacheHitRate(@NotNull CacheTier tier) {
+        long hits = getCacheHits(tier);
+        long total = hits + getCacheMisses(tier);
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public long getCompletionCount() {
+        return endToEnd.getCount();
+    }
+
+    @Override
+    public double getEndToEndP50Ms() {
+        return endToEnd.getPercentileMs(0.50);
+    }
+
+    @Override
+    public double getEndToEndP95Ms() {
+        return endToEnd.getPercentileMs(0.95);
+    }
+
+    @Override
+    public double getEndToEndP99Ms() {
+        return endToEnd.getPercentileMs(0.99);
+    }
+
+    @Override
+    public double getQueueWaitP50Ms() {
+        return queueWait.getPercentileMs(0.50);
+    }
+
+    @Override
+    public double getQueueWaitP95Ms() {
+        return queueWait.getPercentileMs(0.95);
+    }
+
+    @Override
+    public double getQueueWaitP99Ms() {
+        return queueWait.getPercentileMs(0.99);
+    }
+
+    @Override
+    public double getPromptP50Ms() {
+        return prompt.getPercentileMs(0.50);
+    }
+
+    @Override
+    public double getPromptP95Ms() {
+        return prompt.getPercentileMs(0.95);
+    }
+
+    @Override
+    public double getPromptP99Ms() {
+        return prompt.getPercentileMs(0.99);
+    }
+
+    @Override
+    public double getPredictedP50Ms() {
+        return predicted.getPercentileMs(0.50);
+    }
+
+    @Override
+    public double getPredictedP95Ms() {
+        return predicted.getPercentileMs(0.95);
+    }
+
+    @Override
+    public double getPredictedP99Ms() {
+        return predicted.getPercentileMs(0.99);
+    }
+
+    @Override
+    public long getCompletionCacheHits() {
+        return getCacheHits(CacheTier.COMPLETION);
+    }
+
+    @Override
+    public long getCompletionCacheMisses() {
+        return getCacheMisses(CacheTier.COMPLETION);
+    }
+
+    @Override
+    public double getCompletionCacheHitRate() {
+        return getCacheHitRate(CacheTier.COMPLETION);
+    }
+
+    @Override
+    public long getInteractiveCacheHits() {
+        return getCompletionCacheHits(LRUCache.Origin.INTERACTIVE);
+    }
+
+    @Override
+    public long getSpeculativeCacheHits() {
+        return getCompletionCacheHits(LRUCache.Origin.SPECULATIVE);
+    }
+
+    @Override
+    public long getPromptCacheHits() {
+        return getCacheHits(CacheTier.PROMPT);
+    }
+
+    @Override
+    public long getPromptCacheMisses() {
+        return getCacheMisses(CacheTier.PROMPT);
+    }
+
+    @Override
+    public double getPromptCacheHitRate() {
+        return getCacheHitRate(CacheTier.PROMPT);
+    }
+
+    /**
+     * @return the fraction of prompt tokens that were reused from the server's KV cache
+     */
+    @Override
+    public double getTokensCachedRatio() {
+        long reused = reusedPromptTokens.sum();
+        long total = reused + evaluatedPromptTokens.sum();
+        return total == 0 ? 0.0 : (double) reused / total;
+    }
+
+    @Override
+    public long getCancelledStreams() {
+        return cancelledStreams.sum();
+    }
+
+    @Override
+    public long getUnusedPredictTokens() {
+        return unusedPredictTokens.sum();
+    }
+
+    @Override
+    public long getDroppedRequests() {
+        return droppedRequests.sum();
+    }
+
+    @Override
+    public long getDebouncedRequests() {
+        return debouncedRequests.sum();
+    }
+
+    @Override
+    public double getTimeToFirstByteP50Ms() {
+        return timeToFirstByte.getPercentileMs(0.50);
+    }
+
+    @Override
+    public double getColdTimeToFirstByteP50Ms() {
+        return coldTimeToFirstByte.getPercentileMs(0.50);
+    }
+
+    @Override
+    public double getConnectP50Ms() {
+        return connect.getPercentileMs(0.50);
+    }
+
+    @Override
+    public long getStaleConnections() {
+        return staleConnections.sum();
+    }
+
+    @Override
+    public long getCandidateRequests() {
+        return candidateRequests.sum();
+    }
+
+    @Override
+    public long getRerankedCompletions() {
+        return rerankedCompletions.sum();
+    }
+
+    @Override
+    public long getCandidateCycles() {
+        return candidateCycles.sum();
+    }
+
+    @Override
+    public long getPrefetchRequests() {
+        return prefetchRequests.sum();
+    }
+
+    @Override
+    public long getPrefetchDropped() {
+        return prefetchDropped.sum();
+    }
+
+    /**
+     * @return the mean number of speculative requests sent together
+     */
+    @Override
+    public double getPrefetchBatchSize() {
+        long batches = prefetchBatches.sum();
+        return batches == 0 ? 0.0 : (double) prefetchRequests.sum() / batches;
+    }
+
+    @Override
+    public long getPositionSkippedRequests() {
+        return positionSkipped.sum();
+    }
+
+    @Override
+    public long getPositionLocalRequests() {
+        return positionLocal.sum();
+    }
+
+    @Override
+    public long getSuppressedRequests() {
+        return suppressedTriggers.sum();
+    }
+
+    /**
+     * @return the fraction of auto-triggered requests that were not sent for their low acceptance rate
+     */
+    @Override
+    public double getSavedRequestRate() {
+        long total = autoTriggers.sum();
+        return total == 0 ? 0.0 : (double) suppressedTriggers.sum() / total;
+    }
+
+    /**
+     * @return the fraction of shown completions that were accepted, partial accepts included
+     */
+    @Override
+    public double getAcceptanceRate() {
+        long shown = shownCompletions.sum();
+        return shown == 0 ? 0.0 : Math.min(1.0, (double) (acceptedCompletions.sum() + partialAccepts.sum()) / shown);
+    }
+
+    @Override
+    public void reset() {
+        endToEnd.reset();
+        queueWait.reset();
+        prompt.reset();
+        predicted.reset();
+        for (CacheTier tier : CacheTier.values()) {
+            cacheHits[tier.ordinal()].reset();
+            cacheMisses[tier.ordinal()].reset();
+        }
+        for (LongAdder hits : completionCacheHitsByOrigin) {
+            hits.reset();
+        }
+        reusedPromptTokens.reset();
+        evaluatedPromptTokens.reset();
+        cancelledStreams.reset();
+        unusedPredictTokens.reset();
+        droppedRequests.reset();
+        autoTriggers.reset();
+        suppressedTriggers.reset();
+        shownCompletions.reset();
+        acceptedCompletions.reset();
+        partialAccepts.reset();
+        positionSkipped.reset();
+        positionLocal.reset();
+        debouncedRequests.reset();
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,92 @@
+package com.devoxx.llamacpp.core;
+
+/**
+ * JMX view of {@link CompletionMetrics}, registered as {@value CompletionMetrics#OBJECT_NAME}.
+ * Latencies are in milliseconds.
+ */
+public interface CompletionMetricsMXBean {
+
+    long getCompletionCount();
+
+    double getEndToEndP50Ms();
+
+    double getEndToEndP95Ms();
+
+    double getEndToEndP99Ms();
+
+    double getQueueWaitP50Ms();
+
+    double getQueueWaitP95Ms();
+
+    double getQueueWaitP99Ms();
+
+    double getPromptP50Ms();
+
+    double getPromptP95Ms();
+
+    double getPromptP99Ms();
+
+    double getPredictedP50Ms();
+
+    double getPredictedP95Ms();
+
+    double getPredictedP99Ms();
+
+    double getTimeToFirstByteP50Ms();
+
+    double getColdTimeToFirstByteP50Ms();
+
+    double getConnectP50Ms();
+
+    long getStaleConnections();
+
+    long getCompletionCacheHits();
+
+    long getCompletionCacheMisses();
+
+    double getCompletionCacheHitRate();
+
+    long getInteractiveCacheHits();
+
+    long getSpeculativeCacheHits();
+
+    long getPromptCacheHits();
+
+    long getPromptCacheMisses();
+
+    double getPromptCacheHitRate();
+
+    double getTokensCachedRatio();
+
+    long getCancelledStreams();
+
+    long getUnusedPredictTokens();
+
+    long getDroppedRequests();
+
+    long getDebouncedRequests();
+
+    long getCandidateRequests();
+
+    long getRerankedCompletions();
+
+    long getCandidateCycles();
+
+    long getPrefetchRequests();
+
+    long getPrefetchDropped();
+
+    double getPrefetchBatchSize();
+
+    long getPositionSkippedRequests();
+
+    long getPositionLocalRequests();
+
+    long getSuppressedRequests();
+
+    double getSavedRequestRate();
+
+    double getAcceptanceRate();
+
+    void reset();
+}
@@ -0,0 +1,109 @@
+package com.devoxx.llamacpp.core;
+
+/**
+ * The settings the completion core reads. In the IDE they are the persisted LlamaSettings,
+ * headless users such as the CLI pass a {@link DefaultCompletionSettings}.
+ */
+public interface CompletionSettings {
+
+    Integer RING_UPDATE_MIN_TIME_LAST_COMPL = 3000;
+    Integer MAX_QUEUED_CHUNKS = 16;
+    Integer MAX_LAST_PICK_LINE_DISTANCE = 32;
+    Integer MIN_SUFFIX_OVERLAP_CHARS = 8;
+    Integer LOCAL_MODEL_MAX_NODES = 1 << 18;
+    Integer LOCAL_MODEL_MAX_VOCABULARY = 1 << 16;
+    Integer LOCAL_MODEL_MAX_TOKENS = 16;
+    Integer CIRCUIT_FAILURE_THRESHOLD = 3;
+    Integer CIRCUIT_OPEN_MS = 10000;
+    Integer CHARS_PER_TOKEN = 4;
+    Integer INDEX_QUERY_LINES = 16;
+    Integer FILE_HEAT_CAPACITY = 1024;
+    Integer ACCEPTANCE_EXPLORATION_INTERVAL = 10;
+    Integer TOKENS_PER_LINE = 10;
+    Integer PROBE_RETRY_MS = 30000;
+    // How long llama-server (cpp-httplib) keeps an idle connection open
+    Integer SERVER_KEEP_ALIVE_MS = 5000;
+    Integer TYPING_BURST_GAP_MS = 1000;
+    Integer DEBOUNCE_DEFAULT_MS = 120;
+    Integer DEBOUNCE_MIN_MS = 25;
+    Integer DEBOUNCE_MAX_MS = 350;
+    Integer PREFETCH_BATCH_WINDOW_MS = 50;
+    Integer PREFETCH_MAX_PENDING = 8;
+    Double CANDIDATE_TEMPERATURE = 0.8;
+    Integer CANDIDATE_CACHE_KEYS = 256;
+    String DEFAULT_TRIGGER_RULES = "comment=local, string=skip, mid-identifier=skip";
+
+    String getEndpoint();
+
+    String getApiKey();
+
+    int getPrefixLines();
+
+    int getSuffixLines();
+
+    int getMaxPredictTokens();
+
+    int getMaxPromptMs();
+
+    int getMaxPredictMs();
+
+    int getMaxCacheKeys();
+
+    /**
+     * @return the number of lines before and after the caret the cache key covers, 0 for the raw windows
+     */
+    int getCacheKeyLines();
+
+    CacheKeyPolicy.Verification getCacheKeyVerification();
+
+    int getRingChunks();
+
+    int getRingChunkSize();
+
+    int getRingScope();
+
+    int getRingUpdateMs();
+
+    int getRingChunksPerFile();
+
+    boolean isStreamCompletions();
+
+    boolean isLocalCompletionEnabled();
+
+    int getExtraContextTokens();
+
+    int getMaxIndexedFiles();
+
+    int getMaxIndexedFileKb();
+
+    int getMaxIndexMemoryKb();
+
+    int getMaxContextMemoryKb();
+
+    /**
+     * @return the acceptance rate below which auto-triggered requests are suppressed, 0 to never suppress
+     */
+    int getMinAcceptancePercent();
+
+    /**
+     * @return what auto-triggered requests do depending on the caret position, see {@link TriggerPolicy}
+     */
+    String getTriggerRules();
+
+    /**
+     * @return whether auto-triggered requests wait for a pause in the typing, see {@link AdaptiveDebouncer}
+     */
+    boolean isAdaptiveDebounce();
+
+    /**
+     * @return whether the probed server bounds the context windows and the ring size, and sets the
+     * request concurrency, see {@link ContextBudget}
+     */
+    boolean isAutoConfigure();
+
+    /**
+     * @return the number of completions requested at once on free server slots and ranked, 1 for a
+     * single one, see {@link CandidateRanker}
+     */
+    int getCompletionCandidates();
+}
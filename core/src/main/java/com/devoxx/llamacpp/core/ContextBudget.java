@@ -0,0 +1,45 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * How much context a request carries and how many requests may run at once. With autoConfigure on
+ * and a probed server, the settings are bounded by what fits in a slot of its {@link ServerCapabilities}
+ * and one request runs per slot; otherwise they are the settings as they are. A large context never
+ * raises the settings, every prompt token costs evaluation time on the keystroke path.
+ * <p>
+ * A tenth of a slot's context is kept as a margin, and the generated tokens are reserved. The rest
+ * is split evenly between the ring chunks (input_extra) and the text around the caret, four fifths
+ * of which goes to the lines before it.
+ */
+public record ContextBudget(int prefixLines, int suffixLines, int ringChunks, int extraContextTokens,
+                            int maxConcurrentRequests) {
+
+    private static final double CONTEXT_MARGIN = 0.1;
+    private static final double PREFIX_SHARE = 0.8;
+
+    @NotNull
+    public static ContextBudget of(@NotNull CompletionSettings settings, @Nullable ServerCapabilities capabilities) {
+        if (!settings.isAutoConfigure() || capabilities == null || capabilities.contextSize() <= 0) {
+            return new ContextBudget(settings.getPrefixLines(), settings.getSuffixLines(), settings.getRingChunks(),
+                    settings.getExtraContextTokens(), 1);
+        }
+
+        int inputTokens = (int) (capabilities.contextSize() * (1 - CONTEXT_MARGIN)) - settings.getMaxPredictTokens();
+        int fittingExtraTokens = Math.max(0, inputTokens / 2);
+        int lines = Math.max(1, (inputTokens - fittingExtraTokens) / CompletionSettings.TOKENS_PER_LINE);
+        int fittingPrefixLines = Math.max(1, (int) (lines * PREFIX_SHARE));
+        int fittingSuffixLines = Math.max(1, lines - fittingPrefixLines);
+        int chunkTokens = Math.max(1, settings.getRingChunkSize() * CompletionSettings.TOKENS_PER_LINE);
+        int fittingRingChunks = Math.max(1, fittingExtraTokens / chunkTokens);
+
+        // The settings are the ceiling, so a ring disabled in the settings stays disabled
+        return new ContextBudget(
+                Math.min(settings.getPrefixLines(), fittingPrefixLines),
+                Math.min(settings.getSuffixLines(), fittingSuffixLines),
+                Math.min(settings.getRingChunks(), fittingRingChunks),
+                Math.min(settings.getExtraContextTokens(), fittingExtraTokens),
+                Math.max(1, capabilities.totalSlots()));
+    }
+}
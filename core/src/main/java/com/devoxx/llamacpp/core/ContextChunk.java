@@ -0,0 +1,77 @@
+package com.devoxx.llamacpp.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Represents a chunk of code context with metadata about when it was captured
+ * and where it came from. The text is kept as a single UTF-8 array, with the sorted distinct
+ * hashes of its lines for the similarity checks of the ring.
+ */
+public record ContextChunk(
+        @JsonIgnore byte[] utf8,
+        @JsonIgnore int[] lineHashes,
+        long timestamp,
+        String filename
+) {
+    // Rough cost of the chunk, the headers of its two arrays and the filename String
+    private static final int CHUNK_OVERHEAD_BYTES = 112;
+
+    public ContextChunk(@NotNull String text, long timestamp, String filename) {
+        this(text.getBytes(StandardCharsets.UTF_8), lineHashesOf(text), timestamp, filename);
+    }
+
+    @NotNull
+    @JsonProperty("text")
+    public String text() {
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    @JsonIgnore
+    public long byteSize() {
+        return CHUNK_OVERHEAD_BYTES + utf8.length + 4L * lineHashes.length + filename.length();
+    }
+
+    /**
+     * @return whether both chunks hold the same text
+     */
+    public boolean sameText(@NotNull ContextChunk other) {
+        return Arrays.equals(utf8, other.utf8);
+    }
+
+    /**
+     * @return the Jaccard similarity of the distinct lines of both chunks
+     */
+    public double lineSimilarity(@NotNull ContextChunk other) {
+        int[] a = lineHashes;
+        int[] b = other.lineHashes;
+        if (a.length == 0 && b.length == 0) {
+            return 1.0;
+        }
+        int common = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (a.length + b.length - common);
+    }
+
+    private static int[] lineHashesOf(@NotNull String text) {
+        return Arrays.stream(text.split("\n", -1))
+                .mapToInt(String::hashCode)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+}
@@ -0,0 +1,397 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An incremental inverted index over project files, used to pick the extra context chunks that are
+ * most relevant to the code around the caret. Files are split into fixed line windows; each window is
+ * indexed by its identifiers and by shingles of consecutive lines, and ranked with BM25.
+ */
+public class ContextIndex {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]{2,}");
+    private static final String SHINGLE_PREFIX = "#";
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Rough cost of one term in the chunk's term map and in its posting list
+    private static final int TERM_OVERHEAD_BYTES = 96;
+
+    private final int chunkLines;
+    private final int maxFiles;
+    private volatile long maxBytes;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, List<IndexedChunk>> files;
+    private final Map<String, Map<IndexedChunk, Integer>> postings = new HashMap<>();
+    private long totalTerms;
+    private int chunkCount;
+    private long byteSize;
+
+    public ContextIndex(int chunkLines, int maxFiles, long maxBytes) {
+        this.chunkLines = Math.max(1, chunkLines);
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxBytes;
+        // Access ordered, so the least recently indexed file is dropped first
+        this.files = new LinkedHashMap<>(16, LRUCache.LOAD_FACTOR, true);
+    }
+
+    /**
+     * (Re)indexes the full content of a file, replacing whatever was indexed for it before.
+     */
+    public void indexFile(@NotNull String filename, @NotNull CharSequence text) {
+        LineIndex lines = LineIndex.of(text);
+        List<IndexedChunk> chunks = chunk(filename, lines, lines.getFirstLine(), lines.getEndLine());
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(filename);
+            addChunksLocked(chunks);
+            files.put(filename, chunks);
+            evictLocked(maxFiles, maxBytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the index after an edit, re-chunking only the lines around the edit. Chunks after the
+     * edit keep their text and are only shifted by the number of inserted or removed lines.
+     *
+     * @param lines       a window of the edited file, covering at least one chunk length around the edit
+     * @param changedFrom the first changed line, in the edited file
+     * @param changedTo   the line after the last changed line, in the edited file
+     * @param lineDelta   the number of lines the edit added, negative when lines were removed
+     * @return false if the file is not indexed yet, it should then be indexed with {@link #indexFile}
+     */
+    public boolean updateLines(@NotNull String filename, @NotNull LineIndex lines,
+                               int changedFrom, int changedTo, int lineDelta) {
+        lock.writeLock().lock();
+        try {
+            List<IndexedChunk> chunks = files.get(filename);
+            if (chunks == null) {
+                return false;
+            }
+
+            // Chunks overlapping the edit, in the coordinates before the edit
+            int oldChangedTo = changedTo - lineDelta;
+            int regionFrom = changedFrom;
+            int regionTo = changedTo;
+            List<IndexedChunk> kept = new ArrayList<>();
+            List<IndexedChunk> replaced = new ArrayList<>();
+            for (IndexedChunk chunk : chunks) {
+                if (chunk.endLine() <= changedFrom) {
+                    kept.add(chunk);
+                } else if (chunk.startLine >= oldChangedTo && chunk.startLine > changedFrom) {
+                    chunk.startLine += lineDelta;
+                    kept.add(chunk);
+                } else {
+                    replaced.add(chunk);
+                    regionFrom = Math.min(regionFrom, chunk.startLine);
+                    regionTo = Math.max(regionTo, chunk.endLine() + lineDelta);
+                }
+            }
+
+            removeChunksLocked(replaced);
+            List<IndexedChunk> added = chunk(filename, lines, regionFrom, regionTo);
+            addChunksLocked(added);
+            kept.addAll(added);
+            kept.sort(Comparator.comparingInt(chunk -> chunk.startLine));
+            files.put(filename, kept);
+            evictLocked(maxFiles, maxBytes);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of lines per indexed chunk
+     */
+    public int getChunkLines() {
+        return chunkLines;
+    }
+
+    public void removeFile(@NotNull String filename) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(filename);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            files.clear();
+            postings.clear();
+            totalTerms = 0;
+            chunkCount = 0;
+            byteSize = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the least recently indexed files until the index fits in the given number of bytes.
+     * The limit also applies to later updates.
+     */
+    public void trimToBytes(long maxBytes) {
+        lock.writeLock().lock();
+        try {
+            this.maxBytes = maxBytes;
+            evictLocked(maxFiles, maxBytes);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the approximate number of bytes held by the index
+     */
+    public long byteSize() {
+        lock.readLock().lock();
+        try {
+            return byteSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return chunkCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Builds a query from the lines closest to the caret.
+     */
+    @NotNull
+    public Query createQuery(@NotNull String prefix, @NotNull String suffix, int queryLines) {
+        String[] prefixLines = prefix.split("\n", -1);
+        String[] suffixLines = suffix.split("\n", -1);
+        String near = String.join("\n",
+                Arrays.copyOfRange(prefixLines, Math.max(0, prefixLines.length - queryLines), prefixLines.length))
+                + "\n" + String.join("\n", Arrays.copyOfRange(suffixLines, 0, Math.min(queryLines, suffixLines.length)));
+
+        Map<String, Integer> terms = extractTerms(near);
+        Map<String, Double> weights = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (String term : terms.keySet()) {
+                Map<IndexedChunk, Integer> posting = postings.get(term);
+                int df = posting == null ? 0 : posting.size();
+                weights.put(term, Math.log(1 + (chunkCount - df + 0.5) / (df + 0.5)));
+            }
+            double avgLength = chunkCount == 0 ? 1.0 : (double) totalTerms / chunkCount;
+            return new Query(weights, avgLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the highest scoring indexed chunks for the query, best first.
+     */
+    @NotNull
+    public List<ScoredChunk> search(@NotNull Query query, int maxResults) {
+        Map<IndexedChunk, Double> scores = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, Double> term : query.weights().entrySet()) {
+                Map<IndexedChunk, Integer> posting = postings.get(term.getKey());
+                if (posting == null) {
+                    continue;
+                }
+                for (Map.Entry<IndexedChunk, Integer> entry : posting.entrySet()) {
+                    IndexedChunk chunk = entry.getKey();
+                    scores.merge(chunk, termScore(term.getValue(), entry.getValue(), chunk.length(), query), Double::sum);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<IndexedChunk, Double>comparingByValue().reversed())
+                .limit(maxResults)
+                .map(e -> new ScoredChunk(e.getKey().toContextChunk(), e.getValue()))
+                .toList();
+    }
+
+    /**
+     * Scores a chunk that is not part of the index (for example a ring buffer chunk) against the query.
+     */
+    public double score(@NotNull Query query, @NotNull String text) {
+        Map<String, Integer> terms = extractTerms(text);
+        int length = sum(terms);
+        double score = 0;
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            Double weight = query.weights().get(term.getKey());
+            if (weight != null) {
+                score += termScore(weight, term.getValue(), length, query);
+            }
+        }
+        return score;
+    }
+
+    private static double termScore(double idf, int tf, int length, @NotNull Query query) {
+        return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / query.avgLength()));
+    }
+
+    @NotNull
+    private List<IndexedChunk> chunk(@NotNull String filename, @NotNull LineIndex lines, int fromLine, int toLine) {
+        List<IndexedChunk> chunks = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        fromLine = Math.max(fromLine, lines.getFirstLine());
+        toLine = Math.min(toLine, lines.getEndLine());
+
+        for (int start = fromLine; start < toLine; start += chunkLines) {
+            int end = Math.min(start + chunkLines, toLine);
+            String chunkText = lines.getText(start, end) + "\n";
+            if (chunkText.isBlank()) {
+                continue;
+            }
+            Map<String, Integer> terms = extractTerms(chunkText);
+            if (!terms.isEmpty()) {
+                chunks.add(new IndexedChunk(new ContextChunk(chunkText, now, filename), start, end - start,
+                        terms, sum(terms)));
+            }
+        }
+        return chunks;
+    }
+
+    private void addChunksLocked(@NotNull List<IndexedChunk> chunks) {
+        for (IndexedChunk chunk : chunks) {
+            for (Map.Entry<String, Integer> term : chunk.terms().entrySet()) {
+                postings.computeIfAbsent(term.getKey(), k -> new HashMap<>()).put(chunk, term.getValue());
+            }
+            totalTerms += chunk.length();
+            chunkCount++;
+            byteSize += chunk.byteSize();
+        }
+    }
+
+    private void evictLocked(int fileLimit, long byteLimit) {
+        Iterator<Map.Entry<String, List<IndexedChunk>>> eldest = files.entrySet().iterator();
+        while ((files.size() > fileLimit || byteSize > byteLimit) && eldest.hasNext()) {
+            List<IndexedChunk> evicted = eldest.next().getValue();
+            eldest.remove();
+            removeChunksLocked(evicted);
+        }
+    }
+
+    private void removeLocked(String filename) {
+        List<IndexedChunk> previous = files.remove(filename);
+        if (previous != null) {
+            removeChunksLocked(previous);
+        }
+    }
+
+    private void removeChunksLocked(@NotNull List<IndexedChunk> chunks) {
+        for (IndexedChunk chunk : chunks) {
+            for (String term : chunk.terms().keySet()) {
+                Map<IndexedChunk, Integer> posting = postings.get(term);
+                if (posting != null) {
+                    posting.remove(chunk);
+                    if (posting.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            totalTerms -= chunk.length();
+            chunkCount--;
+            byteSize -= chunk.byteSize();
+        }
+    }
+
+    /**
+     * Extracts identifiers and shingles of two consecutive non-blank lines, with whitespace ignored.
+     */
+    @NotNull
+    static Map<String, Integer> extractTerms(@NotNull String text) {
+        Map<String, Integer> terms = new HashMap<>();
+        Matcher matcher = IDENTIFIER.matcher(text);
+        while (matcher.find()) {
+            terms.merge(matcher.group(), 1, Integer::sum);
+        }
+
+        String previous = null;
+        for (String line : text.split("\n")) {
+            String normalized = line.replaceAll("\\s+", "");
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            if (previous != null) {
+                terms.merge(SHINGLE_PREFIX + Integer.toHexString((previous + "\n" + normalized).hashCode()), 1, Integer::sum);
+            }
+            previous = normalized;
+        }
+        return terms;
+    }
+
+    private static int sum(@NotNull Map<String, Integer> terms) {
+        int total = 0;
+        for (int count : terms.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    public record Query(Map<String, Double> weights, double avgLength) {
+    }
+
+    public record ScoredChunk(ContextChunk chunk, double score) {
+    }
+
+    // Identity semantics on purpose, two windows with the same text are still different postings
+    private static final class IndexedChunk {
+        private final ContextChunk chunk;
+        private final int lineCount;
+        private final Map<String, Integer> terms;
+        private final int length;
+        // Shifted in place when lines are inserted or removed above the chunk
+        private int startLine;
+
+        IndexedChunk(ContextChunk chunk, int startLine, int lineCount, Map<String, Integer> terms, int length) {
+            this.chunk = chunk;
+            this.startLine = startLine;
+            this.lineCount = lineCount;
+            this.terms = terms;
+            this.length = length;
+        }
+
+        int endLine() {
+            return startLine + lineCount;
+        }
+
+        Map<String, Integer> terms() {
+            return terms;
+        }
+
+        int length() {
+            return length;
+        }
+
+        long byteSize() {
+            return chunk.byteSize() + (long) terms.size() * TERM_OVERHEAD_BYTES;
+        }
+
+        ContextChunk toContextChunk() {
+            return chunk;
+        }
+    }
+}
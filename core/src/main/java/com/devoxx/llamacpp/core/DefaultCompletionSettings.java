@@ -0,0 +1,39 @@
+package com.devoxx.llamacpp.core;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Plain completion settings for running the core outside the IDE, with the same defaults as the plugin.
+ */
+@Getter
+@Setter
+public class DefaultCompletionSettings implements CompletionSettings {
+    private String endpoint = "http://127.0.0.1:8012";
+    private String apiKey = "";
+    private int prefixLines = 256;
+    private int suffixLines = 64;
+    private int maxPredictTokens = 128;
+    private int maxPromptMs = 500;
+    private int maxPredictMs = 2500;
+    private int maxCacheKeys = 250;
+    private int cacheKeyLines = 16;
+    private CacheKeyPolicy.Verification cacheKeyVerification = CacheKeyPolicy.Verification.NONE;
+    private int ringChunks = 16;
+    private int ringChunkSize = 64;
+    private int ringScope = 1024;
+    private int ringUpdateMs = 1000;
+    private int ringChunksPerFile = 4;
+    private boolean streamCompletions = true;
+    private boolean localCompletionEnabled = true;
+    private int extraContextTokens = 1024;
+    private int maxIndexedFiles = 2000;
+    private int maxIndexedFileKb = 256;
+    private int maxIndexMemoryKb = 32 * 1024;
+    private int maxContextMemoryKb = 4 * 1024;
+    private int minAcceptancePercent = 5;
+    private String triggerRules = DEFAULT_TRIGGER_RULES;
+    private boolean adaptiveDebounce = true;
+    private boolean autoConfigure = true;
+    private int completionCandidates = 1;
+}
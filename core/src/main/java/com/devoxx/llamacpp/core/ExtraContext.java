@@ -0,0 +1,378 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Manages extra context for code completion by maintaining a ring buffer of code chunks.
+ * This implementation provides thread-safe operations for adding and retrieving context
+ * chunks that can be used to improve completion quality.
+ * <p>
+ * The ring is not FIFO: when it is full, the chunk with the lowest heat is evicted, where heat
+ * combines the edit frequency and caret dwell time of its file with the age of the chunk.
+ */
+public class ExtraContext {
+
+    private final Queue<ContextChunk> chunks;
+    private final Queue<ContextChunk> queuedChunks;
+    private final List<Consumer<ContextChunk>> chunkListeners = new CopyOnWriteArrayList<>();
+    private final ContextIndex contextIndex;
+    private final FileHeat fileHeat;
+    private final AtomicInteger ringEvictionCount;
+    private volatile long lastCompletionStartTime;
+    private volatile int lastPickLine;
+
+    private static final double SIMILARITY_THRESHOLD = 0.9;
+    private static final double CHUNK_HALF_LIFE_MS = 5 * 60 * 1000.0;
+    private final CompletionSettings settings;
+    private final Supplier<ContextBudget> budget;
+
+    public ExtraContext(@NotNull CompletionSettings settings) {
+        this(settings, () -> ContextBudget.of(settings, null));
+    }
+
+    /**
+     * @param budget the ring size and the prefix and suffix windows, which may follow the server
+     */
+    public ExtraContext(@NotNull CompletionSettings settings, @NotNull Supplier<ContextBudget> budget) {
+        this.chunks = new ConcurrentLinkedQueue<>();
+        this.queuedChunks = new ConcurrentLinkedQueue<>();
+        this.ringEvictionCount = new AtomicInteger(0);
+        this.lastCompletionStartTime = 0;
+        this.lastPickLine = -9999;
+        this.settings = settings;
+        this.budget = budget;
+        this.contextIndex = new ContextIndex(settings.getRingChunkSize() / 2, settings.getMaxIndexedFiles(),
+                settings.getMaxIndexMemoryKb() * 1024L);
+        this.fileHeat = new FileHeat(CompletionSettings.FILE_HEAT_CAPACITY);
+    }
+
+    /**
+     * Adds a new chunk of code context. The chunk will be queued first and then
+     * added to the main ring buffer during the next update cycle. A text longer than a chunk
+     * contributes its first lines.
+     *
+     * @param text     The code content to add as context
+     * @param filename The source file name
+     */
+    public void addChunk(@NotNull String text, @NotNull String filename) {
+        LineIndex lines = LineIndex.of(text);
+        addChunk(lines, lines.getFirstLine(), lines.getEndLine(), lines.getFirstLine(), filename);
+    }
+
+    /**
+     * Adds a chunk picked from the lines [fromLine, toLine): the half ring chunk of lines closest to
+     * nearLine, usually the caret line, as code next to the caret is the most likely to be relevant.
+     * Only the picked lines are materialized.
+     *
+     * @param lines    The indexed text the chunk is picked from
+     * @param fromLine The first line the chunk may start at
+     * @param toLine   The line after the last line the chunk may cover
+     * @param nearLine The line the chunk is picked around, it may lie outside [fromLine, toLine)
+     * @param filename The source file name
+     */
+    public void addChunk(@NotNull LineIndex lines, int fromLine, int toLine, int nearLine, @NotNull String filename) {
+        if (budget.get().ringChunks() <= 0) {
+            return;
+        }
+
+        fromLine = Math.max(fromLine, lines.getFirstLine());
+        toLine = Math.min(toLine, lines.getEndLine());
+        int lineCount = toLine - fromLine;
+        if (lineCount < 3) {
+            return;
+        }
+
+        // Process the chunk size according to settings
+        int startLine = fromLine;
+        int endLine = toLine;
+        if (lineCount + 1 >= settings.getRingChunkSize()) {
+            int chunkLines = settings.getRingChunkSize() / 2;
+            startLine = Math.max(fromLine, Math.min(nearLine - chunkLines / 2, toLine - chunkLines));
+            endLine = Math.min(startLine + chunkLines, toLine);
+        }
+
+        String chunkContent = lines.getText(startLine, endLine);
+        if (chunkContent.trim().isEmpty()) {
+            return;
+        }
+        chunkContent += "\n";
+        ContextChunk newChunk = new ContextChunk(chunkContent, System.currentTimeMillis(), filename);
+
+        // Check for duplicates
+        if (isDuplicateChunk(newChunk)) {
+            return;
+        }
+
+        // Evict similar chunks
+        evictSimilarChunks(newChunk);
+
+        // Checked and offered together, or two threads both seeing room would overfill the queue
+        synchronized (queuedChunks) {
+            if (queuedChunks.size() >= CompletionSettings.MAX_QUEUED_CHUNKS) {
+                queuedChunks.poll(); // Remove oldest chunk if queue is full
+            }
+            queuedChunks.offer(newChunk);
+        }
+
+        for (Consumer<ContextChunk> listener : chunkListeners) {
+            listener.accept(newChunk);
+        }
+    }
+
+    /**
+     * Registers a listener that is called for every new chunk accepted into the queue.
+     */
+    public void addChunkListener(@NotNull Consumer<ContextChunk> listener) {
+        chunkListeners.add(listener);
+    }
+
+    /**
+     * Updates the ring buffer by processing queued chunks. This should be called
+     * periodically to maintain fresh context.
+     */
+    public void updateRingBuffer() {
+        if (queuedChunks.isEmpty() ||
+            System.currentTimeMillis() - lastCompletionStartTime < CompletionSettings.RING_UPDATE_MIN_TIME_LAST_COMPL) {
+            return;
+        }
+
+        ContextChunk chunk = queuedChunks.poll();
+        if (chunk != null) {
+            // One eviction at a time, concurrent ones could each evict a chunk for the same overflow
+            synchronized (chunks) {
+                chunks.offer(chunk);
+
+                // Maintain ring buffer size, evicting the coldest chunk of a file over its quota first
+                int ringChunks = budget.get().ringChunks();
+                while (chunks.size() > ringChunks) {
+                    ContextChunk coldest = findColdest(chunks, true);
+                    if (coldest == null) {
+                        break;
+                    }
+                    // Removed meanwhile by a similar chunk or a trim, look again
+                    chunks.remove(coldest);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private ContextChunk findColdest(@NotNull Collection<ContextChunk> candidates, boolean applyQuota) {
+        long now = System.currentTimeMillis();
+        Map<String, Integer> perFile = countPerFile(candidates);
+        boolean overQuota = applyQuota &&
+                perFile.values().stream().anyMatch(n -> n > settings.getRingChunksPerFile());
+
+        ContextChunk coldest = null;
+        double coldestScore = Double.MAX_VALUE;
+        for (ContextChunk candidate : candidates) {
+            if (overQuota && perFile.getOrDefault(candidate.filename(), 0) <= settings.getRingChunksPerFile()) {
+                continue;
+            }
+            double score = heatOf(candidate, now);
+            if (score < coldestScore) {
+                coldest = candidate;
+                coldestScore = score;
+            }
+        }
+        return coldest;
+    }
+
+    /**
+     * Records an edit in a file, called for every document change.
+     */
+    public void recordEdit(@NotNull String filename) {
+        fileHeat.recordEdit(filename, System.currentTimeMillis());
+    }
+
+    /**
+     * Records a caret move in a file, used to measure how long the user dwells in it.
+     */
+    public void recordCaretMove(@NotNull String filename) {
+        fileHeat.recordCaret(filename, System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the start of a completion request; the ring is left untouched for a while after it,
+     * so consecutive requests can reuse the server's prompt cache.
+     */
+    public void markCompletionStart() {
+        lastCompletionStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * The heat of a chunk, in [0, 2): the heat of its file squashed into [0, 1) plus its own recency.
+     */
+    private double heatOf(@NotNull ContextChunk chunk, long now) {
+        double fileScore = fileHeat.score(chunk.filename(), now);
+        double recency = Math.pow(0.5, (now - chunk.timestamp()) / CHUNK_HALF_LIFE_MS);
+        return fileScore / (1 + fileScore) + recency;
+    }
+
+    @NotNull
+    private static Map<String, Integer> countPerFile(@NotNull Collection<ContextChunk> chunks) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (ContextChunk chunk : chunks) {
+            counts.merge(chunk.filename(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the context chunks for a completion request. Chunks from the project index and the ring
+     * buffer are ranked by their relevance to the code around the caret, boosted by their heat, and
+     * the best ones are kept within the ringChunks, per file and extra context token budgets.
+     *
+     * @param prefix The text before the cursor
+     * @param suffix The text after the cursor
+     */
+    @NotNull
+    public List<ContextChunk> getContextChunks(@NotNull String prefix, @NotNull String suffix) {
+        ContextIndex.Query query = contextIndex.createQuery(prefix, suffix, CompletionSettings.INDEX_QUERY_LINES);
+
+        long now = System.currentTimeMillis();
+        ContextBudget current = budget.get();
+
+        // Chunks keep UTF-8 bytes, each one is decoded once per request
+        Map<ContextChunk, String> texts = new IdentityHashMap<>();
+        List<ContextIndex.ScoredChunk> candidates = new ArrayList<>();
+        for (ContextIndex.ScoredChunk hit : contextIndex.search(query, current.ringChunks() * 2)) {
+            candidates.add(new ContextIndex.ScoredChunk(hit.chunk(), hit.score() + heatOf(hit.chunk(), now)));
+        }
+        for (ContextChunk chunk : chunks) {
+            candidates.add(new ContextIndex.ScoredChunk(chunk, contextIndex.score(query, texts.computeIfAbsent(chunk, ContextChunk::text)) + heatOf(chunk, now)));
+        }
+        candidates.sort(Comparator.comparingDouble(ContextIndex.ScoredChunk::score).reversed());
+
+        List<ContextChunk> selected = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Map<String, Integer> perFile = new HashMap<>();
+        int remainingChars = current.extraContextTokens() * CompletionSettings.CHARS_PER_TOKEN;
+
+        for (ContextIndex.ScoredChunk candidate : candidates) {
+            if (selected.size() >= current.ringChunks()) {
+                break;
+            }
+            String text = texts.computeIfAbsent(candidate.chunk(), ContextChunk::text);
+            // Skip chunks the prompt already contains
+            if (text.length() > remainingChars || !seen.add(text) || prefix.contains(text) || suffix.contains(text)) {
+                continue;
+            }
+            if (perFile.merge(candidate.chunk().filename(), 1, Integer::sum) > settings.getRingChunksPerFile()) {
+                continue;
+            }
+            remainingChars -= text.length();
+            selected.add(candidate.chunk());
+        }
+        return selected;
+    }
+
+    @NotNull
+    public ContextIndex getContextIndex() {
+        return contextIndex;
+    }
+
+    /**
+     * Updates the context based on cursor position in the editor.
+     *
+     * @param cursorLine Current line number of cursor
+     * @param lines      Indexed text around the cursor, at least ringScope lines on each side when available
+     * @param filename   Source file name
+     */
+    public void updateContextAroundCursor(int cursorLine, @NotNull LineIndex lines, @NotNull String filename) {
+        int deltaLines = Math.abs(cursorLine - lastPickLine);
+
+        if (deltaLines > CompletionSettings.MAX_LAST_PICK_LINE_DISTANCE) {
+            // Add prefix context
+            int prefixStart = Math.max(lines.getFirstLine(), cursorLine - settings.getRingScope());
+            int prefixEnd = Math.max(0, cursorLine - budget.get().prefixLines());
+            if (prefixEnd > prefixStart) {
+                addChunk(lines, prefixStart, prefixEnd, cursorLine, filename);
+            }
+
+            // Add suffix context
+            int lastLine = lines.getEndLine() - 1;
+            int suffixLines = budget.get().suffixLines();
+            int suffixStart = Math.min(lastLine, cursorLine + suffixLines);
+            int suffixEnd = Math.min(lastLine,
+                    cursorLine + suffixLines + settings.getRingChunkSize());
+            if (suffixEnd > suffixStart) {
+                addChunk(lines, suffixStart, suffixEnd, cursorLine, filename);
+            }
+
+            lastPickLine = cursorLine;
+        }
+    }
+
+    private boolean isDuplicateChunk(ContextChunk newChunk) {
+        return chunks.stream().anyMatch(newChunk::sameText) ||
+                queuedChunks.stream().anyMatch(newChunk::sameText);
+    }
+
+    private void evictSimilarChunks(ContextChunk newChunk) {
+        // Remove chunks that are very similar based on Jaccard similarity; sorted line hashes compare cheaply
+        chunks.removeIf(chunk -> chunk.lineSimilarity(newChunk) > SIMILARITY_THRESHOLD);
+        queuedChunks.removeIf(chunk -> chunk.lineSimilarity(newChunk) > SIMILARITY_THRESHOLD);
+        ringEvictionCount.incrementAndGet();
+    }
+
+    public int getRingSize() {
+        return chunks.size();
+    }
+
+    public int getQueuedSize() {
+        return queuedChunks.size();
+    }
+
+    /**
+     * @return the approximate number of bytes held by the ring and the queue
+     */
+    public long byteSize() {
+        long size = 0;
+        for (ContextChunk chunk : chunks) {
+            size += chunk.byteSize();
+        }
+        for (ContextChunk chunk : queuedChunks) {
+            size += chunk.byteSize();
+        }
+        return size;
+    }
+
+    /**
+     * Drops queued chunks, oldest first, then the coldest ring chunks until the ring and the queue
+     * fit in the given number of bytes.
+     *
+     * @return the number of bytes still held
+     */
+    public long trimToBytes(long maxBytes) {
+        long size = byteSize();
+        while (size > maxBytes) {
+            ContextChunk victim = queuedChunks.poll();
+            if (victim == null) {
+                victim = findColdest(chunks, false);
+                if (victim == null) {
+                    break;
+                }
+                if (!chunks.remove(victim)) {
+                    // Evicted meanwhile, its bytes are gone already
+                    size = byteSize();
+                    continue;
+                }
+            }
+            size -= victim.byteSize();
+        }
+        return size;
+    }
+
+    public long getElapsedTime() {
+        return System.currentTimeMillis() - lastCompletionStartTime;
+    }
+}
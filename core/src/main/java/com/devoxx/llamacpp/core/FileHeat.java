@@ -0,0 +1,172 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Tracks how "hot" each file is, from edit frequency and caret dwell time, with an exponential
+ * recency decay. Updates happen on every keystroke and caret move, so the table is made of
+ * primitive arrays with open addressing and allocates nothing on the update or scoring paths.
+ * Files are keyed by the hash of their path; a rare collision only merges two files' heat.
+ */
+public class FileHeat {
+
+    private static final int EMPTY = 0;
+    private static final double HALF_LIFE_MS = 10 * 60 * 1000.0;
+    private static final double DECAY_PER_MS = Math.log(2) / HALF_LIFE_MS;
+    private static final long MAX_DWELL_STEP_MS = 30_000;
+    private static final double DWELL_MS_PER_EDIT = 5_000.0;
+
+    private final int capacity;
+    private int[] keys;
+    private double[] edits;
+    private double[] dwell;
+    private long[] lastTouch;
+    private int size;
+
+    private int lastCaretKey = EMPTY;
+    private long lastCaretTime;
+
+    /**
+     * @param capacity number of table slots, rounded up to a power of two; half of them can be in use
+     */
+    public FileHeat(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+        allocate(this.capacity);
+    }
+
+    public synchronized void recordEdit(@NotNull String filename, long now) {
+        int slot = slotFor(keyOf(filename), now);
+        decay(slot, now);
+        edits[slot] += 1.0;
+    }
+
+    /**
+     * Records a caret move. Time between consecutive caret events in the same file counts as dwell
+     * time, capped so an editor left open overnight does not become the hottest file.
+     */
+    public synchronized void recordCaret(@NotNull String filename, long now) {
+        int key = keyOf(filename);
+        int slot = slotFor(key, now);
+        decay(slot, now);
+        if (key == lastCaretKey) {
+            dwell[slot] += Math.min(now - lastCaretTime, MAX_DWELL_STEP_MS);
+        }
+        lastCaretKey = key;
+        lastCaretTime = now;
+    }
+
+    /**
+     * @return the decayed heat of the file, 0 for files never touched
+     */
+    public synchronized double score(@NotNull String filename, long now) {
+        int slot = find(keyOf(filename));
+        if (slot < 0) {
+            return 0.0;
+        }
+        return heatOf(edits[slot], dwell[slot], lastTouch[slot], now);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        allocate(capacity);
+        lastCaretKey = EMPTY;
+    }
+
+    private void decay(int slot, long now) {
+        double factor = Math.exp(-DECAY_PER_MS * (now - lastTouch[slot]));
+        edits[slot] *= factor;
+        dwell[slot] *= factor;
+        lastTouch[slot] = now;
+    }
+
+    private int slotFor(int key, long now) {
+        int slot = find(key);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (size >= keys.length / 2) {
+            dropColdest(now);
+        }
+        slot = key & (keys.length - 1);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = key;
+        edits[slot] = 0.0;
+        dwell[slot] = 0.0;
+        lastTouch[slot] = now;
+        size++;
+        return slot;
+    }
+
+    private int find(int key) {
+        int slot = key & (keys.length - 1);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds the table with only the warmer half of the files. This is the only place that
+     * allocates, and it only runs once the table is full.
+     */
+    private void dropColdest(long now) {
+        int[] oldKeys = keys;
+        double[] oldEdits = edits;
+        double[] oldDwell = dwell;
+        long[] oldTouch = lastTouch;
+
+        double[] scores = new double[size];
+        int n = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                scores[n++] = heatOf(oldEdits[i], oldDwell[i], oldTouch[i], now);
+            }
+        }
+        Arrays.sort(scores);
+        double median = scores[n / 2];
+
+        allocate(oldKeys.length);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY && heatOf(oldEdits[i], oldDwell[i], oldTouch[i], now) > median) {
+                int slot = oldKeys[i] & (keys.length - 1);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = oldKeys[i];
+                edits[slot] = oldEdits[i];
+                dwell[slot] = oldDwell[i];
+                lastTouch[slot] = oldTouch[i];
+                size++;
+            }
+        }
+    }
+
+    private static double heatOf(double edits, double dwell, long lastTouch, long now) {
+        return (edits + dwell / DWELL_MS_PER_EDIT) * Math.exp(-DECAY_PER_MS * (now - lastTouch));
+    }
+
+    private void allocate(int length) {
+        keys = new int[length];
+        edits = new double[length];
+        dwell = new double[length];
+        lastTouch = new long[length];
+        size = 0;
+    }
+
+    private static int keyOf(@NotNull String filename) {
+        // String caches its hash; spread it and keep 0 free as the empty marker
+        int h = filename.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h == EMPTY ? 1 : h;
+    }
+}
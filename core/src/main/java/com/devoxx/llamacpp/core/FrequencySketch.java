@@ -0,0 +1,84 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often keys were seen recently, for the
+ * admission policy of the {@link LRUCache}. All counters are halved once the number of increments
+ * reaches ten times the cache capacity, so old popularity fades and the sketch adapts to the
+ * current file. Sixteen counters are packed in each long. Not thread-safe, the cache calls it
+ * under its lock.
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb8b22c31, 0x9e3779b9, 0x7f4a7c15};
+    // Clears the bit each counter receives from its upper neighbour when the words are shifted
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final long[] counters;
+    private final int widthMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(16, capacity * 4 - 1)) << 1;
+        this.counters = new long[DEPTH * width / 16];
+        this.widthMask = width - 1;
+        this.sampleSize = Math.max(10, capacity * 10);
+    }
+
+    void increment(@NotNull String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (count(index) < MAX_COUNT) {
+                counters[index >>> 4] += 1L << shift(index);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * @return the estimated number of recent occurrences of the key, at most 15
+     */
+    int frequency(@NotNull String key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, count(index(hash, row)));
+        }
+        return frequency;
+    }
+
+    private void age() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = (counters[i] >>> 1) & HALF_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int count(int index) {
+        return (int) (counters[index >>> 4] >>> shift(index)) & MAX_COUNT;
+    }
+
+    private static int shift(int index) {
+        return (index & 15) << 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return row * (widthMask + 1) + ((h ^ (h >>> 16)) & widthMask);
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,261 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The completion cache. Despite its name it uses the W-TinyLFU policy rather than plain LRU, so a
+ * burst of one-off entries cannot flush completions that are asked for again and again:
+ * <ul>
+ *     <li>new entries land in an LRU window, a fifth of the capacity, where recency alone decides. Typing
+ *     revisits recent prefixes a lot, so the window is larger than the usual 1%;</li>
+ *     <li>entries leaving the window are admitted to the main cache only if a {@link FrequencySketch}
+ *     says they were requested more often than the entry they would evict;</li>
+ *     <li>the main cache is a segmented LRU, entries hit while on probation move to the protected
+ *     segment, which holds 80% of it.</li>
+ * </ul>
+ * Entries carry their {@link Origin}. Speculative entries, cached ahead of the typing, do not count
+ * as a request of their key, so they only reach the main cache once they are actually used.
+ */
+public class LRUCache {
+
+    public static final float LOAD_FACTOR = 0.75f;
+    public static final String SHA_256 = "SHA-256";
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final double WINDOW_RATIO = 0.2;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    public enum Origin {
+        /** Cached from a completion the user asked for */
+        INTERACTIVE,
+        /** Cached ahead of the typing, like the completion after the first line */
+        SPECULATIVE
+    }
+
+    /**
+     * @param fingerprint what the key leaves out, compared by the caller, see {@link CacheKeyPolicy}
+     */
+    public record Entry(@NotNull String value, @NotNull Origin origin, long fingerprint) {
+    }
+
+    // All three in access order, the eldest entry is the least recently used
+    private final Map<String, Entry> window = new LinkedHashMap<>(16, LOAD_FACTOR, true);
+    private final Map<String, Entry> probation = new LinkedHashMap<>(16, LOAD_FACTOR, true);
+    private final Map<String, Entry> protectedSegment = new LinkedHashMap<>(16, LOAD_FACTOR, true);
+
+    private int capacity;
+    private int windowCapacity;
+    private int protectedCapacity;
+    private FrequencySketch sketch;
+    private long byteSize;
+
+    public LRUCache(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Resizes the cache. Growing keeps every entry, shrinking evicts probation entries first, then
+     * the window and then the protected segment, each least recently used first.
+     */
+    public synchronized void setCapacity(int capacity) {
+        if (sketch != null && Math.max(1, capacity) == this.capacity) {
+            return;
+        }
+        this.capacity = Math.max(1, capacity);
+        this.windowCapacity = Math.max(1, (int) (this.capacity * WINDOW_RATIO));
+        this.protectedCapacity = (int) ((this.capacity - windowCapacity) * PROTECTED_RATIO);
+        // Frequencies fade within a few times the capacity anyway, a fresh sketch is sized right
+        this.sketch = new FrequencySketch(this.capacity);
+
+        while (size() > this.capacity) {
+            evictOne();
+        }
+        while (window.size() > windowCapacity) {
+            moveEldest(window, probation);
+        }
+        while (protectedSegment.size() > protectedCapacity) {
+            moveEldest(protectedSegment, probation);
+        }
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    @Nullable
+    public String get(String key) {
+        Entry entry = getEntry(key);
+        return entry != null ? entry.value() : null;
+    }
+
+    /**
+     * Looks up the key, recording the request in the frequency sketch whether it hits or not.
+     */
+    @Nullable
+    public synchronized Entry getEntry(String key) {
+        sketch.increment(key);
+        return touch(key);
+    }
+
+    /**
+     * Checks for the key without counting it as a use, it neither promotes the entry nor feeds the sketch.
+     */
+    public synchronized boolean containsKey(String key) {
+        return window.containsKey(key) || protectedSegment.containsKey(key) || probation.containsKey(key);
+    }
+
+    public void put(String key, String value) {
+        put(key, value, Origin.INTERACTIVE, 0);
+    }
+
+    public synchronized void put(String key, String value, @NotNull Origin origin, long fingerprint) {
+        if (origin == Origin.INTERACTIVE) {
+            sketch.increment(key);
+        }
+
+        Entry previous = touch(key);
+        if (previous != null) {
+            // An entry that was used interactively stays interactive
+            Origin merged = previous.origin() == Origin.INTERACTIVE ? Origin.INTERACTIVE : origin;
+            segmentOf(key).put(key, new Entry(value, merged, fingerprint));
+            byteSize += entrySize(key, value) - entrySize(key, previous.value());
+            return;
+        }
+
+        window.put(key, new Entry(value, origin, fingerprint));
+        byteSize += entrySize(key, value);
+        if (window.size() > windowCapacity) {
+            admitFromWindow();
+        }
+    }
+
+    public synchronized int size() {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    /**
+     * @return the approximate number of bytes held by the cached keys and completions
+     */
+    public synchronized long byteSize() {
+        return byteSize;
+    }
+
+    /**
+     * Evicts entries, in the order of {@link #setCapacity}, until the cache fits in the given number of bytes.
+     *
+     * @return the number of bytes still held
+     */
+    public synchronized long trimToBytes(long maxBytes) {
+        while (byteSize > maxBytes && size() > 0) {
+            evictOne();
+        }
+        return byteSize;
+    }
+
+    /**
+     * The window victim competes with the eldest entry of the main cache, the more frequent one stays.
+     */
+    private void admitFromWindow() {
+        Iterator<Map.Entry<String, Entry>> eldest = window.entrySet().iterator();
+        Map.Entry<String, Entry> candidate = eldest.next();
+        eldest.remove();
+
+        int mainCapacity = capacity - windowCapacity;
+        if (probation.size() + protectedSegment.size() < mainCapacity) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        Map<String, Entry> victimSegment = !probation.isEmpty() ? probation : protectedSegment;
+        if (victimSegment.isEmpty()) {
+            byteSize -= entrySize(candidate.getKey(), candidate.getValue().value());
+            return;
+        }
+        Iterator<Map.Entry<String, Entry>> victims = victimSegment.entrySet().iterator();
+        Map.Entry<String, Entry> victim = victims.next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            victims.remove();
+            byteSize -= entrySize(victim.getKey(), victim.getValue().value());
+            probation.put(candidate.getKey(), candidate.getValue());
+        } else {
+            byteSize -= entrySize(candidate.getKey(), candidate.getValue().value());
+        }
+    }
+
+    /**
+     * Finds the entry and updates its recency, promoting probation entries to the protected segment.
+     */
+    @Nullable
+    private Entry touch(String key) {
+        Entry entry = window.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        entry = protectedSegment.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        entry = probation.remove(key);
+        if (entry != null) {
+            protectedSegment.put(key, entry);
+            if (protectedSegment.size() > protectedCapacity) {
+                moveEldest(protectedSegment, probation);
+            }
+        }
+        return entry;
+    }
+
+    @NotNull
+    private Map<String, Entry> segmentOf(String key) {
+        return window.containsKey(key) ? window : probation.containsKey(key) ? probation : protectedSegment;
+    }
+
+    private void evictOne() {
+        Map<String, Entry> segment = !probation.isEmpty() ? probation
+                : !window.isEmpty() ? window : protectedSegment;
+        Iterator<Map.Entry<String, Entry>> eldest = segment.entrySet().iterator();
+        Map.Entry<String, Entry> entry = eldest.next();
+        eldest.remove();
+        byteSize -= entrySize(entry.getKey(), entry.getValue().value());
+    }
+
+    private static void moveEldest(@NotNull Map<String, Entry> from, @NotNull Map<String, Entry> to) {
+        Iterator<Map.Entry<String, Entry>> eldest = from.entrySet().iterator();
+        Map.Entry<String, Entry> entry = eldest.next();
+        eldest.remove();
+        to.put(entry.getKey(), entry.getValue());
+    }
+
+    private static long entrySize(String key, String value) {
+        // Keys are hex digests and completions are mostly ASCII, which compact strings store as one byte per char
+        return key.length() + value.length() + ENTRY_OVERHEAD_BYTES;
+    }
+
+    @NotNull
+    public String generateKey(String prefix, String suffix) {
+        String combined = prefix + "|" + suffix;
+        try {
+            MessageDigest digest = MessageDigest.getInstance(SHA_256);
+            byte[] hash = digest.digest(combined.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hexString = new StringBuilder();
+            for (byte b : hash) {
+                String hex = Integer.toHexString(0xff & b);
+                if (hex.length() == 1) {
+                    hexString.append('0');
+                }
+                hexString.append(hex);
+            }
+            return hexString.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Fallback to a simple hash if SHA-256 is not available
+            return String.valueOf(combined.hashCode());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.devoxx.llamacpp.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free latency histogram with log-linear buckets: values below 16 microseconds get their own bucket,
+ * larger values are grouped in 8 buckets per power of two, which bounds the error of a percentile
+ * to about 12%. Recording is a single atomic increment, so it can sit on the completion path.
+ */
+public final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 4;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * Records a latency in milliseconds. Negative and NaN values are ignored.
+     */
+    public void record(double millis) {
+        if (!(millis >= 0)) {
+            return;
+        }
+        long micros = (long) (millis * 1000.0);
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMs() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : sumMicros.sum() / 1000.0 / n;
+    }
+
+    /**
+     * Returns the latency in milliseconds below which the given fraction of the recorded values fall,
+     * or 0 when nothing has been recorded.
+     *
+     * @param quantile a value between 0 and 1, e.g. 0.95 for p95
+     */
+    public double getPercentileMs(double quantile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return bucketMidpoint(i) / 1000.0;
+            }
+        }
+        return bucketMidpoint(BUCKETS - 1) / 1000.0;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sumMicros.reset();
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static double bucketMidpoint(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = MIN_EXPONENT + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + subBucket * width;
+        return lower + width / 2.0;
+    }
+}
@@ -0,0 +1,85 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Line start offsets over an immutable {@link CharSequence}, which is usually a window of a larger
+ * document. Lines are addressed with document line numbers, starting at {@link #getFirstLine()},
+ * and text is only materialized for the lines that are asked for, so the cost of extracting context
+ * depends on the window size and not on the size of the file.
+ */
+public final class LineIndex {
+
+    private final CharSequence text;
+    private final int firstLine;
+    private final int[] lineStarts;
+    private final int lineCount;
+
+    private LineIndex(@NotNull CharSequence text, int firstLine, int[] lineStarts, int lineCount) {
+        this.text = text;
+        this.firstLine = firstLine;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+    }
+
+    @NotNull
+    public static LineIndex of(@NotNull CharSequence text) {
+        return of(text, 0);
+    }
+
+    /**
+     * Indexes the lines of a window of a document.
+     *
+     * @param text      the window, starting at the beginning of a line
+     * @param firstLine the document line number of the first line of the window
+     */
+    @NotNull
+    public static LineIndex of(@NotNull CharSequence text, int firstLine) {
+        int[] starts = new int[16];
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + 1;
+            }
+        }
+        return new LineIndex(text, firstLine, starts, count);
+    }
+
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * @return the document line number after the last line of the window
+     */
+    public int getEndLine() {
+        return firstLine + lineCount;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the lines in [fromLine, toLine), clamped to the window and joined with newlines,
+     * without a trailing newline.
+     */
+    @NotNull
+    public String getText(int fromLine, int toLine) {
+        int from = Math.max(fromLine, firstLine) - firstLine;
+        int to = Math.min(toLine, getEndLine()) - firstLine;
+        if (to <= from) {
+            return "";
+        }
+        return text.subSequence(lineStarts[from], lineEnd(to - 1)).toString();
+    }
+
+    private int lineEnd(int line) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : text.length();
+    }
+}
@@ -0,0 +1,816 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The completion pipeline: completion cache, extra context, server requests and the local model.
+ * It has no IDE dependencies; the plugin extends it to report to the status bar and to react to
+ * low memory, and the CLI runs it headless.
+ */
+public class LlamaCore {
+    private static final Logger LOG = Logger.getLogger(LlamaCore.class.getName());
+    // Registered from the UI thread while pooled threads notify them
+    private final List<CompletionListener> listeners = new CopyOnWriteArrayList<>();
+    private static final long REQUEST_TIMEOUT_MS = 5000;
+
+    private final CompletionSettings settings;
+    private final CompletionMetrics metrics;
+    private final LlamaServer llamaServer;
+    private final LRUCache completionCache;
+    private final CacheKeyPolicy cacheKeys;
+    private final ExtraContext extraContext;
+    private final NGramCompleter localCompleter;
+    private final AcceptanceTracker acceptanceTracker;
+    private final TriggerPolicy triggerPolicy;
+    private final AdaptiveDebouncer debouncer;
+    private final PrefetchBatcher prefetchBatcher;
+    // The ranked candidates by cache key, most recently used last
+    private final Map<String, List<CandidateRanker.Candidate>> candidateLists = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<CandidateRanker.Candidate>> eldest) {
+            return size() > CompletionSettings.CANDIDATE_CACHE_KEYS;
+        }
+    };
+    private final AtomicInteger requestsInProgress;
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+    private final AtomicInteger serverFailures;
+    private final AtomicLong completionIds = new AtomicLong();
+    private volatile long lastCompletionId;
+    private volatile long circuitOpenUntil;
+    private volatile boolean reconnecting;
+    private volatile long lastProbeAttempt;
+    private volatile CompletionDetails lastCompletion;
+    private volatile SessionRecorder sessionRecorder;
+
+    public LlamaCore(@NotNull CompletionSettings settings) {
+        this(settings, new CompletionMetrics());
+    }
+
+    /**
+     * @param metrics where to record telemetry, which several instances may share
+     */
+    public LlamaCore(@NotNull CompletionSettings settings, @NotNull CompletionMetrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+        this.llamaServer = new LlamaServer(metrics, settings);
+        this.completionCache = new LRUCache(settings.getMaxCacheKeys());
+        this.cacheKeys = new CacheKeyPolicy(settings, completionCache);
+        this.extraContext = new ExtraContext(settings, this::getContextBudget);
+        this.localCompleter = new NGramCompleter(CompletionSettings.LOCAL_MODEL_MAX_NODES,
+                CompletionSettings.LOCAL_MODEL_MAX_VOCABULARY);
+        this.requestsInProgress = new AtomicInteger(0);
+        this.serverFailures = new AtomicInteger(0);
+        this.acceptanceTracker = new AcceptanceTracker(settings, metrics);
+        this.triggerPolicy = new TriggerPolicy(settings);
+        this.debouncer = new AdaptiveDebouncer(settings, metrics);
+        this.prefetchBatcher = new PrefetchBatcher(metrics,
+                () -> getContextBudget().maxConcurrentRequests(), requestsInProgress::get);
+
+        // Train the local model on the same chunks that feed input_extra
+        extraContext.addChunkListener(chunk -> localCompleter.train(chunk.text()));
+    }
+
+    @NotNull
+    public CompletionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Probes the server's capabilities in the background. Called at startup, and by the core itself
+     * after a reconnect or a change of endpoint. A probe already running is not repeated.
+     *
+     * @return the probed capabilities, null when the server could not be reached
+     */
+    @NotNull
+    public CompletableFuture<ServerCapabilities> probeServer() {
+        if (!probing.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(llamaServer.getCapabilities());
+        }
+        lastProbeAttempt = System.currentTimeMillis();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return llamaServer.probe();
+            } finally {
+                probing.set(false);
+            }
+        });
+    }
+
+    /**
+     * @return what the server reported when last probed, null when it was never reached
+     */
+    @Nullable
+    public ServerCapabilities getServerCapabilities() {
+        return llamaServer.getCapabilities();
+    }
+
+    /**
+     * @return the context sizes and the concurrency limit of the requests, see {@link ContextBudget}
+     */
+    @NotNull
+    public ContextBudget getContextBudget() {
+        return ContextBudget.of(settings, llamaServer.getCapabilities());
+    }
+
+    private void probeIfStale() {
+        ServerCapabilities capabilities = llamaServer.getCapabilities();
+        boolean stale = capabilities == null || !capabilities.endpoint().equals(settings.getEndpoint());
+        if (stale && System.currentTimeMillis() - lastProbeAttempt > CompletionSettings.PROBE_RETRY_MS) {
+            probeServer();
+        }
+    }
+
+    /**
+     * Releases memory when the IDE runs low: the completion cache and the ring are halved,
+     * the index is trimmed to a quarter of its budget and the local model is dropped.
+     * All of them refill from new activity.
+     */
+    public void shrinkCaches() {
+        long cacheBytes = completionCache.trimToBytes(completionCache.byteSize() / 2);
+        long contextBytes = extraContext.trimToBytes(extraContext.byteSize() / 2);
+        extraContext.getContextIndex().trimToBytes(settings.getMaxIndexMemoryKb() * 1024L / 4);
+        localCompleter.clear();
+        synchronized (candidateLists) {
+            candidateLists.clear();
+        }
+        LOG.info("Low memory, shrunk completion cache to " + cacheBytes + " bytes and context to " + contextBytes + " bytes");
+    }
+
+    /**
+     * Keeps the ring, the queue and the completion cache within maxContextMemoryKb together.
+     * The cache gives way first, the extra context is trimmed only when the cache alone does not suffice.
+     */
+    private void enforceMemoryBudget() {
+        long budget = settings.getMaxContextMemoryKb() * 1024L;
+        long contextBytes = extraContext.byteSize();
+        long cacheBytes = completionCache.trimToBytes(Math.max(0, budget - contextBytes));
+        if (contextBytes + cacheBytes > budget) {
+            extraContext.trimToBytes(budget - cacheBytes);
+        }
+    }
+
+    @Nullable
+    public LlamaResponse getCompletion(@NotNull String prefix, @NotNull String suffix) {
+        return getCompletion(prefix, suffix, 0);
+    }
+
+    /**
+     * @param nIndent the indentation of the caret line, completions stop at lines indented less
+     */
+    @Nullable
+    public LlamaResponse getCompletion(@NotNull String prefix, @NotNull String suffix, int nIndent) {
+        long startTime = System.nanoTime();
+        long completionId = completionIds.incrementAndGet();
+        lastCompletionId = completionId;
+        SessionRecorder recorder = sessionRecorder;
+        if (recorder != null) {
+            recorder.request(completionId, prefix.length(), suffix.length(), nIndent);
+        }
+
+        CompletionEvents.LockWaitEvent lockEvent = new CompletionEvents.LockWaitEvent();
+        lockEvent.begin();
+        boolean acquired = tryAcquireRequestLock();
+        lockEvent.completionId = completionId;
+        lockEvent.acquired = acquired;
+        lockEvent.commit();
+        if (!acquired) {
+            LOG.fine("Another completion request is in progress");
+            metrics.recordDroppedRequest();
+            recordSessionResponse(recorder, completionId, startTime, SessionEvent.Source.NONE, null);
+            return null;
+        }
+        metrics.recordQueueWait(elapsedMs(startTime));
+
+        try {
+            extraContext.markCompletionStart();
+
+            // First, check if we have a cached completion that matches
+            CompletionEvents.KeyGenerationEvent keyEvent = new CompletionEvents.KeyGenerationEvent();
+            keyEvent.begin();
+            CacheKeyPolicy.CacheKey cacheKey = cacheKeys.key(prefix, suffix);
+            keyEvent.completionId = completionId;
+            keyEvent.prefixLength = prefix.length();
+            keyEvent.suffixLength = suffix.length();
+            keyEvent.commit();
+
+            // Follow maxCacheKeys when it is changed in the settings, the resize keeps the entries
+            if (completionCache.getCapacity() != settings.getMaxCacheKeys()) {
+                completionCache.setCapacity(settings.getMaxCacheKeys());
+            }
+
+            CompletionEvents.CacheLookupEvent lookupEvent = new CompletionEvents.CacheLookupEvent();
+            lookupEvent.begin();
+            LRUCache.Entry cachedEntry = completionCache.getEntry(cacheKey.key());
+            if (cachedEntry != null && cachedEntry.fingerprint() != cacheKey.fingerprint()) {
+                // Same nearby lines, but the verification asked for by the settings failed
+                cachedEntry = null;
+            }
+            String cachedCompletion = cachedEntry != null ? cachedEntry.value() : null;
+            lookupEvent.end();
+            if (lookupEvent.shouldCommit()) {
+                lookupEvent.completionId = completionId;
+                lookupEvent.hit = cachedCompletion != null;
+                lookupEvent.cacheSize = completionCache.size();
+                lookupEvent.commit();
+            }
+
+            metrics.recordCacheLookup(CompletionMetrics.CacheTier.COMPLETION, cachedCompletion != null);
+            if (cachedEntry != null) {
+                metrics.recordCompletionCacheHit(cachedEntry.origin());
+                LOG.fine("Found cached completion for key: " + cacheKey);
+                updateLastCompletion(cachedCompletion, prefix, suffix);
+
+                // Create a response object for the cached completion
+                ServerCapabilities capabilities = llamaServer.getCapabilities();
+                LlamaResponse cachedResponse = LlamaResponse.local(
+                        cachedCompletion,
+                        capabilities != null ? Map.of(LlamaServer.N_CTX, capabilities.contextSize()) : Map.of(),
+                        completionCache.size()
+                );
+
+                showInfo(cachedResponse);
+
+                notifyListeners(cachedResponse);
+                metrics.recordEndToEnd(elapsedMs(startTime));
+                recordSessionResponse(recorder, completionId, startTime, SessionEvent.Source.CACHE, cachedResponse);
+                return cachedResponse;
+            }
+
+            // While the server keeps failing, the local model is the only source
+            if (isCircuitOpen()) {
+                LOG.fine("Server circuit is open, using local completion");
+                LlamaResponse localResponse = getProvisionalCompletion(prefix);
+                if (localResponse != null) {
+                    updateLastCompletion(localResponse.content(), prefix, suffix);
+                    notifyListeners(localResponse);
+                }
+                recordSessionResponse(recorder, completionId, startTime,
+                        localResponse != null ? SessionEvent.Source.LOCAL : SessionEvent.Source.NONE, localResponse);
+                return localResponse;
+            }
+
+            // If no cache hit, get completion from server
+            probeIfStale();
+            List<ContextChunk> context = buildContext(completionId, prefix, suffix);
+            List<CompletableFuture<LlamaResponse>> alternatives =
+                    requestCandidates(completionId, prefix, suffix, context, nIndent);
+            LlamaResponse response = llamaServer.getCompletion(
+                    completionId,
+                    prefix,
+                    suffix,
+                    context,
+                    nIndent
+            );
+            recordServerResult(response != null);
+
+            showInfo(response);
+
+            if (response != null && response.content() != null && !response.content().trim().isEmpty()) {
+                String completion = processCompletion(response.content(), prefix, suffix);
+                if (completion != null && !alternatives.isEmpty()) {
+                    CandidateRanker.Candidate best = rankCandidates(cacheKey.key(), prefix, suffix,
+                            CandidateRanker.Candidate.of(completion, response.meanLogProb(), suffix, 0), alternatives);
+                    if (best.index() != 0) {
+                        // The winner's own response, with its timings and probabilities
+                        completion = best.content();
+                        response = alternatives.get(best.index() - 1).getNow(response);
+                    }
+                }
+                if (completion != null) {
+                    completionCache.put(cacheKey.key(), completion, LRUCache.Origin.INTERACTIVE,
+                            cacheKey.fingerprint());
+                    enforceMemoryBudget();
+                    updateLastCompletion(completion, prefix, suffix);
+                    notifyListeners(response);
+
+                    // Cache potential future completions
+                    cacheFutureCompletions(prefix, suffix, completion);
+                }
+                metrics.recordEndToEnd(elapsedMs(startTime));
+                recordSessionResponse(recorder, completionId, startTime, SessionEvent.Source.SERVER, response);
+                return response;
+            }
+
+            recordSessionResponse(recorder, completionId, startTime, SessionEvent.Source.NONE, response);
+            return null;
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error getting completion", e);
+            recordSessionResponse(recorder, completionId, startTime, SessionEvent.Source.NONE, null);
+            return null;
+        } finally {
+            requestsInProgress.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends up to completionCandidates - 1 alternative candidates on the server slots left free,
+     * next to the request about to be sent. They hold a request permit each until they complete.
+     */
+    @NotNull
+    private List<CompletableFuture<LlamaResponse>> requestCandidates(long completionId, @NotNull String prefix,
+                                                                     @NotNull String suffix,
+                                                                     @NotNull List<ContextChunk> context, int nIndent) {
+        int wanted = settings.getCompletionCandidates() - 1;
+        if (wanted <= 0) {
+            return List.of();
+        }
+        int reserved;
+        while (true) {
+            int inProgress = requestsInProgress.get();
+            reserved = Math.min(wanted, freeSlots(inProgress));
+            if (reserved <= 0) {
+                return List.of();
+            }
+            if (requestsInProgress.compareAndSet(inProgress, inProgress + reserved)) {
+                break;
+            }
+        }
+
+        List<CompletableFuture<LlamaResponse>> alternatives = new ArrayList<>();
+        for (int candidate = 1; candidate <= reserved; candidate++) {
+            int index = candidate;
+            alternatives.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return llamaServer.getCompletion(completionId, prefix, suffix, context, nIndent, index);
+                } finally {
+                    requestsInProgress.decrementAndGet();
+                }
+            }));
+        }
+        return alternatives;
+    }
+
+    /**
+     * Ranks the first candidate with the alternatives that completed already, so they add no
+     * latency. The others join the ranked list when they complete, below the candidate shown.
+     *
+     * @return the best candidate
+     */
+    @NotNull
+    private CandidateRanker.Candidate rankCandidates(@NotNull String key, @NotNull String prefix, @NotNull String suffix,
+                                                     @NotNull CandidateRanker.Candidate first,
+                                                     @NotNull List<CompletableFuture<LlamaResponse>> alternatives) {
+        List<CandidateRanker.Candidate> candidates = new ArrayList<>();
+        candidates.add(first);
+        Map<Integer, CompletableFuture<LlamaResponse>> running = new LinkedHashMap<>();
+        for (int i = 0; i < alternatives.size(); i++) {
+            CompletableFuture<LlamaResponse> alternative = alternatives.get(i);
+            if (!alternative.isDone()) {
+                running.put(i + 1, alternative);
+            } else if (!alternative.isCompletedExceptionally()) {
+                CandidateRanker.Candidate candidate = candidateOf(alternative.getNow(null), prefix, suffix, i + 1);
+                if (candidate != null) {
+                    candidates.add(candidate);
+                }
+            }
+        }
+
+        List<CandidateRanker.Candidate> ranked = CandidateRanker.rank(candidates);
+        synchronized (candidateLists) {
+            candidateLists.put(key, ranked);
+        }
+        // Registered once the list is in place, an alternative completing meanwhile is added right away
+        running.forEach((index, alternative) -> alternative.thenAccept(late -> {
+            CandidateRanker.Candidate candidate = candidateOf(late, prefix, suffix, index);
+            if (candidate != null) {
+                addLateCandidate(key, candidate);
+            }
+        }));
+        metrics.recordCandidates(alternatives.size(), ranked.get(0).index() != 0);
+        return ranked.get(0);
+    }
+
+    @Nullable
+    private static CandidateRanker.Candidate candidateOf(@Nullable LlamaResponse response, @NotNull String prefix,
+                                                         @NotNull String suffix, int index) {
+        if (response == null || response.content() == null || response.content().isBlank()) {
+            return null;
+        }
+        String completion = processCompletion(response.content(), prefix, suffix);
+        return completion != null ? CandidateRanker.Candidate.of(completion, response.meanLogProb(), suffix, index) : null;
+    }
+
+    private void addLateCandidate(@NotNull String key, @NotNull CandidateRanker.Candidate candidate) {
+        synchronized (candidateLists) {
+            List<CandidateRanker.Candidate> ranked = candidateLists.get(key);
+            if (ranked == null) {
+                return;
+            }
+            // The candidate shown stays first
+            List<CandidateRanker.Candidate> others = new ArrayList<>(ranked.subList(1, ranked.size()));
+            others.add(candidate);
+            List<CandidateRanker.Candidate> updated = new ArrayList<>();
+            updated.add(ranked.get(0));
+            for (CandidateRanker.Candidate other : CandidateRanker.rank(others)) {
+                if (!other.content().equals(ranked.get(0).content())) {
+                    updated.add(other);
+                }
+            }
+            candidateLists.put(key, updated);
+        }
+    }
+
+    /**
+     * @return the completions ranked for the prefix and suffix, best first, empty when they were not
+     * requested as several candidates
+     */
+    @NotNull
+    public List<String> getCandidates(@NotNull String prefix, @NotNull String suffix) {
+        List<CandidateRanker.Candidate> ranked;
+        synchronized (candidateLists) {
+            ranked = candidateLists.get(cacheKeys.key(prefix, suffix).key());
+        }
+        return ranked == null ? List.of() : ranked.stream().map(CandidateRanker.Candidate::content).toList();
+    }
+
+    /**
+     * Replaces the last completion with the next candidate ranked for it, after the last one comes
+     * the first again. The cache entry follows, so the next request shows it without a server call.
+     *
+     * @return the next candidate, also sent to the listeners, or null when the last completion has no alternatives
+     */
+    @Nullable
+    public LlamaResponse nextCandidate() {
+        CompletionDetails completion = lastCompletion;
+        if (completion == null) {
+            return null;
+        }
+        List<String> candidates = getCandidates(completion.prefix(), completion.suffix());
+        if (candidates.size() < 2) {
+            return null;
+        }
+
+        String next = candidates.get((candidates.indexOf(completion.completion()) + 1) % candidates.size());
+        CacheKeyPolicy.CacheKey cacheKey = cacheKeys.key(completion.prefix(), completion.suffix());
+        completionCache.put(cacheKey.key(), next, LRUCache.Origin.INTERACTIVE, cacheKey.fingerprint());
+        updateLastCompletion(next, completion.prefix(), completion.suffix());
+        metrics.recordCandidateCycle();
+
+        LlamaResponse response = LlamaResponse.local(next, Map.of(), completionCache.size());
+        notifyListeners(response);
+        return response;
+    }
+
+    private static void recordSessionResponse(@Nullable SessionRecorder recorder, long completionId, long startTime,
+                                              @NotNull SessionEvent.Source source, @Nullable LlamaResponse response) {
+        if (recorder != null) {
+            recorder.response(completionId, source, elapsedMs(startTime), response);
+        }
+    }
+
+    /**
+     * Called with every cache or server response, null when the server did not answer.
+     * Does nothing by default, the plugin shows the response in the status bar.
+     */
+    protected void showInfo(@Nullable LlamaResponse response) {
+    }
+
+    /**
+     * Returns an instant suggestion from the local n-gram model, to be shown while the server
+     * request is in flight, until the caller supersedes it with the server result. The listeners
+     * are not notified of it.
+     */
+    @Nullable
+    public LlamaResponse getProvisionalCompletion(@NotNull String prefix) {
+        if (!settings.isLocalCompletionEnabled()) {
+            return null;
+        }
+
+        String prediction = localCompleter.predict(prefix, CompletionSettings.LOCAL_MODEL_MAX_TOKENS);
+        if (prediction == null) {
+            return null;
+        }
+        return LlamaResponse.local(prediction, Map.of(), 0);
+    }
+
+    public boolean isCircuitOpen() {
+        return System.currentTimeMillis() < circuitOpenUntil;
+    }
+
+    private void recordServerResult(boolean success) {
+        if (success) {
+            serverFailures.set(0);
+            if (reconnecting) {
+                // The server may have been restarted with another model or context size
+                reconnecting = false;
+                probeServer();
+            }
+            return;
+        }
+        reconnecting = true;
+        if (serverFailures.incrementAndGet() >= CompletionSettings.CIRCUIT_FAILURE_THRESHOLD) {
+            LOG.warning("Server failed " + serverFailures.get() + " times in a row, pausing requests");
+            circuitOpenUntil = System.currentTimeMillis() + CompletionSettings.CIRCUIT_OPEN_MS;
+            serverFailures.set(0);
+        }
+    }
+
+    /**
+     * @return the server slots neither the given requests in progress nor the prefetches in flight occupy.
+     * The batcher leaves one slot free of prefetches, so an interactive request waits for them only on a
+     * single-slot server.
+     */
+    private int freeSlots(int inProgress) {
+        return getContextBudget().maxConcurrentRequests() - inProgress - prefetchBatcher.getInFlightCount();
+    }
+
+    /**
+     * Waits for one of the maxConcurrentRequests request permits, one per server slot, counting the
+     * slots taken by prefetches.
+     */
+    private boolean tryAcquireRequestLock() {
+        long startTime = System.currentTimeMillis();
+
+        while (true) {
+            int inProgress = requestsInProgress.get();
+            if (freeSlots(inProgress) > 0) {
+                if (requestsInProgress.compareAndSet(inProgress, inProgress + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (System.currentTimeMillis() - startTime > REQUEST_TIMEOUT_MS) {
+                LOG.warning("Timeout waiting for completion lock");
+                return false;
+            }
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(settings.getMaxPromptMs() / 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    static @Nullable String processCompletion(@NotNull String rawCompletion, String prefix, String suffix) {
+        // Split completion into lines for processing
+        String[] completionLines = rawCompletion.split("\n");
+
+        // Remove trailing empty lines
+        while (completionLines.length > 0 && completionLines[completionLines.length - 1].trim().isEmpty()) {
+            completionLines = Arrays.copyOf(completionLines, completionLines.length - 1);
+        }
+
+        if (completionLines.length == 0) {
+            return null;
+        }
+
+        // Join the lines back together
+        return String.join("\n", completionLines);
+    }
+
+    private void cacheFutureCompletions(String prefix, String suffix, @NotNull String currentCompletion) {
+        // Split the current completion into lines
+        String[] completionLines = currentCompletion.split("\n");
+
+        if (completionLines.length > 1) {
+            // Cache the completion that would happen after accepting the first line
+            String futurePrefix = prefix + completionLines[0] + "\n";
+            String futureCompletion = String.join("\n",
+                    Arrays.copyOfRange(completionLines, 1, completionLines.length));
+
+            CacheKeyPolicy.CacheKey futureCacheKey = cacheKeys.key(futurePrefix, suffix);
+            completionCache.put(futureCacheKey.key(), futureCompletion, LRUCache.Origin.SPECULATIVE,
+                    futureCacheKey.fingerprint());
+
+            // Also try to get the next completion after this one, sent with the other prefetches
+            String nextPrefix = futurePrefix + futureCompletion;
+            CacheKeyPolicy.CacheKey nextCacheKey = cacheKeys.key(nextPrefix, suffix);
+            if (completionCache.containsKey(nextCacheKey.key())) {
+                return;
+            }
+            prefetchBatcher.submit(nextCacheKey.key(), () -> {
+                long futureCompletionId = completionIds.incrementAndGet();
+                return llamaServer.getCompletion(
+                        futureCompletionId,
+                        nextPrefix,
+                        suffix,
+                        buildContext(futureCompletionId, nextPrefix, suffix),
+                        getIndentationLevel(completionLines[completionLines.length - 1])
+                );
+            }, futureResponse -> {
+                if (futureResponse.content() != null) {
+                    String nextCompletion = processCompletion(futureResponse.content(), nextPrefix, suffix);
+                    if (nextCompletion != null) {
+                        completionCache.put(nextCacheKey.key(), nextCompletion, LRUCache.Origin.SPECULATIVE,
+                                nextCacheKey.fingerprint());
+                    }
+                }
+            });
+        }
+    }
+
+    @NotNull
+    private List<ContextChunk> buildContext(long completionId, @NotNull String prefix, @NotNull String suffix) {
+        CompletionEvents.ContextBuildEvent event = new CompletionEvents.ContextBuildEvent();
+        event.begin();
+        List<ContextChunk> chunks = extraContext.getContextChunks(prefix, suffix);
+        event.end();
+        if (event.shouldCommit()) {
+            event.completionId = completionId;
+            event.chunks = chunks.size();
+            event.contextBytes = chunks.stream().mapToLong(ContextChunk::byteSize).sum();
+            event.commit();
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the id of the most recent completion request, as carried by its {@link CompletionEvents}
+     */
+    public long getLastCompletionId() {
+        return lastCompletionId;
+    }
+
+    /**
+     * Starts or stops recording the requests and responses of this core, the caller records the
+     * editor events into the same recorder and closes it.
+     */
+    public void setSessionRecorder(@Nullable SessionRecorder recorder) {
+        this.sessionRecorder = recorder;
+    }
+
+    @Nullable
+    public SessionRecorder getSessionRecorder() {
+        return sessionRecorder;
+    }
+
+    @NotNull
+    public AcceptanceTracker getAcceptanceTracker() {
+        return acceptanceTracker;
+    }
+
+    /**
+     * Called for every document change, feeds the typing cadence to the acceptance tracker and the debouncer.
+     * The first keystroke after a pause also warms the connections up, while the debounce delay runs.
+     */
+    public void recordKeystroke() {
+        acceptanceTracker.recordKeystroke();
+        debouncer.recordKeystroke();
+        preconnect();
+    }
+
+    /**
+     * Opens a connection per server slot in the background when the server has closed the idle ones,
+     * so the next request does not pay for the connection setup. Called when an editor gains focus.
+     */
+    public void preconnect() {
+        if (!isCircuitOpen()) {
+            llamaServer.getConnection().preconnect(getContextBudget().maxConcurrentRequests());
+        }
+    }
+
+    @NotNull
+    public PrefetchBatcher getPrefetchBatcher() {
+        return prefetchBatcher;
+    }
+
+    @NotNull
+    public AdaptiveDebouncer getDebouncer() {
+        return debouncer;
+    }
+
+    @NotNull
+    public TriggerPolicy getTriggerPolicy() {
+        return triggerPolicy;
+    }
+
+    @NotNull
+    public ExtraContext getExtraContext() {
+        return extraContext;
+    }
+
+    private static double elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+
+    private int getIndentationLevel(@NotNull String line) {
+        int indent = 0;
+        while (indent < line.length() && Character.isWhitespace(line.charAt(indent))) {
+            indent++;
+        }
+        return indent;
+    }
+
+    private void updateLastCompletion(String completion, String prefix, String suffix) {
+        lastCompletion = new CompletionDetails(completion, prefix, suffix);
+    }
+
+    /**
+     * Called after the user inserted the beginning of the last completion, its first word or line.
+     * What is left is cached under the prefix that now ends with the accepted text and becomes the
+     * last completion, so the next request and the next accept are answered without a server round
+     * trip. Only when the user types something else does the cache miss and the server refine.
+     *
+     * @return the remainder, also sent to the listeners, or null when nothing is left or the text
+     * is not the beginning of the last completion
+     */
+    @Nullable
+    public LlamaResponse acceptPartial(@NotNull String accepted) {
+        CompletionDetails completion = lastCompletion;
+        if (completion == null || !completion.completion().startsWith(accepted)) {
+            return null;
+        }
+
+        String remainder = completion.completion().substring(accepted.length());
+        if (remainder.isBlank()) {
+            lastCompletion = null;
+            return null;
+        }
+
+        String prefix = completion.prefix() + accepted;
+        CacheKeyPolicy.CacheKey cacheKey = cacheKeys.key(prefix, completion.suffix());
+        completionCache.put(cacheKey.key(), remainder, LRUCache.Origin.INTERACTIVE, cacheKey.fingerprint());
+        updateLastCompletion(remainder, prefix, completion.suffix());
+
+        LlamaResponse response = LlamaResponse.local(remainder, Map.of(), completionCache.size());
+        notifyListeners(response);
+        return response;
+    }
+
+    @Nullable
+    public String getFirstLineOfLastCompletion() {
+        CompletionDetails completion = lastCompletion;
+        return completion == null ? null : firstLine(completion.completion());
+    }
+
+    @Nullable
+    public String getFirstWordOfLastCompletion() {
+        CompletionDetails completion = lastCompletion;
+        return completion == null ? null : firstWord(completion.completion());
+    }
+
+    @Nullable
+    static String firstLine(@NotNull String completion) {
+        String[] lines = completion.split("\n");
+        if (lines.length == 0) {
+            return null;
+        }
+
+        // If first line is blank but there are more lines, include the second line; the blank one
+        // is kept as is so the result stays a prefix of the completion
+        if (lines[0].trim().isEmpty() && lines.length > 1) {
+            return lines[0] + "\n" + lines[1];
+        }
+
+        return lines[0];
+    }
+
+    @Nullable
+    static String firstWord(@NotNull String completion) {
+        String firstLine = firstLine(completion);
+        if (firstLine == null) {
+            return null;
+        }
+
+        // Preserve leading whitespace
+        StringBuilder leadingSpace = new StringBuilder();
+        int contentStart = 0;
+        while (contentStart < firstLine.length() &&
+                Character.isWhitespace(firstLine.charAt(contentStart))) {
+            leadingSpace.append(firstLine.charAt(contentStart));
+            contentStart++;
+        }
+
+        // Get first word
+        String[] words = firstLine.substring(contentStart).split("\\s+", 2);
+        if (words.length == 0 || words[0].isEmpty()) {
+            return null;
+        }
+
+        return leadingSpace + words[0];
+    }
+
+    public void updateExtraContext(String text, String filename) {
+        extraContext.addChunk(text, filename);
+    }
+
+    public record CompletionDetails(String completion, String prefix, String suffix) {
+    }
+
+    public void addCompletionListener(CompletionListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeCompletionListener(CompletionListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void notifyListeners(LlamaResponse response) {
+        for (CompletionListener listener : listeners) {
+            listener.onNewCompletion(response);
+        }
+    }
+}
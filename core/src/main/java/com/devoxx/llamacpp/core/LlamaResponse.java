@@ -0,0 +1,101 @@
+package com.devoxx.llamacpp.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record LlamaResponse(
+        String content,
+        Map<String, Object> generation_settings,
+        boolean truncated,
+        int tokens_cached,
+        Timings timings,
+        int tokens_saved,
+        List<TokenProbability> completion_probabilities
+) {
+    /**
+     * Creates a response for a completion that was produced without a server round trip.
+     */
+    @NotNull
+    public static LlamaResponse local(String content, Map<String, Object> generationSettings, int tokensCached) {
+        return new LlamaResponse(content, generationSettings, false, tokensCached,
+                new Timings(0.0, 0, 0, 0.0, 0.0, 0.0, 0.0), 0, null);
+    }
+
+    /**
+     * @return the mean log-probability of the generated tokens, NaN when the request did not ask for n_probs.
+     * Tokens without probabilities are left out, tokens missing from the top tokens are not.
+     */
+    public double meanLogProb() {
+        if (completion_probabilities == null || completion_probabilities.isEmpty()) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        int count = 0;
+        for (TokenProbability probability : completion_probabilities) {
+            double logProb = probability.logProb();
+            if (!Double.isNaN(logProb)) {
+                sum += logProb;
+                count++;
+            }
+        }
+        return count == 0 ? Double.NaN : sum / count;
+    }
+
+    // For nested records, we also need to handle unknown properties
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Timings(
+            double prompt_ms,
+            int prompt_n,
+            int predicted_n,
+            double predicted_ms,
+            double prompt_per_second,
+            double predicted_per_second,
+            double prompt_per_token_ms
+    ) {}
+
+    /**
+     * The probability of a generated token, as reported with n_probs. Recent servers send the
+     * token's logprob, older ones the content and the probabilities of the top tokens.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record TokenProbability(
+            String token,
+            Double logprob,
+            String content,
+            List<Probability> probs
+    ) {
+        // The floor for a token missing from the top tokens, about log(1e-4)
+        static final double MIN_LOG_PROB = -9.2;
+
+        /**
+         * @return the token's log-probability. A token missing from the top tokens gets the
+         * probability they leave over, at most that of the least likely of them and at least
+         * MIN_LOG_PROB, rather than being left out of the mean. NaN when the server sent no probabilities.
+         */
+        public double logProb() {
+            if (logprob != null) {
+                return logprob;
+            }
+            if (probs == null || probs.isEmpty()) {
+                return Double.NaN;
+            }
+            double listed = 0;
+            double lowest = 1;
+            for (Probability probability : probs) {
+                if (probability.tok_str() != null && probability.tok_str().equals(content)) {
+                    return Math.log(probability.prob());
+                }
+                listed += probability.prob();
+                lowest = Math.min(lowest, probability.prob());
+            }
+            return Math.max(MIN_LOG_PROB, Math.log(Math.max(0, Math.min(lowest, 1 - listed))));
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Probability(String tok_str, double prob) {}
+}
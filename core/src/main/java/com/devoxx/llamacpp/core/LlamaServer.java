@@ -0,0 +1,479 @@
+package com.devoxx.llamacpp.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * The Llama.cpp server class doing the handling the completion request/response.
+ */
+public class LlamaServer {
+
+    private static final Logger LOG = Logger.getLogger(LlamaServer.class.getName());
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final int DEFAULT_TIMEOUT_SECONDS = 30;
+
+    public static final String INPUT_PREFIX = "input_prefix";
+    public static final String INPUT_SUFFIX = "input_suffix";
+    public static final String INPUT_EXTRA = "input_extra";
+    public static final String N_PREDICT = "n_predict";
+    public static final String TOP_K = "top_k";
+    public static final String TOP_P = "top_p";
+    public static final String STREAM = "stream";
+    public static final String N_INDENT = "n_indent";
+    public static final String SAMPLERS = "samplers";
+    public static final String CACHE_PROMPT = "cache_prompt";
+    public static final String T_MAX_PROMPT_MS = "t_max_prompt_ms";
+    public static final String T_MAX_PREDICT_MS = "t_max_predict_ms";
+    public static final String CONTENT_TYPE = "Content-Type";
+    public static final String CONTENT_TYPE1 = "application/json";
+    public static final String INFILL = "infill";
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String BEARER = "Bearer ";
+    public static final int STATUS_OK = 200;
+    public static final String SSE_DATA = "data: ";
+    public static final String CONTENT = "content";
+    public static final String STOP = "stop";
+    public static final String N_PROBS = "n_probs";
+    public static final String TEMPERATURE = "temperature";
+    public static final String SEED = "seed";
+    public static final String COMPLETION_PROBABILITIES = "completion_probabilities";
+    public static final String PROPS = "props";
+    public static final String SLOTS = "slots";
+    public static final String N_CTX = "n_ctx";
+
+    private final ServerConnection connection;
+    private final CompletionMetrics metrics;
+    private final CompletionSettings settings;
+    private volatile ServerCapabilities capabilities;
+
+    public LlamaServer(CompletionMetrics metrics, CompletionSettings settings) {
+        this.metrics = metrics;
+        this.settings = settings;
+        this.connection = new ServerConnection(settings, metrics);
+    }
+
+    /**
+     * @return the connections to the server, to warm them up before a request
+     */
+    @NotNull
+    public ServerConnection getConnection() {
+        return connection;
+    }
+
+    @Nullable
+    public LlamaResponse getCompletion(long completionId, String inputPrefix, String inputSuffix,
+                                       List<ContextChunk> extraContext, int nIndent) {
+        return getCompletion(completionId, inputPrefix, inputSuffix, extraContext, nIndent, 0);
+    }
+
+    /**
+     * @param candidate 0 for the usual sampling, the alternative candidates 1 and up are sampled
+     *                  with a temperature and a seed of their own, see {@link CandidateRanker}
+     */
+    @Nullable
+    public LlamaResponse getCompletion(long completionId, String inputPrefix, String inputSuffix,
+                                       List<ContextChunk> extraContext, int nIndent, int candidate) {
+        try {
+            ObjectMapper mapper = JsonMapper.builder()
+                    .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_PROPERTIES)
+                    .build();
+
+            // Configure to ignore unknown properties globally
+            mapper.configOverride(Record.class)
+                    .setIgnorals(JsonIgnoreProperties.Value.empty().withIgnoreUnknown());
+
+            CompletionEvents.RequestEncodeEvent encodeEvent = new CompletionEvents.RequestEncodeEvent();
+            encodeEvent.begin();
+            String jsonBody = encodeRequest(settings, inputPrefix, inputSuffix, extraContext, nIndent, candidate);
+            encodeEvent.end();
+            if (encodeEvent.shouldCommit()) {
+                encodeEvent.completionId = completionId;
+                encodeEvent.requestBytes = jsonBody.length();
+                encodeEvent.commit();
+            }
+
+            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                    .uri(URI.create(settings.getEndpoint() + "/" + INFILL))
+                    .header(CONTENT_TYPE, CONTENT_TYPE1)
+                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+                    .timeout(Duration.ofMillis(settings.getMaxPromptMs() + settings.getMaxPredictMs() + 1000));
+
+            if (!settings.getApiKey().isEmpty()) {
+                requestBuilder.header(AUTHORIZATION, BEARER + settings.getApiKey());
+            }
+            HttpRequest request = requestBuilder.build();
+
+            LlamaResponse result = settings.isStreamCompletions()
+                    ? getStreamedCompletion(completionId, request, inputSuffix, settings.getMaxPredictTokens())
+                    : getBlockingCompletion(completionId, request);
+            if (result != null) {
+                metrics.recordServerResponse(result);
+            }
+            return result;
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Error getting completion from server", e);
+            return null;
+        }
+    }
+
+    /**
+     * Asks the server for its context size, slots and model on /props, and for the slots' own
+     * context size and state on /slots when the server exposes it.
+     *
+     * @return the capabilities, also kept for {@link #getCapabilities()}, or null when the server could not be reached
+     */
+    @Nullable
+    public ServerCapabilities probe() {
+        String endpoint = settings.getEndpoint();
+        try {
+            JsonNode props = getJson(endpoint, PROPS);
+            if (props == null) {
+                return null;
+            }
+            // Servers started without --slots answer 501
+            JsonNode slots = getJson(endpoint, SLOTS);
+            ServerCapabilities probed = parseCapabilities(endpoint, props, slots);
+            LOG.info("Server at " + endpoint + " has " + probed.totalSlots() + " slots of "
+                    + probed.contextSize() + " tokens, model " + probed.model());
+            capabilities = probed;
+            return probed;
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "Error probing the server", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the capabilities found by the last successful {@link #probe()}, null before
+     */
+    @Nullable
+    public ServerCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    @Nullable
+    private JsonNode getJson(@NotNull String endpoint, @NotNull String path) throws IOException, InterruptedException {
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint + "/" + path))
+                .GET()
+                .timeout(Duration.ofSeconds(DEFAULT_TIMEOUT_SECONDS));
+        if (!settings.getApiKey().isEmpty()) {
+            requestBuilder.header(AUTHORIZATION, BEARER + settings.getApiKey());
+        }
+        HttpResponse<byte[]> response = connection.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != STATUS_OK) {
+            LOG.fine("Server returned status code " + response.statusCode() + " for /" + path);
+            return null;
+        }
+        return MAPPER.readTree(response.body());
+    }
+
+    /**
+     * Reads the capabilities from the bodies of /props and /slots. The slots' context size wins over
+     * the default generation settings, older servers report the slot state rather than is_processing.
+     */
+    @NotNull
+    static ServerCapabilities parseCapabilities(@NotNull String endpoint, @NotNull JsonNode props,
+                                                @Nullable JsonNode slots) {
+        int contextSize = props.path("default_generation_settings").path(N_CTX).asInt(props.path(N_CTX).asInt(0));
+        int totalSlots = props.path("total_slots").asInt(1);
+        int idleSlots = -1;
+        if (slots != null && slots.isArray() && !slots.isEmpty()) {
+            totalSlots = slots.size();
+            idleSlots = 0;
+            for (JsonNode slot : slots) {
+                boolean processing = slot.has("is_processing")
+                        ? slot.path("is_processing").asBoolean()
+                        : slot.path("state").asInt(0) != 0;
+                if (!processing) {
+                    idleSlots++;
+                }
+                contextSize = slot.path(N_CTX).asInt(contextSize);
+            }
+        }
+        String model = props.path("model_alias").asText(props.path("model_path").asText(""));
+        return new ServerCapabilities(endpoint, contextSize, Math.max(1, totalSlots), idleSlots, model);
+    }
+
+    /**
+     * Encodes the JSON body of an /infill request.
+     */
+    @NotNull
+    static String encodeRequest(@NotNull CompletionSettings settings, String inputPrefix, String inputSuffix,
+                                List<ContextChunk> extraContext, int nIndent) throws JsonProcessingException {
+        return encodeRequest(settings, inputPrefix, inputSuffix, extraContext, nIndent, 0);
+    }
+
+    /**
+     * Encodes the JSON body of an /infill request for the given candidate. With several candidates
+     * the token probabilities are asked for, to rank them.
+     */
+    @NotNull
+    static String encodeRequest(@NotNull CompletionSettings settings, String inputPrefix, String inputSuffix,
+                                List<ContextChunk> extraContext, int nIndent, int candidate)
+            throws JsonProcessingException {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put(INPUT_PREFIX, inputPrefix);
+        requestBody.put(INPUT_SUFFIX, inputSuffix);
+        requestBody.put(INPUT_EXTRA, extraContext);
+        requestBody.put(N_PREDICT, settings.getMaxPredictTokens());
+        requestBody.put(TOP_K, 40);
+        requestBody.put(TOP_P, 0.99);
+        requestBody.put(STREAM, settings.isStreamCompletions());
+        requestBody.put(N_INDENT, nIndent);
+        if (candidate > 0) {
+            requestBody.put(SAMPLERS, List.of(TOP_K, TOP_P, TEMPERATURE, INFILL));
+            requestBody.put(TEMPERATURE, CompletionSettings.CANDIDATE_TEMPERATURE);
+            requestBody.put(SEED, candidate);
+        } else {
+            requestBody.put(SAMPLERS, List.of(TOP_K, TOP_P, INFILL));
+        }
+        if (settings.getCompletionCandidates() > 1) {
+            requestBody.put(N_PROBS, 1);
+        }
+        requestBody.put(CACHE_PROMPT, true);
+        requestBody.put(T_MAX_PROMPT_MS, settings.getMaxPromptMs());
+        requestBody.put(T_MAX_PREDICT_MS, settings.getMaxPredictMs());
+        return MAPPER.writeValueAsString(requestBody);
+    }
+
+    /**
+     * Parses the body of a non-streamed /infill response.
+     */
+    static LlamaResponse parseResponse(byte[] body) throws IOException {
+        return MAPPER.readValue(body, LlamaResponse.class);
+    }
+
+    /**
+     * Parses the JSON payload of one server-sent event line, without its "data: " prefix.
+     */
+    static JsonNode parseEvent(@NotNull String data) throws IOException {
+        return MAPPER.readTree(data);
+    }
+
+    @Nullable
+    private LlamaResponse getBlockingCompletion(long completionId, HttpRequest request)
+            throws IOException, InterruptedException {
+        CompletionEvents.HttpSendEvent sendEvent = new CompletionEvents.HttpSendEvent();
+        sendEvent.begin();
+        HttpResponse<InputStream> response = connection.send(request,
+                HttpResponse.BodyHandlers.ofInputStream());
+        commitSend(sendEvent, completionId, response.statusCode(), false);
+
+        CompletionEvents.HttpReceiveEvent receiveEvent = new CompletionEvents.HttpReceiveEvent();
+        receiveEvent.begin();
+        byte[] body;
+        try (InputStream in = response.body()) {
+            body = in.readAllBytes();
+        }
+        connection.markUsed();
+        commitReceive(receiveEvent, completionId, body.length, 1, false);
+
+        if (response.statusCode() == STATUS_OK) {
+            CompletionEvents.ResponseParseEvent parseEvent = new CompletionEvents.ResponseParseEvent();
+            parseEvent.begin();
+            LlamaResponse result = parseResponse(body);
+            commitParse(parseEvent, completionId, body.length);
+            return result;
+        } else {
+            LOG.warning("Server returned status code: " + response.statusCode());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the server-sent events of a streamed infill request. The generated text is fed to a
+     * {@link SuffixOverlapDetector} as it arrives, and the stream is cancelled as soon as the model
+     * starts repeating the text after the caret.
+     */
+    @Nullable
+    private LlamaResponse getStreamedCompletion(long completionId, HttpRequest request, String inputSuffix,
+                                                int nPredict) throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        CompletionEvents.HttpSendEvent sendEvent = new CompletionEvents.HttpSendEvent();
+        sendEvent.begin();
+        HttpResponse<Stream<String>> response = connection.send(request, HttpResponse.BodyHandlers.ofLines());
+        commitSend(sendEvent, completionId, response.statusCode(), true);
+
+        if (response.statusCode() != STATUS_OK) {
+            response.body().close();
+            LOG.warning("Server returned status code: " + response.statusCode());
+            return null;
+        }
+
+        SuffixOverlapDetector detector = new SuffixOverlapDetector(inputSuffix, CompletionSettings.MIN_SUFFIX_OVERLAP_CHARS);
+        LlamaResponse finalChunk = null;
+        List<LlamaResponse.TokenProbability> probabilities = new ArrayList<>();
+        long firstTokenTime = 0;
+        int receivedTokens = 0;
+        long receivedChars = 0;
+        int receivedChunks = 0;
+
+        CompletionEvents.HttpReceiveEvent receiveEvent = new CompletionEvents.HttpReceiveEvent();
+        receiveEvent.begin();
+        // Closing the line stream cancels the underlying HTTP exchange
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                receivedChars += line.length() + 1;
+                if (!line.startsWith(SSE_DATA)) {
+                    continue;
+                }
+                receivedChunks++;
+
+                CompletionEvents.ResponseParseEvent parseEvent = new CompletionEvents.ResponseParseEvent();
+                parseEvent.begin();
+                JsonNode chunk = parseEvent(line.substring(SSE_DATA.length()));
+                commitParse(parseEvent, completionId, line.length() - SSE_DATA.length());
+                String content = chunk.path(CONTENT).asText("");
+                boolean stop = chunk.path(STOP).asBoolean(false);
+                if (stop) {
+                    // Parsed first: an overlap found in the last piece still ends a completed generation
+                    finalChunk = MAPPER.treeToValue(chunk, LlamaResponse.class);
+                } else {
+                    for (JsonNode probability : chunk.path(COMPLETION_PROBABILITIES)) {
+                        probabilities.add(MAPPER.treeToValue(probability, LlamaResponse.TokenProbability.class));
+                    }
+                }
+                if (!content.isEmpty()) {
+                    if (firstTokenTime == 0) {
+                        firstTokenTime = System.nanoTime();
+                    }
+                    receivedTokens++;
+                    if (detector.accept(content)) {
+                        break;
+                    }
+                }
+
+                if (stop) {
+                    break;
+                }
+            }
+        }
+        connection.markUsed();
+        commitReceive(receiveEvent, completionId, receivedChars, receivedChunks,
+                finalChunk == null && detector.isOverlapping());
+
+        if (finalChunk != null) {
+            detector.finish();
+            int tokensSaved = detector.isOverlapping() ? estimateTokens(detector.getTrimmedChars()) : 0;
+            return new LlamaResponse(detector.getCompletion(), finalChunk.generation_settings(),
+                    finalChunk.truncated(), finalChunk.tokens_cached(), finalChunk.timings(), tokensSaved,
+                    probabilities.isEmpty() ? finalChunk.completion_probabilities() : probabilities);
+        }
+
+        if (!detector.isOverlapping()) {
+            LOG.warning("Completion stream ended without a final chunk");
+            return null;
+        }
+
+        // Cancelled early: the server never sent its timings, so report what we measured locally.
+        // Like a completed stream, only the trimmed tokens count as saved: the model may have stopped
+        // soon anyway, the rest of the n_predict budget is counted apart.
+        int tokensSaved = estimateTokens(detector.getTrimmedChars());
+        int unusedBudget = nPredict > 0 ? Math.max(0, nPredict - receivedTokens) : 0;
+        LOG.fine("Cancelled completion stream overlapping the suffix, saved ~" + tokensSaved + " tokens");
+        metrics.recordCancelledStream(unusedBudget);
+
+        long endTime = System.nanoTime();
+        double promptMs = (firstTokenTime - startTime) / 1_000_000.0;
+        double predictedMs = (endTime - firstTokenTime) / 1_000_000.0;
+        LlamaResponse.Timings timings = new LlamaResponse.Timings(
+                promptMs, 0, receivedTokens, predictedMs, 0.0,
+                predictedMs > 0 ? receivedTokens * 1000.0 / predictedMs : 0.0, 0.0);
+
+        return new LlamaResponse(detector.getCompletion(), Map.of(), false, 0, timings, tokensSaved, probabilities);
+    }
+
+    private static void commitSend(CompletionEvents.HttpSendEvent event, long completionId,
+                                   int statusCode, boolean streamed) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.completionId = completionId;
+            event.statusCode = statusCode;
+            event.streamed = streamed;
+            event.commit();
+        }
+    }
+
+    private static void commitReceive(CompletionEvents.HttpReceiveEvent event, long completionId,
+                                      long responseBytes, int chunks, boolean cancelled) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.completionId = completionId;
+            event.responseBytes = responseBytes;
+            event.chunks = chunks;
+            event.cancelled = cancelled;
+            event.commit();
+        }
+    }
+
+    private static void commitParse(CompletionEvents.ResponseParseEvent event, long completionId, long bytes) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.completionId = completionId;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    private static int estimateTokens(int chars) {
+        return (chars + CompletionSettings.CHARS_PER_TOKEN - 1) / CompletionSettings.CHARS_PER_TOKEN;
+    }
+
+//    public void prepareFutureCompletion(List<ContextChunk> extraContext) {
+//        try {
+//            LlamaSettings settings = LlamaSettings.getInstance();
+//
+//            Map<String, Object> requestBody = new HashMap<>();
+//            requestBody.put(INPUT_PREFIX, "");
+//            requestBody.put(INPUT_SUFFIX, "");
+//            requestBody.put(INPUT_EXTRA, extraContext);
+//            requestBody.put(N_PREDICT, 1);
+//            requestBody.put(TOP_K, 40);
+//            requestBody.put(TOP_P, 0.99);
+//            requestBody.put(STREAM, false);
+//            requestBody.put(SAMPLERS, List.of(TEMPERATURE));
+//            requestBody.put(CACHE_PROMPT, true);
+//            requestBody.put(T_MAX_PROMPT_MS, 1);
+//            requestBody.put(T_MAX_PREDICT_MS, 1);
+//
+//            String jsonBody = MAPPER.writeValueAsString(requestBody);
+//
+//            HttpRequest request = HttpRequest.newBuilder()
+//                    .uri(URI.create(settings.getEndpoint() + INFILL))
+//                    .header(CONTENT_TYPE, CONTENT_TYPE1)
+//                    .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
+//                    .build();
+//
+//            // Send request asynchronously
+//            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+//        } catch (Exception e) {
+//            LOG.error("Error preparing future completion", e);
+//        }
+//    }
+}
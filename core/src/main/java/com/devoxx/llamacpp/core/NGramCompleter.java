@@ -0,0 +1,260 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small in-process n-gram model over recently seen code, used to show an instant provisional
+ * suggestion while llama-server is still working, or as the only source when the server is down.
+ * <p>
+ * The model is a token trie stored in primitive arrays: child lookups go through an open-addressing
+ * table keyed by (parent, token), and every node remembers its most frequent child so prediction is
+ * a handful of array reads per token. When the node budget is exhausted the trie is cleared and
+ * retrained from new chunks, which keeps memory bounded.
+ */
+public class NGramCompleter {
+
+    private static final int ORDER = 6;
+    private static final int MIN_COUNT = 2;
+    private static final int MAX_PREFIX_CHARS = 256;
+    private static final int INITIAL_NODES = 4096;
+    private static final long EMPTY = -1L;
+    private static final String NEWLINE = "\n";
+
+    private final int maxNodes;
+    private final int maxVocabulary;
+
+    private final Map<String, Integer> vocabulary = new HashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+
+    private int[] nodeToken;
+    private int[] nodeCount;
+    private int[] nodeBestChild;
+    private int nodes;
+
+    private long[] childKeys;
+    private int[] childValues;
+    private int childMask;
+
+    public NGramCompleter(int maxNodes, int maxVocabulary) {
+        // Capacities stay powers of two so the child table can be indexed with a mask
+        this.maxNodes = Integer.highestOneBit(Math.max(maxNodes, 2));
+        this.maxVocabulary = maxVocabulary;
+        clear();
+    }
+
+    /**
+     * Adds all n-grams of the given text to the model.
+     */
+    public synchronized void train(@NotNull String text) {
+        int[] ids = toIds(tokenize(text), true);
+        for (int i = 0; i < ids.length; i++) {
+            int node = 0;
+            for (int j = i; j < Math.min(i + ORDER, ids.length) && ids[j] >= 0; j++) {
+                int child = getOrCreateChild(node, ids[j]);
+                if (child < 0) {
+                    // Node budget exhausted, start over with the text that is still arriving
+                    clear();
+                    return;
+                }
+                nodeCount[child]++;
+                int best = nodeBestChild[node];
+                if (best < 0 || nodeCount[child] > nodeCount[best]) {
+                    nodeBestChild[node] = child;
+                }
+                node = child;
+            }
+        }
+    }
+
+    /**
+     * Predicts the rest of the current line from the end of the prefix.
+     *
+     * @return the predicted text, or null if the model has nothing confident to say
+     */
+    @Nullable
+    public synchronized String predict(@NotNull String prefix, int maxTokens) {
+        String tail = prefix.length() > MAX_PREFIX_CHARS ? prefix.substring(prefix.length() - MAX_PREFIX_CHARS) : prefix;
+        int[] context = toIds(tokenize(tail), false);
+        if (context.length == 0) {
+            return null;
+        }
+
+        // Unknown or missing context tokens are -1, which makes the longer contexts back off
+        int[] window = new int[ORDER - 1];
+        Arrays.fill(window, -1);
+        int known = Math.min(window.length, context.length);
+        System.arraycopy(context, context.length - known, window, window.length - known, known);
+        StringBuilder prediction = new StringBuilder();
+
+        for (int n = 0; n < maxTokens; n++) {
+            int next = predictNext(window);
+            if (next < 0) {
+                break;
+            }
+            String token = tokens.get(next);
+            if (NEWLINE.equals(token)) {
+                break;
+            }
+            prediction.append(token);
+
+            System.arraycopy(window, 1, window, 0, window.length - 1);
+            window[window.length - 1] = next;
+        }
+
+        return prediction.toString().isBlank() ? null : prediction.toString();
+    }
+
+    public synchronized int size() {
+        return nodes;
+    }
+
+    public synchronized void clear() {
+        vocabulary.clear();
+        tokens.clear();
+
+        int capacity = Math.min(INITIAL_NODES, maxNodes);
+        nodeToken = new int[capacity];
+        nodeCount = new int[capacity];
+        nodeBestChild = new int[capacity];
+        nodeBestChild[0] = -1;
+        nodes = 1;
+
+        childKeys = new long[capacity * 2];
+        Arrays.fill(childKeys, EMPTY);
+        childValues = new int[capacity * 2];
+        childMask = childKeys.length - 1;
+    }
+
+    private int predictNext(int[] window) {
+        // Back off from the longest context to bigrams, single tokens predict too much noise
+        for (int start = 0; start < window.length - 1; start++) {
+            int node = 0;
+            for (int i = start; i < window.length && node >= 0; i++) {
+                node = window[i] < 0 ? -1 : findChild(node, window[i]);
+            }
+            if (node >= 0) {
+                int best = nodeBestChild[node];
+                if (best >= 0 && nodeCount[best] >= MIN_COUNT) {
+                    return nodeToken[best];
+                }
+            }
+        }
+        return -1;
+    }
+
+    private int findChild(int parent, int token) {
+        long key = ((long) parent << 32) | token;
+        int slot = mix(key) & childMask;
+        while (childKeys[slot] != EMPTY) {
+            if (childKeys[slot] == key) {
+                return childValues[slot];
+            }
+            slot = (slot + 1) & childMask;
+        }
+        return -1;
+    }
+
+    private int getOrCreateChild(int parent, int token) {
+        long key = ((long) parent << 32) | token;
+        int slot = mix(key) & childMask;
+        while (childKeys[slot] != EMPTY) {
+            if (childKeys[slot] == key) {
+                return childValues[slot];
+            }
+            slot = (slot + 1) & childMask;
+        }
+
+        if (nodes == nodeToken.length) {
+            if (nodeToken.length >= maxNodes) {
+                return -1;
+            }
+            grow();
+            return getOrCreateChild(parent, token);
+        }
+
+        int child = nodes++;
+        nodeToken[child] = token;
+        nodeCount[child] = 0;
+        nodeBestChild[child] = -1;
+        childKeys[slot] = key;
+        childValues[slot] = child;
+        return child;
+    }
+
+    private void grow() {
+        int capacity = Math.min(nodeToken.length * 2, maxNodes);
+        nodeToken = Arrays.copyOf(nodeToken, capacity);
+        nodeCount = Arrays.copyOf(nodeCount, capacity);
+        nodeBestChild = Arrays.copyOf(nodeBestChild, capacity);
+
+        long[] oldKeys = childKeys;
+        int[] oldValues = childValues;
+        childKeys = new long[capacity * 2];
+        Arrays.fill(childKeys, EMPTY);
+        childValues = new int[capacity * 2];
+        childMask = childKeys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = mix(oldKeys[i]) & childMask;
+                while (childKeys[slot] != EMPTY) {
+                    slot = (slot + 1) & childMask;
+                }
+                childKeys[slot] = oldKeys[i];
+                childValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int[] toIds(@NotNull List<String> text, boolean addUnknown) {
+        int[] ids = new int[text.size()];
+        for (int i = 0; i < ids.length; i++) {
+            Integer id = vocabulary.get(text.get(i));
+            if (id == null && addUnknown && tokens.size() < maxVocabulary) {
+                id = tokens.size();
+                vocabulary.put(text.get(i), id);
+                tokens.add(text.get(i));
+            }
+            ids[i] = id == null ? -1 : id;
+        }
+        return ids;
+    }
+
+    /**
+     * Splits text into identifier runs, whitespace runs, newlines and single punctuation characters,
+     * so that concatenating the tokens gives back the original text.
+     */
+    @NotNull
+    static List<String> tokenize(@NotNull String text) {
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int end = i + 1;
+            if (Character.isJavaIdentifierPart(c)) {
+                while (end < text.length() && Character.isJavaIdentifierPart(text.charAt(end))) {
+                    end++;
+                }
+            } else if (c != '\n' && Character.isWhitespace(c)) {
+                while (end < text.length() && text.charAt(end) != '\n' && Character.isWhitespace(text.charAt(end))) {
+                    end++;
+                }
+            }
+            result.add(text.substring(i, end));
+            i = end;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the speculative requests of {@link LlamaCore} in batches. Requests are collected for
+ * PREFETCH_BATCH_WINDOW_MS and go to the server together, one per slot, so that llama-server
+ * decodes them in the same batch instead of one after the other. Each response is handed back to
+ * the callback of its request, which caches it.
+ * <p>
+ * Interactive requests come first: one slot is kept for them, and a batch waits while they occupy
+ * the server. Of the waiting requests the most recent are sent first, the oldest are dropped past
+ * PREFETCH_MAX_PENDING as the typing has probably moved on from them.
+ */
+public final class PrefetchBatcher {
+    private static final Logger LOG = Logger.getLogger(PrefetchBatcher.class.getName());
+
+    private final CompletionMetrics metrics;
+    private final IntSupplier slots;
+    private final IntSupplier interactiveRequests;
+    // Insertion order, the most recent request last
+    private final LinkedHashMap<String, Prefetch> pending = new LinkedHashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+    private boolean flushScheduled;
+
+    private record Prefetch(@NotNull Supplier<LlamaResponse> request, @NotNull Consumer<LlamaResponse> onResponse) {
+    }
+
+    /**
+     * @param slots               the number of requests the server runs at once
+     * @param interactiveRequests the number of interactive requests in progress
+     */
+    PrefetchBatcher(@NotNull CompletionMetrics metrics, @NotNull IntSupplier slots,
+                    @NotNull IntSupplier interactiveRequests) {
+        this.metrics = metrics;
+        this.slots = slots;
+        this.interactiveRequests = interactiveRequests;
+    }
+
+    /**
+     * Queues a request for the next batch. A request with the same key already queued or in flight is not repeated.
+     *
+     * @param request    sends the request, returning null when the server did not answer
+     * @param onResponse called with the response from a pooled thread, not called when there is none
+     */
+    public synchronized void submit(@NotNull String key, @NotNull Supplier<LlamaResponse> request,
+                                    @NotNull Consumer<LlamaResponse> onResponse) {
+        if (inFlight.contains(key) || pending.containsKey(key)) {
+            return;
+        }
+        pending.put(key, new Prefetch(request, onResponse));
+        if (pending.size() > CompletionSettings.PREFETCH_MAX_PENDING) {
+            Iterator<String> oldest = pending.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+            metrics.recordPrefetchDropped();
+        }
+        scheduleFlush();
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the number of prefetches sent and not answered yet, each occupying a server slot
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            CompletableFuture.runAsync(this::flush,
+                    CompletableFuture.delayedExecutor(CompletionSettings.PREFETCH_BATCH_WINDOW_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void flush() {
+        Map<String, Prefetch> batch = new LinkedHashMap<>();
+        synchronized (this) {
+            flushScheduled = false;
+            int total = Math.max(1, slots.getAsInt());
+            // One slot is left to the next interactive request, a single slot is used only while idle
+            int reserved = total > 1 ? 1 : 0;
+            int free = total - reserved - interactiveRequests.getAsInt() - inFlight.size();
+
+            List<String> newestFirst = new ArrayList<>(pending.keySet());
+            for (int i = newestFirst.size() - 1; i >= 0 && batch.size() < free; i--) {
+                String key = newestFirst.get(i);
+                batch.put(key, pending.remove(key));
+            }
+            inFlight.addAll(batch.keySet());
+            if (!pending.isEmpty()) {
+                scheduleFlush();
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        metrics.recordPrefetchBatch(batch.size());
+        batch.forEach((key, prefetch) -> CompletableFuture.runAsync(() -> {
+            try {
+                LlamaResponse response = prefetch.request().get();
+                if (response != null) {
+                    prefetch.onResponse().accept(response);
+                }
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Error prefetching completion", e);
+            } finally {
+                completed(key);
+            }
+        }));
+    }
+
+    private synchronized void completed(@NotNull String key) {
+        inFlight.remove(key);
+        // A freed slot may let the waiting requests through before the next window
+        if (!pending.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+}
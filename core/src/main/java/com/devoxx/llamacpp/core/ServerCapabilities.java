@@ -0,0 +1,16 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * What the server reported on /props and /slots when it was last probed.
+ *
+ * @param endpoint    the endpoint that was probed, a change of endpoint asks for a new probe
+ * @param contextSize the context size of one slot, in tokens
+ * @param totalSlots  the number of requests the server processes in parallel
+ * @param idleSlots   the slots that were idle when probed, -1 when /slots is disabled on the server
+ * @param model       the model file or alias, empty when not reported
+ */
+public record ServerCapabilities(@NotNull String endpoint, int contextSize, int totalSlots, int idleSlots,
+                                 @NotNull String model) {
+}
@@ -0,0 +1,169 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The HTTP connections of a {@link LlamaServer}.
+ * <ul>
+ *     <li>HTTP/1.1 is pinned: on plain http the JDK client would otherwise offer an h2c upgrade,
+ *     which llama-server does not speak;</li>
+ *     <li>llama-server closes connections idle for SERVER_KEEP_ALIVE_MS, so after a pause
+ *     {@link #preconnect(int)} opens one connection per slot ahead of the request, with cheap /health
+ *     requests sent at once;</li>
+ *     <li>a request sent on a pooled connection the server closed meanwhile fails without a single
+ *     response byte, it is sent once more on a new one. Any other failure is thrown: the server may
+ *     already be working on the request.</li>
+ * </ul>
+ * The time to the response headers is recorded, separately for requests sent after an idle
+ * period without a preconnect, along with the duration of the preconnects.
+ * <p>
+ * The JDK's own pool settings (jdk.httpclient.*) are system properties shared by the whole JVM, the
+ * IDE included, so they are left alone.
+ */
+public final class ServerConnection {
+    private static final Logger LOG = Logger.getLogger(ServerConnection.class.getName());
+    private static final String HEALTH = "health";
+    // The JDK client's message for a connection that ended before the first byte of the status line
+    private static final String NO_RESPONSE_BYTES = "header parser received no bytes";
+
+    private final CompletionSettings settings;
+    private final CompletionMetrics metrics;
+    private final AtomicBoolean preconnecting = new AtomicBoolean(false);
+    private volatile HttpClient httpClient;
+    private volatile long lastUsedNanos;
+
+    ServerConnection(@NotNull CompletionSettings settings, @NotNull CompletionMetrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Built on the first request: a client starts a selector thread, which cores that never reach
+     * a server, or are created by the thousand in stress tests, should not pay for.
+     */
+    @NotNull
+    private HttpClient httpClient() {
+        HttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    client = HttpClient.newBuilder()
+                            .version(HttpClient.Version.HTTP_1_1)
+                            .connectTimeout(Duration.ofSeconds(LlamaServer.DEFAULT_TIMEOUT_SECONDS))
+                            .build();
+                    httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Sends the request and waits for the response headers, once more when the pooled connection turned out to be closed.
+     */
+    @NotNull
+    public <T> HttpResponse<T> send(@NotNull HttpRequest request, @NotNull HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        boolean cold = isIdle();
+        boolean reused = lastUsedNanos != 0;
+        long startTime = System.nanoTime();
+        HttpResponse<T> response;
+        try {
+            response = httpClient().send(request, bodyHandler);
+        } catch (IOException e) {
+            if (!reused || !isStaleConnection(e)) {
+                throw e;
+            }
+            // The server never saw the request, the failed attempt is not part of the sample
+            LOG.log(Level.FINE, "Resending on a new connection", e);
+            metrics.recordStaleConnection();
+            cold = true;
+            startTime = System.nanoTime();
+            response = httpClient().send(request, bodyHandler);
+        }
+        markUsed();
+        metrics.recordTimeToFirstByte((System.nanoTime() - startTime) / 1_000_000.0, cold);
+        return response;
+    }
+
+    /**
+     * Called once a response body was read, the connection idles from then on.
+     */
+    void markUsed() {
+        lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * Opens up to the given number of connections when the existing ones were probably closed by
+     * the server, by sending that many /health requests at once. Returns right away, does nothing
+     * while a preconnect is running or the connections are still fresh.
+     */
+    @NotNull
+    public CompletableFuture<Void> preconnect(int connections) {
+        if (!isIdle() || !preconnecting.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(settings.getEndpoint() + "/" + HEALTH))
+                .GET()
+                .timeout(Duration.ofSeconds(LlamaServer.DEFAULT_TIMEOUT_SECONDS));
+        if (!settings.getApiKey().isEmpty()) {
+            requestBuilder.header(LlamaServer.AUTHORIZATION, LlamaServer.BEARER + settings.getApiKey());
+        }
+        HttpRequest request = requestBuilder.build();
+
+        CompletableFuture<?>[] opened = new CompletableFuture<?>[Math.max(1, connections)];
+        for (int i = 0; i < opened.length; i++) {
+            long startTime = System.nanoTime();
+            opened[i] = httpClient().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenRun(() -> metrics.recordConnect((System.nanoTime() - startTime) / 1_000_000.0));
+        }
+        return CompletableFuture.allOf(opened)
+                .whenComplete((ignored, error) -> {
+                    // A failed preconnect is not tried again before the keep-alive period either
+                    markUsed();
+                    preconnecting.set(false);
+                    if (error != null) {
+                        LOG.log(Level.FINE, "Preconnect to " + settings.getEndpoint() + " failed", error);
+                    }
+                })
+                .exceptionally(error -> null);
+    }
+
+    /**
+     * The JDK client resends such failures itself for GET requests only, the completion POSTs are
+     * resent by {@link #send} when an earlier exchange left a connection in the pool. A connection
+     * cut once the server answered, a timeout or a refused connection is not stale.
+     *
+     * @return true when the request failed before any response byte arrived
+     */
+    static boolean isStaleConnection(@NotNull IOException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains(NO_RESPONSE_BYTES)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true when no exchange happened for SERVER_KEEP_ALIVE_MS, the server has closed the connections by now
+     */
+    private boolean isIdle() {
+        long lastUsed = lastUsedNanos;
+        return lastUsed == 0
+                || System.nanoTime() - lastUsed > CompletionSettings.SERVER_KEEP_ALIVE_MS * 1_000_000L;
+    }
+}
@@ -0,0 +1,129 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces the words of recorded code with pseudo-words, keeping everything the completion pipeline
+ * reacts to: lengths, line structure, whitespace, punctuation and which words repeat. The same word
+ * always maps to the same pseudo-word within one recording, so cache keys, suffix overlaps and
+ * context similarity behave as with the original code. The mapping is keyed with a random salt that
+ * is never written, so it cannot be reversed by hashing a dictionary.
+ * <p>
+ * Edits are anonymized on their own, so a word typed key by key does not read like the same word
+ * in a file snapshot. Replays stay consistent with themselves, as every keystroke maps the same way.
+ */
+final class SessionAnonymizer {
+
+    private static final int MAX_CACHED_WORDS = 100_000;
+    private static final String LOWER = "abcdefghijklmnopqrstuvwxyz";
+    private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String DIGITS = "0123456789";
+
+    /** Keywords of the common languages give away nothing and keep the replayed code plausible */
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue",
+            "default", "do", "double", "else", "enum", "extends", "final", "finally", "float", "for", "if",
+            "implements", "import", "instanceof", "int", "interface", "long", "new", "null", "package",
+            "private", "protected", "public", "return", "short", "static", "super", "switch", "this",
+            "throw", "throws", "try", "void", "volatile", "while", "true", "false", "var", "record",
+            "fun", "val", "object", "when", "is", "in", "as", "def", "elif", "except", "lambda", "pass",
+            "raise", "with", "yield", "None", "True", "False", "and", "or", "not", "from", "function",
+            "let", "async", "await", "export", "typeof", "undefined", "self");
+
+    private final byte[] salt = new byte[16];
+    private final Map<String, String> words = new HashMap<>();
+    private final MessageDigest digest;
+
+    SessionAnonymizer() {
+        new SecureRandom().nextBytes(salt);
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return the text with every word that is not a keyword replaced, all other characters kept
+     */
+    @NotNull
+    synchronized String anonymize(@NotNull CharSequence text) {
+        StringBuilder result = new StringBuilder(text.length());
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                result.append(c);
+                i++;
+                continue;
+            }
+
+            int end = i + 1;
+            while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+                end++;
+            }
+            String word = text.subSequence(i, end).toString();
+            result.append(KEYWORDS.contains(word) ? word : pseudoWord(word));
+            i = end;
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return a pseudo-path that keeps only the file extension, which decides how the file is treated
+     */
+    @NotNull
+    synchronized String anonymizePath(@NotNull String path) {
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        String extension = dot > slash ? path.substring(dot) : "";
+        byte[] hash = hash(path);
+        StringBuilder name = new StringBuilder("file-");
+        for (int i = 0; i < 6; i++) {
+            name.append(String.format("%02x", hash[i]));
+        }
+        return name.append(extension).toString();
+    }
+
+    @NotNull
+    private String pseudoWord(@NotNull String word) {
+        String pseudo = words.get(word);
+        if (pseudo != null) {
+            return pseudo;
+        }
+
+        byte[] hash = hash(word);
+        StringBuilder result = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            int value = (hash[i % hash.length] & 0xFF) + i / hash.length;
+            if (Character.isDigit(c)) {
+                result.append(DIGITS.charAt(value % DIGITS.length()));
+            } else if (Character.isUpperCase(c)) {
+                result.append(UPPER.charAt(value % UPPER.length()));
+            } else {
+                result.append(LOWER.charAt(value % LOWER.length()));
+            }
+        }
+
+        if (words.size() >= MAX_CACHED_WORDS) {
+            words.clear();
+        }
+        pseudo = result.toString();
+        words.put(word, pseudo);
+        return pseudo;
+    }
+
+    private byte[] hash(@NotNull String value) {
+        digest.update(salt);
+        return digest.digest(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,61 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One entry of a recorded completion session, see {@link SessionRecorder} and {@link SessionLog}.
+ * Times are milliseconds since the start of the recording. Files are referred to by the id their
+ * {@link FileSnapshot} assigned, offsets and lines by their position in that file.
+ */
+public sealed interface SessionEvent {
+
+    long timeMs();
+
+    /**
+     * The content of a file the first time the session touches it, the following events edit it.
+     */
+    record FileSnapshot(long timeMs, int fileId, @NotNull String path, @NotNull String text) implements SessionEvent {
+    }
+
+    record Edit(long timeMs, int fileId, int offset, int removedLength, @NotNull String inserted) implements SessionEvent {
+    }
+
+    record CaretMove(long timeMs, int fileId, int line) implements SessionEvent {
+    }
+
+    /**
+     * A completion was requested at the offset, by typing or by the trigger action.
+     */
+    record Trigger(long timeMs, int fileId, int offset, boolean manual) implements SessionEvent {
+    }
+
+    record Request(long timeMs, long completionId, int prefixLength, int suffixLength, int nIndent)
+            implements SessionEvent {
+    }
+
+    /**
+     * How a request was answered. The server timings are zero for the other sources.
+     */
+    record Response(long timeMs, long completionId, @NotNull Source source, double latencyMs, int contentLength,
+                    int tokensCached, int promptTokens, double promptMs, int predictedTokens, double predictedMs)
+            implements SessionEvent {
+    }
+
+    record Accept(long timeMs, @NotNull AcceptKind kind, int length) implements SessionEvent {
+    }
+
+    enum Source {
+        /** Dropped or failed, nothing was shown */
+        NONE,
+        CACHE,
+        SERVER,
+        LOCAL
+    }
+
+    enum AcceptKind {
+        /** A lookup element of the completion popup */
+        LOOKUP,
+        LINE,
+        WORD
+    }
+}
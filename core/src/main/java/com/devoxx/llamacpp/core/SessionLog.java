@@ -0,0 +1,222 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The binary format of recorded sessions: a gzip stream with a header followed by one record per
+ * {@link SessionEvent}. A record is a type byte, the time since the previous record and the fields
+ * of the event. Integers are unsigned varints, durations are stored in microseconds and strings as
+ * their UTF-8 length and bytes, so a keystroke takes a handful of bytes.
+ */
+public final class SessionLog {
+
+    static final int MAGIC = 0x4C4C5352; // "LLSR"
+    static final int VERSION = 1;
+
+    private static final int FILE_SNAPSHOT = 1;
+    private static final int EDIT = 2;
+    private static final int CARET_MOVE = 3;
+    private static final int TRIGGER = 4;
+    private static final int REQUEST = 5;
+    private static final int RESPONSE = 6;
+    private static final int ACCEPT = 7;
+
+    private SessionLog() {
+    }
+
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long lastTimeMs;
+
+        public Writer(@NotNull Path path, long startEpochMs) throws IOException {
+            // Sync flush, so a flushed log reads back up to there even if it is never closed
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(path), true)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(startEpochMs);
+        }
+
+        public void write(@NotNull SessionEvent event) throws IOException {
+            if (event instanceof SessionEvent.FileSnapshot e) {
+                header(FILE_SNAPSHOT, e.timeMs());
+                writeVarint(e.fileId());
+                writeString(e.path());
+                writeString(e.text());
+            } else if (event instanceof SessionEvent.Edit e) {
+                header(EDIT, e.timeMs());
+                writeVarint(e.fileId());
+                writeVarint(e.offset());
+                writeVarint(e.removedLength());
+                writeString(e.inserted());
+            } else if (event instanceof SessionEvent.CaretMove e) {
+                header(CARET_MOVE, e.timeMs());
+                writeVarint(e.fileId());
+                writeVarint(e.line());
+            } else if (event instanceof SessionEvent.Trigger e) {
+                header(TRIGGER, e.timeMs());
+                writeVarint(e.fileId());
+                writeVarint(e.offset());
+                out.writeBoolean(e.manual());
+            } else if (event instanceof SessionEvent.Request e) {
+                header(REQUEST, e.timeMs());
+                writeVarint(e.completionId());
+                writeVarint(e.prefixLength());
+                writeVarint(e.suffixLength());
+                writeVarint(e.nIndent());
+            } else if (event instanceof SessionEvent.Response e) {
+                header(RESPONSE, e.timeMs());
+                writeVarint(e.completionId());
+                out.writeByte(e.source().ordinal());
+                writeMicros(e.latencyMs());
+                writeVarint(e.contentLength());
+                writeVarint(e.tokensCached());
+                writeVarint(e.promptTokens());
+                writeMicros(e.promptMs());
+                writeVarint(e.predictedTokens());
+                writeMicros(e.predictedMs());
+            } else if (event instanceof SessionEvent.Accept e) {
+                header(ACCEPT, e.timeMs());
+                out.writeByte(e.kind().ordinal());
+                writeVarint(e.length());
+            }
+        }
+
+        /**
+         * Writes the records so far to the file as complete compressed blocks.
+         */
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void header(int type, long timeMs) throws IOException {
+            out.writeByte(type);
+            // Events are written in order, a clock step back is recorded as no delay
+            writeVarint(Math.max(0, timeMs - lastTimeMs));
+            lastTimeMs = Math.max(lastTimeMs, timeMs);
+        }
+
+        private void writeMicros(double ms) throws IOException {
+            writeVarint(Math.max(0, Math.round(ms * 1000)));
+        }
+
+        private void writeString(@NotNull String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    public static final class Reader implements Closeable {
+        private final DataInputStream in;
+        private final long startEpochMs;
+        private long timeMs;
+
+        public Reader(@NotNull Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(path))));
+            if (in.readInt() != MAGIC) {
+                in.close();
+                throw new IOException("Not a session log: " + path);
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                in.close();
+                throw new IOException("Unsupported session log version " + version + ": " + path);
+            }
+            this.startEpochMs = in.readLong();
+        }
+
+        /**
+         * @return when the recording started, in milliseconds since the epoch
+         */
+        public long getStartEpochMs() {
+            return startEpochMs;
+        }
+
+        /**
+         * @return the next event, or null at the end of the log. A log cut short, because the IDE
+         * did not close it, ends at its last complete record.
+         */
+        @Nullable
+        public SessionEvent read() throws IOException {
+            int type;
+            try {
+                type = in.readUnsignedByte();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            try {
+                timeMs += readVarint();
+                return switch (type) {
+                    case FILE_SNAPSHOT -> new SessionEvent.FileSnapshot(timeMs, readInt(), readString(), readString());
+                    case EDIT -> new SessionEvent.Edit(timeMs, readInt(), readInt(), readInt(), readString());
+                    case CARET_MOVE -> new SessionEvent.CaretMove(timeMs, readInt(), readInt());
+                    case TRIGGER -> new SessionEvent.Trigger(timeMs, readInt(), readInt(), in.readBoolean());
+                    case REQUEST -> new SessionEvent.Request(timeMs, readVarint(), readInt(), readInt(), readInt());
+                    case RESPONSE -> new SessionEvent.Response(timeMs, readVarint(),
+                            SessionEvent.Source.values()[in.readUnsignedByte()], readMicros(),
+                            readInt(), readInt(), readInt(), readMicros(), readInt(), readMicros());
+                    case ACCEPT -> new SessionEvent.Accept(timeMs,
+                            SessionEvent.AcceptKind.values()[in.readUnsignedByte()], readInt());
+                    default -> throw new IOException("Unknown session event type " + type);
+                };
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private double readMicros() throws IOException {
+            return readVarint() / 1000.0;
+        }
+
+        private int readInt() throws IOException {
+            return (int) readVarint();
+        }
+
+        @NotNull
+        private String readString() throws IOException {
+            byte[] bytes = new byte[readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+}
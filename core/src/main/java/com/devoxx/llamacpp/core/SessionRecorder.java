@@ -0,0 +1,235 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the completion traffic of a session into a {@link SessionLog}: edits, caret moves,
+ * triggers and accepts from the editor, requests and responses from {@link LlamaCore}, each with
+ * its time. The {@link SessionReplayer} drives a core through the same session later, to compare
+ * cache policies, schedulers and context strategies offline.
+ * <p>
+ * Recording is opt-in. Contents and paths are anonymized unless asked otherwise. Callers only pass
+ * immutable snapshots, the anonymizing and writing happens on the recorder's own thread.
+ */
+public class SessionRecorder implements Closeable {
+    private static final Logger LOG = Logger.getLogger(SessionRecorder.class.getName());
+
+    public static final String FILE_EXTENSION = ".llsr";
+    private static final int MAX_SNAPSHOT_CHARS = 1024 * 1024;
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path path;
+    private final SessionLog.Writer writer;
+    private final SessionAnonymizer anonymizer;
+    private final ExecutorService executor;
+    private final long startNanos = System.nanoTime();
+    // Only used on the recorder thread
+    private final Map<String, Integer> fileIds = new HashMap<>();
+    private final Set<String> skippedFiles = new HashSet<>();
+    private volatile boolean failed;
+
+    /**
+     * @param anonymize whether to replace file contents and paths, see {@link SessionAnonymizer}
+     */
+    public SessionRecorder(@NotNull Path path, boolean anonymize) throws IOException {
+        this.path = path;
+        this.writer = new SessionLog.Writer(path, System.currentTimeMillis());
+        this.anonymizer = anonymize ? new SessionAnonymizer() : null;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Llama session recorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts an anonymized recording in a new file of the directory, named after the current time.
+     */
+    @NotNull
+    public static SessionRecorder start(@NotNull Path directory) throws IOException {
+        Files.createDirectories(directory);
+        String name = "session-" + LocalDateTime.now().format(FILE_NAME_FORMAT) + FILE_EXTENSION;
+        return new SessionRecorder(directory.resolve(name), true);
+    }
+
+    @NotNull
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Records the content of a file, when it is opened or changed outside the editor.
+     */
+    public void fileOpened(@NotNull String filePath, @NotNull CharSequence text) {
+        long time = now();
+        submit(() -> snapshot(time, filePath, text));
+    }
+
+    /**
+     * @param text the document after the edit, recorded instead of the edit when the file is new
+     */
+    public void edit(@NotNull String filePath, int offset, int removedLength, @NotNull CharSequence inserted,
+                     @NotNull CharSequence text) {
+        long time = now();
+        String insertedText = inserted.toString();
+        submit(() -> {
+            // The snapshot of a new file already contains the edit
+            boolean known = fileIds.containsKey(filePath);
+            Integer fileId = fileId(time, filePath, text);
+            if (known && fileId != null) {
+                writer.write(new SessionEvent.Edit(time, fileId, offset, removedLength, anonymize(insertedText)));
+            }
+        });
+    }
+
+    /**
+     * @param text the document, recorded first when the file is new
+     */
+    public void caretMove(@NotNull String filePath, int line, @NotNull CharSequence text) {
+        long time = now();
+        submit(() -> {
+            Integer fileId = fileId(time, filePath, text);
+            if (fileId != null) {
+                writer.write(new SessionEvent.CaretMove(time, fileId, line));
+            }
+        });
+    }
+
+    /**
+     * @param text the document, recorded first when the file is new
+     */
+    public void trigger(@NotNull String filePath, int offset, boolean manual, @NotNull CharSequence text) {
+        long time = now();
+        submit(() -> {
+            Integer fileId = fileId(time, filePath, text);
+            if (fileId != null) {
+                writer.write(new SessionEvent.Trigger(time, fileId, offset, manual));
+            }
+        });
+    }
+
+    public void accept(@NotNull SessionEvent.AcceptKind kind, int length) {
+        long time = now();
+        submit(() -> writer.write(new SessionEvent.Accept(time, kind, length)));
+    }
+
+    void request(long completionId, int prefixLength, int suffixLength, int nIndent) {
+        long time = now();
+        submit(() -> writer.write(new SessionEvent.Request(time, completionId, prefixLength, suffixLength, nIndent)));
+    }
+
+    void response(long completionId, @NotNull SessionEvent.Source source, double latencyMs,
+                  @Nullable LlamaResponse response) {
+        long time = now();
+        String content = response != null ? response.content() : null;
+        LlamaResponse.Timings timings = response != null ? response.timings() : null;
+        SessionEvent.Response event = new SessionEvent.Response(time, completionId, source, latencyMs,
+                content != null ? content.length() : 0,
+                response != null ? response.tokens_cached() : 0,
+                timings != null ? timings.prompt_n() : 0,
+                timings != null ? timings.prompt_ms() : 0,
+                timings != null ? timings.predicted_n() : 0,
+                timings != null ? timings.predicted_ms() : 0);
+        submit(() -> writer.write(event));
+    }
+
+    /**
+     * Writes the pending events and closes the log.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOG.warning("Session recorder did not finish writing " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not close session log " + path, e);
+        }
+    }
+
+    private long now() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private void submit(@NotNull RecorderTask task) {
+        if (failed) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                if (failed) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (IOException e) {
+                    // The rest of the session would be inconsistent, stop at the first failure
+                    failed = true;
+                    LOG.log(Level.WARNING, "Stopped recording session to " + path, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed, events racing with close are dropped
+        }
+    }
+
+    /**
+     * @return the id of the file, recording its snapshot first when the session did not see it yet,
+     * or null when the file is too large to record
+     */
+    @Nullable
+    private Integer fileId(long time, @NotNull String filePath, @NotNull CharSequence text) throws IOException {
+        Integer fileId = fileIds.get(filePath);
+        return fileId != null || skippedFiles.contains(filePath) ? fileId : snapshot(time, filePath, text);
+    }
+
+    @Nullable
+    private Integer snapshot(long time, @NotNull String filePath, @NotNull CharSequence text) throws IOException {
+        if (text.length() > MAX_SNAPSHOT_CHARS) {
+            skippedFiles.add(filePath);
+            return null;
+        }
+
+        Integer fileId = fileIds.get(filePath);
+        if (fileId == null) {
+            fileId = fileIds.size();
+            fileIds.put(filePath, fileId);
+        }
+        String recordedPath = anonymizer != null ? anonymizer.anonymizePath(filePath) : filePath;
+        writer.write(new SessionEvent.FileSnapshot(time, fileId, recordedPath, anonymize(text)));
+        return fileId;
+    }
+
+    @NotNull
+    private String anonymize(@NotNull CharSequence text) {
+        return anonymizer != null ? anonymizer.anonymize(text) : text.toString();
+    }
+
+    private interface RecorderTask {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,245 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Drives a {@link LlamaCore} through a recorded session with the recorded timing: documents are
+ * rebuilt from the snapshots and edits, caret moves feed the extra context the way the editor
+ * listener does, and every trigger requests a completion with the windows of the completion
+ * contributor. Replaying one log against cores with different settings, caches or schedulers
+ * compares them on the same traffic; the recorded responses are the baseline.
+ */
+public class SessionReplayer {
+
+    private final LlamaCore core;
+    private final CompletionSettings settings;
+    private final Map<Integer, StringBuilder> documents = new HashMap<>();
+    private final Map<Integer, String> paths = new HashMap<>();
+
+    public SessionReplayer(@NotNull LlamaCore core, @NotNull CompletionSettings settings) {
+        this.core = core;
+        this.settings = settings;
+    }
+
+    /**
+     * @param speed     how much faster than recorded to replay, 0 replays without waiting
+     * @param onRequest called after every replayed request with its response, null when there was
+     *                  none, and its latency in milliseconds
+     */
+    @NotNull
+    public ReplayResult replay(@NotNull Path log, double speed,
+                               @Nullable BiConsumer<LlamaResponse, Double> onRequest)
+            throws IOException, InterruptedException {
+        ReplayResult result = new ReplayResult();
+        long startNanos = System.nanoTime();
+        long nextRingUpdateMs = settings.getRingUpdateMs();
+        boolean lastAnswered = false;
+
+        try (SessionLog.Reader reader = new SessionLog.Reader(log)) {
+            for (SessionEvent event = reader.read(); event != null; event = reader.read()) {
+                if (speed > 0) {
+                    long dueNanos = startNanos + (long) (event.timeMs() * 1_000_000 / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        TimeUnit.NANOSECONDS.sleep(waitNanos);
+                    }
+                }
+
+                // The listener moves queued chunks into the ring at a fixed rate, in session time
+                while (nextRingUpdateMs <= event.timeMs()) {
+                    core.getExtraContext().updateRingBuffer();
+                    nextRingUpdateMs += settings.getRingUpdateMs();
+                }
+
+                if (event instanceof SessionEvent.FileSnapshot snapshot) {
+                    documents.put(snapshot.fileId(), new StringBuilder(snapshot.text()));
+                    paths.put(snapshot.fileId(), snapshot.path());
+                    core.getExtraContext().getContextIndex().indexFile(snapshot.path(), snapshot.text());
+                } else if (event instanceof SessionEvent.Edit edit) {
+                    applyEdit(edit);
+                } else if (event instanceof SessionEvent.CaretMove caret) {
+                    StringBuilder document = documents.get(caret.fileId());
+                    if (document != null) {
+                        String path = paths.get(caret.fileId());
+                        core.getExtraContext().recordCaretMove(path);
+                        core.getExtraContext().updateContextAroundCursor(caret.line(), LineIndex.of(document), path);
+                    }
+                } else if (event instanceof SessionEvent.Trigger trigger) {
+                    LlamaResponse response = requestCompletion(trigger, onRequest, result);
+                    lastAnswered = response != null;
+                } else if (event instanceof SessionEvent.Response response) {
+                    result.recordedLatency.record(response.latencyMs());
+                    if (response.source() != SessionEvent.Source.NONE) {
+                        result.recordedAnswered++;
+                    }
+                } else if (event instanceof SessionEvent.Accept) {
+                    result.accepts++;
+                    if (lastAnswered) {
+                        result.acceptsAnswered++;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private void applyEdit(@NotNull SessionEvent.Edit edit) {
+        StringBuilder document = documents.get(edit.fileId());
+        if (document == null) {
+            return;
+        }
+        int offset = Math.min(edit.offset(), document.length());
+        int end = Math.min(offset + edit.removedLength(), document.length());
+        int removedLines = countNewLines(document, offset, end);
+        document.replace(offset, end, edit.inserted());
+
+        String path = paths.get(edit.fileId());
+        core.getExtraContext().recordEdit(path);
+
+        // Like the index updater, only the edited lines are re-chunked
+        int insertedLines = countNewLines(edit.inserted(), 0, edit.inserted().length());
+        int fromLine = countNewLines(document, 0, offset);
+        ContextIndex index = core.getExtraContext().getContextIndex();
+        if (!index.updateLines(path, LineIndex.of(document), fromLine, fromLine + insertedLines + 1,
+                insertedLines - removedLines)) {
+            index.indexFile(path, document);
+        }
+    }
+
+    @Nullable
+    private LlamaResponse requestCompletion(@NotNull SessionEvent.Trigger trigger,
+                                            @Nullable BiConsumer<LlamaResponse, Double> onRequest,
+                                            @NotNull ReplayResult result) {
+        StringBuilder document = documents.get(trigger.fileId());
+        if (document == null) {
+            return null;
+        }
+        int offset = Math.min(trigger.offset(), document.length());
+
+        // The same windows as the completion contributor
+        int lineStart = lineStart(document, offset, 0);
+        ContextBudget budget = core.getContextBudget();
+        String prefix = document.substring(lineStart(document, offset, budget.prefixLines()), offset);
+        String suffix = document.substring(offset, lineEnd(document, offset, budget.suffixLines()));
+        int nIndent = 0;
+        while (lineStart + nIndent < offset && document.charAt(lineStart + nIndent) == ' ') {
+            nIndent++;
+        }
+
+        long start = System.nanoTime();
+        LlamaResponse response = core.getCompletion(prefix, suffix, nIndent);
+        double latencyMs = (System.nanoTime() - start) / 1_000_000.0;
+
+        result.triggers++;
+        result.replayedLatency.record(latencyMs);
+        if (response != null) {
+            result.answered++;
+        }
+        if (onRequest != null) {
+            onRequest.accept(response, latencyMs);
+        }
+        return response;
+    }
+
+    /**
+     * @return the start of the line the given number of lines above the line of the offset
+     */
+    private static int lineStart(@NotNull CharSequence text, int offset, int linesAbove) {
+        int newLines = 0;
+        for (int i = offset - 1; i >= 0; i--) {
+            if (text.charAt(i) == '\n' && newLines++ == linesAbove) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the end of the line the given number of lines below the line of the offset, without its newline
+     */
+    private static int lineEnd(@NotNull CharSequence text, int offset, int linesBelow) {
+        int newLines = 0;
+        for (int i = offset; i < text.length(); i++) {
+            if (text.charAt(i) == '\n' && newLines++ == linesBelow) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    private static int countNewLines(@NotNull CharSequence text, int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The outcome of a replay next to what was recorded.
+     */
+    public static final class ReplayResult {
+        private final LatencyHistogram recordedLatency = new LatencyHistogram();
+        private final LatencyHistogram replayedLatency = new LatencyHistogram();
+        private int triggers;
+        private int answered;
+        private int recordedAnswered;
+        private int accepts;
+        private int acceptsAnswered;
+
+        /**
+         * @return the number of completions requested by the replay
+         */
+        public int getTriggers() {
+            return triggers;
+        }
+
+        /**
+         * @return the number of replayed requests that returned a completion
+         */
+        public int getAnswered() {
+            return answered;
+        }
+
+        /**
+         * @return the number of recorded requests that returned a completion
+         */
+        public int getRecordedAnswered() {
+            return recordedAnswered;
+        }
+
+        /**
+         * @return the number of recorded accepts
+         */
+        public int getAccepts() {
+            return accepts;
+        }
+
+        /**
+         * @return the number of recorded accepts for which the replay had a completion to show
+         */
+        public int getAcceptsAnswered() {
+            return acceptsAnswered;
+        }
+
+        @NotNull
+        public LatencyHistogram getRecordedLatency() {
+            return recordedLatency;
+        }
+
+        @NotNull
+        public LatencyHistogram getReplayedLatency() {
+            return replayedLatency;
+        }
+    }
+}
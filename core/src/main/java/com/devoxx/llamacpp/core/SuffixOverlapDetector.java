@@ -0,0 +1,154 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Watches a streamed completion as it arrives and detects the moment the model starts
+ * regenerating text that already exists after the caret (the input suffix).
+ * Once an overlap is detected the stream can be cancelled and the completion is trimmed
+ * to the text generated before the overlap started.
+ */
+public class SuffixOverlapDetector {
+
+    private static final int MAX_SUFFIX_LINES = 8;
+
+    private final String caretLineRest;
+    private final List<String> suffixLines;
+    private final int minOverlapChars;
+    private final StringBuilder generated = new StringBuilder();
+
+    private int scanned;
+    private int completedLines;
+    private int matchedLines;
+    private int matchedChars;
+    private int overlapStart = -1;
+    private int trimmedLength = -1;
+
+    public SuffixOverlapDetector(@NotNull String suffix, int minOverlapChars) {
+        this.minOverlapChars = minOverlapChars;
+
+        String[] lines = suffix.split("\n", -1);
+        this.caretLineRest = lines.length > 0 ? lines[0].trim() : "";
+        this.suffixLines = new ArrayList<>();
+        for (int i = 1; i < lines.length && suffixLines.size() < MAX_SUFFIX_LINES; i++) {
+            String line = lines[i].trim();
+            if (!line.isEmpty()) {
+                suffixLines.add(line);
+            }
+        }
+    }
+
+    /**
+     * Appends a streamed piece of the completion.
+     *
+     * @return true when the generated text started duplicating the suffix and the stream should be stopped
+     */
+    public boolean accept(@NotNull String piece) {
+        if (isOverlapping()) {
+            return true;
+        }
+        generated.append(piece);
+
+        int newline;
+        while ((newline = generated.indexOf("\n", scanned)) >= 0) {
+            if (checkLine(scanned, newline)) {
+                return true;
+            }
+            scanned = newline + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Treats the trailing partial line as complete, used once the stream has ended.
+     */
+    public void finish() {
+        if (!isOverlapping() && scanned < generated.length()) {
+            checkLine(scanned, generated.length());
+        }
+    }
+
+    public boolean isOverlapping() {
+        return trimmedLength >= 0;
+    }
+
+    /**
+     * @return the generated text, without the part that duplicates the suffix
+     */
+    @NotNull
+    public String getCompletion() {
+        return isOverlapping() ? generated.substring(0, trimmedLength) : generated.toString();
+    }
+
+    /**
+     * @return the number of generated characters that were trimmed because they duplicate the suffix
+     */
+    public int getTrimmedChars() {
+        return isOverlapping() ? generated.length() - trimmedLength : 0;
+    }
+
+    private boolean checkLine(int start, int end) {
+        String line = generated.substring(start, end).trim();
+        boolean firstLine = completedLines++ == 0;
+
+        // The model closed the caret line with the text that already follows the caret. A short rest
+        // such as ")" or ";" is trusted only when it does not close a bracket the model opened itself.
+        if (firstLine && !caretLineRest.isEmpty() && line.endsWith(caretLineRest)) {
+            int rest = generated.lastIndexOf(caretLineRest, end);
+            if (rest >= start && (caretLineRest.length() >= minOverlapChars || !opensBrackets(start, rest))) {
+                trimmedLength = rest;
+                return true;
+            }
+        }
+
+        if (line.isEmpty() || suffixLines.isEmpty()) {
+            return false;
+        }
+
+        if (!line.equals(suffixLines.get(matchedLines))) {
+            matchedLines = 0;
+            matchedChars = 0;
+            if (!line.equals(suffixLines.get(0))) {
+                return false;
+            }
+        }
+
+        if (matchedLines == 0) {
+            overlapStart = start;
+        }
+        matchedLines++;
+        matchedChars += line.length();
+
+        // Short lines such as "}" need a second matching line before we trust the overlap
+        if (matchedChars >= minOverlapChars || matchedLines == suffixLines.size() || matchedLines >= 2) {
+            trimmedLength = overlapStart;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true when the generated text between start and end leaves a bracket open
+     */
+    private boolean opensBrackets(int start, int end) {
+        int parentheses = 0;
+        int brackets = 0;
+        int braces = 0;
+        for (int i = start; i < end; i++) {
+            switch (generated.charAt(i)) {
+                case '(' -> parentheses++;
+                case ')' -> parentheses--;
+                case '[' -> brackets++;
+                case ']' -> brackets--;
+                case '{' -> braces++;
+                case '}' -> braces--;
+                default -> {
+                }
+            }
+        }
+        return parentheses > 0 || brackets > 0 || braces > 0;
+    }
+}
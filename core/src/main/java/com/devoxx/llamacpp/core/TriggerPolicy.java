@@ -0,0 +1,119 @@
+package com.devoxx.llamacpp.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Decides what an auto-triggered request does depending on where the caret is, before any prompt
+ * is built. The IDE classifies comments and string literals with the syntax highlighter's lexer;
+ * identifiers are told from the text around the caret by {@link #textPosition}.
+ * <p>
+ * The rules come from the triggerRules setting, comma separated entries of the form
+ * {@code [language:]position=action}, for example {@code comment=local, markdown:comment=allow}.
+ * Language specific entries win over the general ones, positions without a rule are allowed.
+ * Manual triggers are not subject to the rules.
+ */
+public final class TriggerPolicy {
+
+    private static final Logger LOG = Logger.getLogger(TriggerPolicy.class.getName());
+    private static final String ANY_LANGUAGE = "";
+
+    public enum Position {
+        CODE,
+        COMMENT,
+        STRING,
+        /** Identifier characters on both sides of the caret */
+        MID_IDENTIFIER,
+        /** Typing an identifier right after a dot, where the platform lists the members */
+        MEMBER_ACCESS
+    }
+
+    public enum Action {
+        ALLOW,
+        /** Only the local model's guess, no server request */
+        LOCAL,
+        SKIP
+    }
+
+    private final CompletionSettings settings;
+    private String parsedRules;
+    private Map<String, Map<Position, Action>> rules = Map.of();
+
+    TriggerPolicy(@NotNull CompletionSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * @param language the language id, matched case-insensitively
+     */
+    @NotNull
+    public Action action(@NotNull String language, @NotNull Position position) {
+        Map<String, Map<Position, Action>> current = currentRules();
+        Map<Position, Action> forLanguage = current.get(language.toLowerCase(Locale.ROOT));
+        if (forLanguage != null && forLanguage.containsKey(position)) {
+            return forLanguage.get(position);
+        }
+        Map<Position, Action> general = current.get(ANY_LANGUAGE);
+        return general != null ? general.getOrDefault(position, Action.ALLOW) : Action.ALLOW;
+    }
+
+    /**
+     * Classifies the caret from the characters around it only, see {@link Position#MID_IDENTIFIER}
+     * and {@link Position#MEMBER_ACCESS}.
+     */
+    @NotNull
+    public static Position textPosition(@NotNull CharSequence text, int offset) {
+        boolean identifierBefore = offset > 0 && Character.isJavaIdentifierPart(text.charAt(offset - 1));
+        boolean identifierAfter = offset < text.length() && Character.isJavaIdentifierPart(text.charAt(offset));
+        if (identifierBefore && identifierAfter) {
+            return Position.MID_IDENTIFIER;
+        }
+
+        int start = offset;
+        while (start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1))) {
+            start--;
+        }
+        return start > 0 && text.charAt(start - 1) == '.' ? Position.MEMBER_ACCESS : Position.CODE;
+    }
+
+    private synchronized Map<String, Map<Position, Action>> currentRules() {
+        String value = settings.getTriggerRules();
+        if (!value.equals(parsedRules)) {
+            rules = parse(value);
+            parsedRules = value;
+        }
+        return rules;
+    }
+
+    @NotNull
+    static Map<String, Map<Position, Action>> parse(@NotNull String value) {
+        Map<String, Map<Position, Action>> result = new HashMap<>();
+        for (String entry : value.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            int colon = entry.indexOf(':');
+            if (equals < 0 || colon > equals) {
+                LOG.warning("Ignoring trigger rule without position=action: " + entry);
+                continue;
+            }
+            String language = colon >= 0 ? entry.substring(0, colon).trim().toLowerCase(Locale.ROOT) : ANY_LANGUAGE;
+            try {
+                Position position = Position.valueOf(
+                        entry.substring(colon + 1, equals).trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+                Action action = Action.valueOf(entry.substring(equals + 1).trim().toUpperCase(Locale.ROOT));
+                result.computeIfAbsent(language, l -> new EnumMap<>(Position.class)).put(position, action);
+            } catch (IllegalArgumentException e) {
+                LOG.warning("Ignoring unknown trigger rule: " + entry);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,90 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheKeyPolicyTest {
+
+    private static final String PREFIX = "package demo;\n\nclass Totals {\n    int sum(int[] values) {\n"
+            + "        int total = 0;\n        for (int value : values) {\n            total += ";
+    private static final String SUFFIX = "\n        }\n        return total;\n    }\n}\n";
+
+    private static CacheKeyPolicy policy(int lines, CacheKeyPolicy.Verification verification) {
+        DefaultCompletionSettings settings = new DefaultCompletionSettings();
+        settings.setCacheKeyLines(lines);
+        settings.setCacheKeyVerification(verification);
+        return new CacheKeyPolicy(settings, new LRUCache(16));
+    }
+
+    private static boolean hits(CacheKeyPolicy policy, String prefix, String suffix) {
+        return policy.key(PREFIX, SUFFIX).equals(policy.key(prefix, suffix));
+    }
+
+    @Test
+    void trailingWhitespaceGivesTheSameKey() {
+        CacheKeyPolicy policy = policy(16, CacheKeyPolicy.Verification.NONE);
+
+        assertThat(hits(policy, PREFIX.replace("{\n", "{  \n").replace(";\n", ";\t\n"),
+                SUFFIX.replace("}\n", "} \n"))).isTrue();
+    }
+
+    @Test
+    void lineEndingsGiveTheSameKey() {
+        CacheKeyPolicy policy = policy(16, CacheKeyPolicy.Verification.NONE);
+
+        assertThat(hits(policy, PREFIX.replace("\n", "\r\n"), SUFFIX.replace("\n", "\r\n"))).isTrue();
+    }
+
+    @Test
+    void whitespaceOnlyLinesGiveTheSameKey() {
+        CacheKeyPolicy policy = policy(16, CacheKeyPolicy.Verification.NONE);
+
+        assertThat(hits(policy, PREFIX.replace(";\n\n", ";\n    \n"), SUFFIX)).isTrue();
+        assertThat(hits(policy, PREFIX.replace("int total", "int   total"), SUFFIX)).isTrue();
+    }
+
+    @Test
+    void caretLineIsKeptVerbatim() {
+        CacheKeyPolicy policy = policy(16, CacheKeyPolicy.Verification.NONE);
+
+        assertThat(hits(policy, PREFIX + " ", SUFFIX)).isFalse();
+        assertThat(hits(policy, PREFIX.replace("total += ", "total  += "), SUFFIX)).isFalse();
+        assertThat(hits(policy, PREFIX, " " + SUFFIX)).isFalse();
+        // Indentation of the other lines is kept too
+        assertThat(hits(policy, PREFIX.replace("        int total", "      int total"), SUFFIX)).isFalse();
+    }
+
+    @Test
+    void distantEditHitsOnlyWithoutVerification() {
+        String editedPrefix = PREFIX.replace("package demo;", "package other;");
+        String editedSuffix = SUFFIX + "\nclass Other {\n}\n";
+
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.NONE), editedPrefix, editedSuffix)).isTrue();
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.DISTANT), editedPrefix, SUFFIX)).isFalse();
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.DISTANT), PREFIX, editedSuffix)).isFalse();
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.EXACT), editedPrefix, SUFFIX)).isFalse();
+        // An edit inside the key lines misses whatever the verification
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.NONE),
+                PREFIX.replace("int value", "long value"), SUFFIX)).isFalse();
+    }
+
+    @Test
+    void distantWhitespaceIsVerifiedOnlyWhenExact() {
+        String reindented = PREFIX.replace("package demo;\n", "package demo;  \r\n");
+
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.DISTANT), reindented, SUFFIX)).isTrue();
+        assertThat(hits(policy(2, CacheKeyPolicy.Verification.EXACT), reindented, SUFFIX)).isFalse();
+    }
+
+    @Test
+    void keyLinesCountFromTheCaretLine() {
+        // With 2 key lines the line three above the caret line is distant, the line two above is not
+        CacheKeyPolicy policy = policy(2, CacheKeyPolicy.Verification.NONE);
+
+        assertThat(hits(policy, PREFIX.replace("int sum", "long sum"), SUFFIX)).isTrue();
+        assertThat(hits(policy, PREFIX.replace("int total", "long total"), SUFFIX)).isFalse();
+        assertThat(hits(policy, PREFIX, SUFFIX.replace("return total", "return 0"))).isFalse();
+        assertThat(hits(policy, PREFIX, SUFFIX.replace("    }\n}", "    }\n}}"))).isTrue();
+    }
+}
@@ -0,0 +1,35 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextBudgetTest {
+
+    private static ServerCapabilities server(int contextSize, int slots) {
+        return new ServerCapabilities("http://localhost:8012", contextSize, slots, slots, "model");
+    }
+
+    @Test
+    void largeContextKeepsTheSettings() {
+        ContextBudget budget = ContextBudget.of(new DefaultCompletionSettings(), server(32768, 4));
+
+        assertThat(budget).isEqualTo(new ContextBudget(256, 64, 16, 1024, 4));
+    }
+
+    @Test
+    void smallContextBoundsTheSettings() {
+        ContextBudget budget = ContextBudget.of(new DefaultCompletionSettings(), server(4096, 1));
+
+        assertThat(budget).isEqualTo(new ContextBudget(141, 36, 2, 1024, 1));
+    }
+
+    @Test
+    void disabledAutoConfigureUsesTheSettings() {
+        DefaultCompletionSettings settings = new DefaultCompletionSettings();
+        settings.setAutoConfigure(false);
+        settings.setRingChunks(0);
+
+        assertThat(ContextBudget.of(settings, server(4096, 4))).isEqualTo(new ContextBudget(256, 64, 0, 1024, 1));
+    }
+}
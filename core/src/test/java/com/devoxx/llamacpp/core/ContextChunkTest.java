@@ -0,0 +1,26 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContextChunkTest {
+
+    @Test
+    void decodesTheUtf8Text() {
+        ContextChunk chunk = new ContextChunk("String s = \"\u00e9\u20ac\";\nreturn s;\n", 0, "A.java");
+
+        assertThat(chunk.text()).isEqualTo("String s = \"\u00e9\u20ac\";\nreturn s;\n");
+        assertThat(chunk.byteSize()).isGreaterThan(chunk.utf8().length + "A.java".length());
+    }
+
+    @Test
+    void comparesDistinctLines() {
+        ContextChunk chunk = new ContextChunk("a\nb\nc\nd", 0, "A.java");
+        ContextChunk other = new ContextChunk("b\nc\nd\ne\nb", 0, "B.java");
+
+        assertThat(chunk.lineSimilarity(other)).isEqualTo(3.0 / 5);
+        assertThat(chunk.sameText(new ContextChunk("a\nb\nc\nd", 1, "B.java"))).isTrue();
+        assertThat(chunk.sameText(other)).isFalse();
+    }
+}
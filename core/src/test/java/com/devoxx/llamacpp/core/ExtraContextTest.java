@@ -0,0 +1,33 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExtraContextTest {
+
+    private static LineIndex document(int lineCount) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            text.append("int line").append(i).append(" = ").append(i).append(";\n");
+        }
+        return LineIndex.of(text);
+    }
+
+    @Test
+    void picksTheChunksClosestToTheCaret() {
+        ExtraContext extraContext = new ExtraContext(new DefaultCompletionSettings());
+        List<ContextChunk> added = new ArrayList<>();
+        extraContext.addChunkListener(added::add);
+
+        extraContext.updateContextAroundCursor(500, document(1000), "A.java");
+
+        // Right before the 256 prefix lines, and right after the 64 suffix lines
+        assertThat(added).hasSize(2);
+        assertThat(added.get(0).text()).startsWith("int line212 = 212;").endsWith("int line243 = 243;\n");
+        assertThat(added.get(1).text()).startsWith("int line564 = 564;").endsWith("int line595 = 595;\n");
+    }
+}
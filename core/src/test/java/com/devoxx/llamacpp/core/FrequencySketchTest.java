@@ -0,0 +1,38 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrequencySketchTest {
+
+    @Test
+    void countersSaturateAtFifteen() {
+        FrequencySketch sketch = new FrequencySketch(4);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+
+        assertThat(sketch.frequency("hot")).isEqualTo(15);
+        // A saturated nibble does not carry into its neighbours
+        assertThat(sketch.frequency("cold")).isZero();
+    }
+
+    @Test
+    void countersHalveOnReset() {
+        // Sized for 4 entries, the counters are halved after 40 increments
+        FrequencySketch sketch = new FrequencySketch(4);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        sketch.increment("warm");
+        sketch.increment("warm");
+        sketch.increment("warm");
+        for (int i = 0; i < 22; i++) {
+            sketch.increment("key" + i);
+        }
+
+        assertThat(sketch.frequency("hot")).isEqualTo(7);
+        assertThat(sketch.frequency("warm")).isEqualTo(1);
+    }
+}
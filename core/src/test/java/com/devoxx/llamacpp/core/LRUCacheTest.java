@@ -0,0 +1,75 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LRUCacheTest {
+
+    private static LRUCache filled(int capacity, String... keys) {
+        LRUCache cache = new LRUCache(capacity);
+        for (String key : keys) {
+            cache.put(key, "completion of " + key);
+        }
+        return cache;
+    }
+
+    @Test
+    void speculativeBurstKeepsFrequentInteractiveEntry() {
+        LRUCache cache = new LRUCache(10);
+        cache.put("hot", "completion");
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("speculative" + i, "guess", LRUCache.Origin.SPECULATIVE, 0);
+        }
+
+        assertThat(cache.get("hot")).isEqualTo("completion");
+        assertThat(cache.size()).isEqualTo(10);
+    }
+
+    @Test
+    void growingKeepsEveryEntry() {
+        LRUCache cache = filled(10, "a", "b", "c", "d", "e", "f", "g", "h", "i", "j");
+        cache.get("a");
+        cache.get("b");
+
+        cache.setCapacity(40);
+
+        assertThat(cache.size()).isEqualTo(10);
+        for (String key : new String[]{"a", "b", "c", "d", "e", "f", "g", "h", "i", "j"}) {
+            assertThat(cache.containsKey(key)).isTrue();
+        }
+    }
+
+    @Test
+    void shrinkingEvictsProbationFirst() {
+        // a to h fill the main cache on probation, i and j are in the window
+        LRUCache cache = filled(10, "a", "b", "c", "d", "e", "f", "g", "h", "i", "j");
+        // Hit on probation, moved to the protected segment
+        cache.get("a");
+        cache.get("b");
+        cache.get("c");
+
+        cache.setCapacity(5);
+
+        assertThat(cache.size()).isEqualTo(5);
+        for (String key : new String[]{"a", "b", "c", "i", "j"}) {
+            assertThat(cache.containsKey(key)).isTrue();
+        }
+        for (String key : new String[]{"d", "e", "f", "g", "h"}) {
+            assertThat(cache.containsKey(key)).isFalse();
+        }
+    }
+
+    @Test
+    void tracksTheBytesOfTheEntries() {
+        LRUCache cache = filled(4, "a", "b", "c", "d", "e", "f");
+
+        long held = cache.byteSize();
+        assertThat(cache.trimToBytes(held / 2)).isLessThanOrEqualTo(held / 2);
+        assertThat(cache.size()).isLessThan(4);
+    }
+}
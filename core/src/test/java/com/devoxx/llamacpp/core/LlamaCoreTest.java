@@ -0,0 +1,22 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlamaCoreTest {
+
+    @Test
+    void firstLineAfterBlankLineIsPrefixOfCompletion() {
+        String completion = "  \n    return x;\n}";
+
+        assertThat(LlamaCore.firstLine(completion)).isEqualTo("  \n    return x;");
+        assertThat(completion).startsWith(LlamaCore.firstLine(completion));
+    }
+
+    @Test
+    void firstWordKeepsLeadingWhitespace() {
+        assertThat(LlamaCore.firstWord("\t\n    return x;")).isEqualTo("\t\n    return");
+        assertThat(LlamaCore.firstWord("  foo(bar)")).isEqualTo("  foo(bar)");
+    }
+}
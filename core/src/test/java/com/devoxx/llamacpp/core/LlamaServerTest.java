@@ -0,0 +1,62 @@
+package com.devoxx.llamacpp.core;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlamaServerTest {
+
+    private final HttpServer server;
+
+    LlamaServerTest() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private LlamaServer streaming(CompletionMetrics metrics, String... events) {
+        server.createContext("/infill", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                for (String event : events) {
+                    body.write(("data: " + event + "\n\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+        DefaultCompletionSettings settings = new DefaultCompletionSettings();
+        settings.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+        return new LlamaServer(metrics, settings);
+    }
+
+    @Test
+    void overlapInTheStopChunkKeepsTheServerTimings() {
+        CompletionMetrics metrics = new CompletionMetrics();
+        LlamaServer llamaServer = streaming(metrics,
+                "{\"content\":\"\\n    total += value;\\n\",\"stop\":false}",
+                "{\"content\":\"    return total;\\n\",\"stop\":true,\"tokens_cached\":42,"
+                        + "\"timings\":{\"prompt_ms\":5.0,\"prompt_n\":3,\"predicted_n\":2,\"predicted_ms\":7.0}}");
+
+        LlamaResponse response = llamaServer.getCompletion(1, "int sum() {", "\n    return total;\n}\n", List.of(), 4);
+
+        assertThat(response).isNotNull();
+        assertThat(response.content()).isEqualTo("\n    total += value;\n");
+        assertThat(response.tokens_cached()).isEqualTo(42);
+        assertThat(response.timings().prompt_ms()).isEqualTo(5.0);
+        assertThat(metrics.getCancelledStreams()).isZero();
+        assertThat(metrics.getUnusedPredictTokens()).isZero();
+    }
+}
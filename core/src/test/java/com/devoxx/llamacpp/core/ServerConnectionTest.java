@@ -0,0 +1,162 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerConnectionTest {
+
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+
+    private final ServerSocket serverSocket;
+    private final List<String> requests = new ArrayList<>();
+    private final CompletionMetrics metrics = new CompletionMetrics();
+    private final ServerConnection connection;
+
+    ServerConnectionTest() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        DefaultCompletionSettings settings = new DefaultCompletionSettings();
+        settings.setEndpoint("http://127.0.0.1:" + serverSocket.getLocalPort());
+        connection = new ServerConnection(settings, metrics);
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Serves each accepted connection with the next list of responses, a null response closes the
+     * connection after reading the request, a response without a body is cut short.
+     */
+    @SafeVarargs
+    private void serve(List<String>... connections) {
+        Thread thread = new Thread(() -> {
+            try {
+                for (List<String> responses : connections) {
+                    try (Socket socket = serverSocket.accept()) {
+                        InputStream in = socket.getInputStream();
+                        OutputStream out = socket.getOutputStream();
+                        for (String response : responses) {
+                            String request = readRequest(in);
+                            synchronized (requests) {
+                                requests.add(request);
+                            }
+                            if (response == null) {
+                                break;
+                            }
+                            out.write(response.getBytes(StandardCharsets.US_ASCII));
+                            out.flush();
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // Closed by the test
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static String readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.US_ASCII).endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed by the client");
+            }
+            head.write(b);
+        }
+        String headers = head.toString(StandardCharsets.US_ASCII);
+        for (String line : headers.split("\r\n")) {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                in.readNBytes(Integer.parseInt(line.substring(line.indexOf(':') + 1).trim()));
+            }
+        }
+        return headers.substring(0, headers.indexOf(' '));
+    }
+
+    private HttpResponse<String> get() throws IOException, InterruptedException {
+        return connection.send(HttpRequest.newBuilder(uri()).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post() throws IOException, InterruptedException {
+        return connection.send(HttpRequest.newBuilder(uri()).POST(HttpRequest.BodyPublishers.ofString("{}")).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri() {
+        return URI.create("http://127.0.0.1:" + serverSocket.getLocalPort() + "/infill");
+    }
+
+    private int posts() {
+        synchronized (requests) {
+            return (int) requests.stream().filter("POST"::equals).count();
+        }
+    }
+
+    @Test
+    void postOnAClosedPooledConnectionIsResent() throws Exception {
+        serve(Arrays.asList(OK, null), List.of(OK));
+
+        get();
+        HttpResponse<String> response = post();
+
+        assertThat(response.body()).isEqualTo("ok");
+        assertThat(posts()).isEqualTo(2);
+        assertThat(metrics.getStaleConnections()).isEqualTo(1L);
+        assertThat(metrics.getColdTimeToFirstByte().getCount()).isEqualTo(2L);
+    }
+
+    @Test
+    void postCutAfterTheFirstResponseBytesIsNotResent() throws Exception {
+        serve(List.of(OK, "HTTP/1.1 200 OK\r\n"), List.of(OK));
+
+        get();
+        IOException error = null;
+        try {
+            post();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        assertThat(error).isNotNull();
+        assertThat(ServerConnection.isStaleConnection(error)).isFalse();
+        assertThat(posts()).isEqualTo(1);
+        assertThat(metrics.getStaleConnections()).isZero();
+    }
+
+    @Test
+    void postClosedOnANewConnectionIsNotResent() throws Exception {
+        serve(Collections.singletonList(null), List.of(OK));
+
+        IOException error = null;
+        try {
+            post();
+        } catch (IOException e) {
+            error = e;
+        }
+
+        assertThat(error).isNotNull();
+        assertThat(posts()).isEqualTo(1);
+        assertThat(metrics.getStaleConnections()).isZero();
+    }
+}
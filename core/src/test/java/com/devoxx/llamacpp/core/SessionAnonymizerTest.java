@@ -0,0 +1,55 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionAnonymizerTest {
+
+    private static final String CODE = "public int sumOf(int[] values2) {\n\treturn values2.length * 42; // HTTP\n}\n";
+
+    private static String shape(String text) {
+        StringBuilder shape = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            shape.append(Character.isDigit(c) ? '9' : Character.isUpperCase(c) ? 'A' : Character.isLowerCase(c) ? 'a' : c);
+        }
+        return shape.toString();
+    }
+
+    @Test
+    void keepsLengthsCharacterClassesAndKeywords() {
+        String anonymized = new SessionAnonymizer().anonymize(CODE);
+
+        assertThat(anonymized.length()).isEqualTo(CODE.length());
+        assertThat(shape(anonymized)).isEqualTo(shape(CODE));
+        assertThat(anonymized).startsWith("public int ").contains("(int[] ").contains("\treturn ");
+        assertThat(anonymized).doesNotContain("sumOf", "values2", "length", "HTTP");
+    }
+
+    @Test
+    void mapsTheSameWordTheSameWayWithinOneRecording() {
+        SessionAnonymizer anonymizer = new SessionAnonymizer();
+        String first = anonymizer.anonymize("values2");
+
+        assertThat(anonymizer.anonymize("values2")).isEqualTo(first);
+        assertThat(anonymizer.anonymize(CODE)).contains("int[] " + first + ")").contains("\treturn " + first + ".");
+        assertThat(anonymizer.anonymizePath("src/demo/Totals.java")).isEqualTo(anonymizer.anonymizePath("src/demo/Totals.java"));
+    }
+
+    @Test
+    void saltsEachRecording() {
+        String word = "aVeryDistinctiveIdentifierName";
+
+        assertThat(new SessionAnonymizer().anonymize(word)).isNotEqualTo(new SessionAnonymizer().anonymize(word));
+        assertThat(new SessionAnonymizer().anonymizePath("src/Main.java"))
+                .isNotEqualTo(new SessionAnonymizer().anonymizePath("src/Main.java"));
+    }
+
+    @Test
+    void pathKeepsOnlyTheExtension() {
+        String path = new SessionAnonymizer().anonymizePath("/home/dev/project.v2/src/Main.java");
+
+        assertThat(path).startsWith("file-").endsWith(".java").doesNotContain("Main", "project", "dev");
+        assertThat(new SessionAnonymizer().anonymizePath("/home/dev.d/Makefile")).doesNotContain(".d");
+    }
+}
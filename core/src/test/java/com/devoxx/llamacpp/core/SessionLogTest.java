@@ -0,0 +1,104 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionLogTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final List<SessionEvent> EVENTS = List.of(
+            new SessionEvent.FileSnapshot(0, 0, "src/Main.java", "class Main {\n    // caf\u00e9 \u2615\n}\n"),
+            new SessionEvent.CaretMove(5, 0, 1),
+            new SessionEvent.Edit(120, 0, 17, 0, "int"),
+            new SessionEvent.Edit(121, 0, 20, 3, ""),
+            new SessionEvent.Trigger(150, 0, 20, false),
+            new SessionEvent.Request(151, 1L << 40, 20, 3, 4),
+            new SessionEvent.Response(400, 1L << 40, SessionEvent.Source.SERVER, 249.5, 32, 18, 200, 80.25, 9, 168.125),
+            new SessionEvent.Response(410, 7, SessionEvent.Source.CACHE, 0.001, 32, 0, 0, 0, 0, 0),
+            new SessionEvent.Accept(900, SessionEvent.AcceptKind.LINE, 16),
+            new SessionEvent.Trigger(1_000_000, 0, 36, true),
+            new SessionEvent.Response(1_000_003, 8, SessionEvent.Source.NONE, 3, 0, 0, 0, 0, 0, 0),
+            new SessionEvent.Accept(1_000_010, SessionEvent.AcceptKind.WORD, 3),
+            new SessionEvent.Accept(1_000_011, SessionEvent.AcceptKind.LOOKUP, Integer.MAX_VALUE));
+
+    private final Path file;
+
+    SessionLogTest() throws IOException {
+        file = Files.createTempFile("session", ".llsr");
+    }
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static List<SessionEvent> readAll(Path path) throws IOException {
+        List<SessionEvent> events = new ArrayList<>();
+        try (SessionLog.Reader reader = new SessionLog.Reader(path)) {
+            assertThat(reader.getStartEpochMs()).isEqualTo(START);
+            SessionEvent event;
+            while ((event = reader.read()) != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @Test
+    void readsBackEveryKindOfEvent() throws IOException {
+        try (SessionLog.Writer writer = new SessionLog.Writer(file, START)) {
+            for (SessionEvent event : EVENTS) {
+                writer.write(event);
+            }
+        }
+
+        assertThat(readAll(file)).isEqualTo(EVENTS);
+    }
+
+    @Test
+    void truncatedLogEndsAtTheLastCompleteRecord() throws IOException {
+        byte[] flushed;
+        try (SessionLog.Writer writer = new SessionLog.Writer(file, START)) {
+            for (SessionEvent event : EVENTS.subList(0, 6)) {
+                writer.write(event);
+            }
+            writer.flush();
+            flushed = Files.readAllBytes(file);
+            for (SessionEvent event : EVENTS.subList(6, EVENTS.size())) {
+                writer.write(event);
+            }
+        }
+        byte[] complete = Files.readAllBytes(file);
+
+        // Never closed, as when the IDE stopped
+        Files.write(file, flushed);
+        assertThat(readAll(file)).isEqualTo(EVENTS.subList(0, 6));
+
+        // Cut anywhere after the flush, the log reads as a prefix of the events
+        for (int length = flushed.length; length < complete.length; length++) {
+            Files.write(file, Arrays.copyOf(complete, length));
+            List<SessionEvent> events = readAll(file);
+            assertThat(events.size()).isGreaterThanOrEqualTo(6);
+            assertThat(events).isEqualTo(EVENTS.subList(0, events.size()));
+        }
+    }
+
+    @Test
+    void clockStepBackIsRecordedAsNoDelay() throws IOException {
+        try (SessionLog.Writer writer = new SessionLog.Writer(file, START)) {
+            writer.write(new SessionEvent.CaretMove(100, 0, 1));
+            writer.write(new SessionEvent.CaretMove(90, 0, 2));
+        }
+
+        assertThat(readAll(file)).containsExactly(new SessionEvent.CaretMove(100, 0, 1), new SessionEvent.CaretMove(100, 0, 2));
+    }
+}
@@ -0,0 +1,52 @@
+package com.devoxx.llamacpp.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SuffixOverlapDetectorTest {
+
+    private static SuffixOverlapDetector stream(String suffix, String... pieces) {
+        SuffixOverlapDetector detector = new SuffixOverlapDetector(suffix, CompletionSettings.MIN_SUFFIX_OVERLAP_CHARS);
+        for (String piece : pieces) {
+            if (detector.accept(piece)) {
+                return detector;
+            }
+        }
+        detector.finish();
+        return detector;
+    }
+
+    @Test
+    void keepsShortCaretRestClosingItsOwnBracket() {
+        SuffixOverlapDetector detector = stream(")\n", "a, g(", "b)");
+
+        assertThat(detector.isOverlapping()).isFalse();
+        assertThat(detector.getCompletion()).isEqualTo("a, g(b)");
+    }
+
+    @Test
+    void trimsShortCaretRestRepeatedAfterBalancedText() {
+        SuffixOverlapDetector detector = stream(")\n", "a, g(b)", ")\n");
+
+        assertThat(detector.isOverlapping()).isTrue();
+        assertThat(detector.getCompletion()).isEqualTo("a, g(b)");
+    }
+
+    @Test
+    void trimsLongCaretRest() {
+        SuffixOverlapDetector detector = stream(", options);\n", "request", ", options);\n");
+
+        assertThat(detector.getCompletion()).isEqualTo("request");
+    }
+
+    @Test
+    void trimsRepeatedSuffixLines() {
+        SuffixOverlapDetector detector = stream("\n    return total;\n}\n",
+                "\n    total += value;\n", "    return total;\n", "}\n");
+
+        assertThat(detector.isOverlapping()).isTrue();
+        assertThat(detector.getCompletion()).isEqualTo("\n    total += value;\n");
+        assertThat(detector.getTrimmedChars()).isEqualTo("    return total;\n".length());
+    }
+}
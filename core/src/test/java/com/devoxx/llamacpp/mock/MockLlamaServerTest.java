@@ -0,0 +1,104 @@
+package com.devoxx.llamacpp.mock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MockLlamaServerTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String COMPLETION = "int total = 0 ; for ( int value : values ) total += value ;";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final MockLlamaServer server;
+
+    MockLlamaServerTest() throws IOException {
+        server = new MockLlamaServer()
+                .setPromptLatency(LatencyDistribution.fixed(0))
+                .setPromptTokensPerSecond(0)
+                .setTokenLatency(LatencyDistribution.fixed(0))
+                .setResponder(request -> COMPLETION)
+                .start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+    }
+
+    private HttpRequest infill(Map<String, Object> fields) throws IOException {
+        return HttpRequest.newBuilder(URI.create(server.getEndpoint() + "/infill"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(fields)))
+                .build();
+    }
+
+    private JsonNode complete(Map<String, Object> fields) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(infill(fields), HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(200);
+        return MAPPER.readTree(response.body());
+    }
+
+    @Test
+    void reportsTheRepeatedPromptAsCached() throws Exception {
+        Map<String, Object> request = Map.of("input_prefix", "int sum(int[] values) {\n", "input_suffix", "\n}\n",
+                "cache_prompt", true);
+
+        JsonNode first = complete(request);
+        JsonNode second = complete(request);
+
+        int predicted = first.path("tokens_predicted").asInt();
+        int promptTokens = first.path("timings").path("prompt_n").asInt();
+        assertThat(predicted).isEqualTo(MockLlamaServer.tokenize(COMPLETION).size());
+        assertThat(first.path("tokens_cached").asInt()).isEqualTo(promptTokens + predicted);
+        assertThat(second.path("timings").path("prompt_n").asInt()).isEqualTo(0);
+        assertThat(second.path("tokens_evaluated").asInt()).isEqualTo(promptTokens);
+    }
+
+    @Test
+    void stopsGeneratingAtTheTimeLimit() throws Exception {
+        server.setTokenLatency(LatencyDistribution.fixed(20));
+
+        JsonNode response = complete(Map.of("input_prefix", "int x = ", "t_max_predict_ms", 100));
+
+        int predicted = response.path("tokens_predicted").asInt();
+        assertThat(response.path("stop").asBoolean()).isTrue();
+        assertThat(predicted).isGreaterThan(0);
+        assertThat(predicted).isLessThan(MockLlamaServer.tokenize(COMPLETION).size());
+        assertThat(response.path("content").asText()).isEqualTo(
+                String.join("", MockLlamaServer.tokenize(COMPLETION).subList(0, predicted)));
+    }
+
+    @Test
+    void countsStreamsClosedByTheClient() throws Exception {
+        server.setTokenLatency(LatencyDistribution.fixed(20));
+
+        HttpResponse<InputStream> response = client.send(
+                infill(Map.of("input_prefix", "int x = ", "stream", true)), HttpResponse.BodyHandlers.ofInputStream());
+        try (BufferedReader events = new BufferedReader(
+                new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            assertThat(events.readLine()).startsWith("data: ");
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getCancelledCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(server.getCancelledCount()).isEqualTo(1);
+        assertThat(server.getCompletedCount()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,15 @@
+package com.devoxx.llamacpp.mock;
+
+/**
+ * The failures the {@link MockLlamaServer} can inject into /infill requests.
+ */
+public enum FailureMode {
+    /** Respond with 500 and an error body */
+    SERVER_ERROR,
+    /** Respond with 503, like llama-server while the model is loading or all slots are busy */
+    UNAVAILABLE,
+    /** Accept the request and never answer, until the client gives up */
+    HANG,
+    /** Close the connection halfway through the response */
+    DISCONNECT
+}
@@ -0,0 +1,46 @@
+package com.devoxx.llamacpp.mock;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Random;
+
+/**
+ * A distribution of latencies in milliseconds, sampled by the {@link MockLlamaServer} for the
+ * time to first byte and for each generated token.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    LatencyDistribution NONE = random -> 0;
+
+    double sampleMs(@NotNull Random random);
+
+    @NotNull
+    static LatencyDistribution fixed(double millis) {
+        return random -> millis;
+    }
+
+    @NotNull
+    static LatencyDistribution uniform(double minMillis, double maxMillis) {
+        return random -> minMillis + random.nextDouble() * (maxMillis - minMillis);
+    }
+
+    /**
+     * A normal distribution, cut off at zero.
+     */
+    @NotNull
+    static LatencyDistribution normal(double meanMillis, double stdDevMillis) {
+        return random -> Math.max(0, meanMillis + random.nextGaussian() * stdDevMillis);
+    }
+
+    /**
+     * A log-normal distribution, which has the long tail real inference latencies show.
+     *
+     * @param medianMillis the median latency
+     * @param sigma        the spread, 0.5 gives a p99 of about 3x the median
+     */
+    @NotNull
+    static LatencyDistribution logNormal(double medianMillis, double sigma) {
+        return random -> medianMillis * Math.exp(random.nextGaussian() * sigma);
+    }
+}
@@ -0,0 +1,563 @@
+package com.devoxx.llamacpp.mock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embeddable stand-in for llama-server, serving /infill, /health, /props, /slots and /tokenize on the
+ * loopback interface. Latency, throughput, prompt caching and failures are programmable, and all
+ * randomness comes from a seeded {@link Random}, so a test or a load harness sees the same
+ * behaviour on every run without a GPU.
+ * <p>
+ * Timing model of an /infill request: the time to the first token is a sample of the prompt
+ * latency plus the uncached prompt tokens divided by the prompt throughput, and every generated
+ * token then takes a sample of the token latency. Like a single llama-server slot, the server
+ * remembers the tokens of the last prompt, and the common prefix with the next prompt is reported
+ * as cached and costs nothing to process.
+ * <p>
+ * All settings can be changed while the server is running.
+ */
+public class MockLlamaServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern TOKEN = Pattern.compile("\\s+|\\w+|[^\\w\\s]");
+    private static final String DEFAULT_COMPLETION = "        return null;\n    }\n";
+    private static final long HANG_MAX_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Map<String, Integer> vocabulary = new ConcurrentHashMap<>();
+    private final Queue<FailureMode> scheduledFailures = new ConcurrentLinkedQueue<>();
+    private final Map<FailureMode, Double> failureRates = new EnumMap<>(FailureMode.class);
+    private final Random random;
+
+    private volatile LatencyDistribution promptLatency = LatencyDistribution.NONE;
+    private volatile LatencyDistribution tokenLatency = LatencyDistribution.NONE;
+    private volatile double promptTokensPerSecond = 0;
+    private volatile Function<InfillRequest, String> responder = request -> DEFAULT_COMPLETION;
+    private volatile int contextSize = 8192;
+    private volatile int slotCount = 1;
+    private volatile boolean loading;
+
+    private List<String> slotTokens = List.of();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * Creates a server on an ephemeral port, with a fixed random seed.
+     */
+    public MockLlamaServer() throws IOException {
+        this(0, 42);
+    }
+
+    public MockLlamaServer(int port, long seed) throws IOException {
+        this.random = new Random(seed);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-llama-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/infill", exchange -> handle(exchange, this::infill));
+        server.createContext("/health", exchange -> handle(exchange, this::health));
+        server.createContext("/props", exchange -> handle(exchange, this::props));
+        server.createContext("/slots", exchange -> handle(exchange, this::slots));
+        server.createContext("/tokenize", exchange -> handle(exchange, this::tokenize));
+    }
+
+    @NotNull
+    public MockLlamaServer start() {
+        server.start();
+        return this;
+    }
+
+    public void stop() {
+        stopped.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * @return the URL to use as the endpoint setting, without a trailing slash
+     */
+    @NotNull
+    public String getEndpoint() {
+        InetSocketAddress address = server.getAddress();
+        return "http://" + address.getHostString() + ":" + address.getPort();
+    }
+
+    /**
+     * Sets the fixed part of the time to the first token.
+     */
+    @NotNull
+    public MockLlamaServer setPromptLatency(@NotNull LatencyDistribution latency) {
+        this.promptLatency = latency;
+        return this;
+    }
+
+    /**
+     * Sets how fast uncached prompt tokens are processed, 0 to make prompt processing free.
+     */
+    @NotNull
+    public MockLlamaServer setPromptTokensPerSecond(double tokensPerSecond) {
+        this.promptTokensPerSecond = tokensPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the latency of each generated token.
+     */
+    @NotNull
+    public MockLlamaServer setTokenLatency(@NotNull LatencyDistribution latency) {
+        this.tokenLatency = latency;
+        return this;
+    }
+
+    /**
+     * Generates a constant number of tokens per second.
+     */
+    @NotNull
+    public MockLlamaServer setTokensPerSecond(double tokensPerSecond) {
+        return setTokenLatency(LatencyDistribution.fixed(1000.0 / tokensPerSecond));
+    }
+
+    /**
+     * Sets the function producing the completion text for a request. The text is split into tokens
+     * and cut off at n_predict tokens or t_max_predict_ms.
+     */
+    @NotNull
+    public MockLlamaServer setResponder(@NotNull Function<InfillRequest, String> responder) {
+        this.responder = responder;
+        return this;
+    }
+
+    @NotNull
+    public MockLlamaServer setContextSize(int contextSize) {
+        this.contextSize = contextSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of slots reported on /props and /slots. Requests are still served as by a single slot.
+     */
+    @NotNull
+    public MockLlamaServer setSlotCount(int slotCount) {
+        this.slotCount = slotCount;
+        return this;
+    }
+
+    /**
+     * While loading, /health and /infill answer 503 like llama-server does before the model is ready.
+     */
+    @NotNull
+    public MockLlamaServer setLoading(boolean loading) {
+        this.loading = loading;
+        return this;
+    }
+
+    /**
+     * Makes each /infill request fail in the given way with the given probability.
+     */
+    @NotNull
+    public MockLlamaServer setFailureRate(@NotNull FailureMode mode, double probability) {
+        synchronized (failureRates) {
+            failureRates.put(mode, probability);
+        }
+        return this;
+    }
+
+    /**
+     * Makes the next /infill request fail in the given way, regardless of the failure rates.
+     * Calls queue up, one failure per request.
+     */
+    @NotNull
+    public MockLlamaServer failNext(@NotNull FailureMode mode) {
+        scheduledFailures.add(mode);
+        return this;
+    }
+
+    /**
+     * Forgets the cached prompt, like restarting the slot.
+     */
+    public synchronized void clearSlot() {
+        slotTokens = List.of();
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    public int getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * @return the number of streamed responses the client closed before the end
+     */
+    public int getCancelledCount() {
+        return cancelled.get();
+    }
+
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * The fields of an /infill request the mock looks at.
+     */
+    public record InfillRequest(String prefix, String suffix, List<String> extra, int nPredict,
+                                boolean stream, boolean cachePrompt, long maxPredictMs, int seed, int nProbs) {
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        try {
+            handler.handle(exchange);
+        } catch (IOException e) {
+            // The client went away
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Fails when a disconnect was injected into a response of fixed length, which drops the connection
+            try {
+                exchange.close();
+            } catch (RuntimeException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        if (loading) {
+            sendJson(exchange, 503, Map.of("error", Map.of("code", 503, "message", "Loading model")));
+        } else {
+            sendJson(exchange, 200, Map.of("status", "ok"));
+        }
+    }
+
+    private void props(HttpExchange exchange) throws IOException {
+        sendJson(exchange, 200, Map.of(
+                "default_generation_settings", Map.of("n_ctx", contextSize, "n_predict", -1),
+                "total_slots", slotCount,
+                "model_path", "mock.gguf"));
+    }
+
+    private void slots(HttpExchange exchange) throws IOException {
+        List<Map<String, Object>> slots = new ArrayList<>();
+        for (int id = 0; id < slotCount; id++) {
+            slots.add(Map.of("id", id, "n_ctx", contextSize, "is_processing", false));
+        }
+        sendJson(exchange, 200, slots);
+    }
+
+    private void tokenize(HttpExchange exchange) throws IOException {
+        JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+        List<Integer> ids = new ArrayList<>();
+        for (String token : tokenize(body.path("content").asText(""))) {
+            ids.add(vocabulary.computeIfAbsent(token, t -> vocabulary.size()));
+        }
+        sendJson(exchange, 200, Map.of("tokens", ids));
+    }
+
+    private void infill(HttpExchange exchange) throws IOException, InterruptedException {
+        requests.incrementAndGet();
+        if (loading) {
+            failed.incrementAndGet();
+            sendJson(exchange, 503, Map.of("error", Map.of("code", 503, "message", "Loading model")));
+            return;
+        }
+
+        InfillRequest request = parseRequest(MAPPER.readTree(exchange.getRequestBody()));
+        FailureMode failure = pickFailure();
+        if (failure == FailureMode.SERVER_ERROR || failure == FailureMode.UNAVAILABLE) {
+            failed.incrementAndGet();
+            int status = failure == FailureMode.SERVER_ERROR ? 500 : 503;
+            sendJson(exchange, status, Map.of("error", Map.of("code", status, "message", "Injected failure")));
+            return;
+        }
+        if (failure == FailureMode.HANG) {
+            failed.incrementAndGet();
+            stopped.await(HANG_MAX_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        List<String> promptTokens = tokenize(buildPrompt(request));
+        int cachedTokens = request.cachePrompt() ? updateSlot(promptTokens) : 0;
+        int promptN = promptTokens.size() - cachedTokens;
+
+        double promptMs = sample(promptLatency)
+                + (promptTokensPerSecond > 0 ? promptN * 1000.0 / promptTokensPerSecond : 0);
+        sleep(promptMs);
+
+        List<String> tokens = tokenize(responder.apply(request));
+        if (request.nPredict() >= 0 && tokens.size() > request.nPredict()) {
+            tokens = tokens.subList(0, request.nPredict());
+        }
+        boolean disconnect = failure == FailureMode.DISCONNECT;
+
+        if (request.stream()) {
+            streamTokens(exchange, request, tokens, promptN, promptMs, cachedTokens, disconnect);
+        } else {
+            sendTokens(exchange, request, tokens, promptN, promptMs, cachedTokens, disconnect);
+        }
+    }
+
+    private void streamTokens(HttpExchange exchange, InfillRequest request, List<String> tokens, int promptN,
+                              double promptMs, int cachedTokens, boolean disconnect)
+            throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+
+        long start = System.nanoTime();
+        int predicted = 0;
+        try {
+            for (String token : tokens) {
+                if (disconnect && predicted >= tokens.size() / 2) {
+                    // Ends the stream without the final event
+                    failed.incrementAndGet();
+                    return;
+                }
+                if (elapsedMs(start) > request.maxPredictMs()) {
+                    break;
+                }
+                sleep(sample(tokenLatency));
+                Map<String, Object> event = new LinkedHashMap<>(
+                        Map.of("content", token, "stop", false, "tokens_predicted", predicted + 1));
+                if (request.nProbs() > 0) {
+                    event.put("completion_probabilities", List.of(tokenProbability(request, token)));
+                }
+                writeEvent(out, event);
+                predicted++;
+            }
+            Map<String, Object> last = new LinkedHashMap<>(finalFields(predicted, promptN, promptMs,
+                    elapsedMs(start), cachedTokens));
+            last.put("content", "");
+            writeEvent(out, last);
+            completed.incrementAndGet();
+        } catch (IOException e) {
+            cancelled.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private void sendTokens(HttpExchange exchange, InfillRequest request, List<String> tokens, int promptN,
+                            double promptMs, int cachedTokens, boolean disconnect)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        StringBuilder content = new StringBuilder();
+        int predicted = 0;
+        for (String token : tokens) {
+            if (elapsedMs(start) > request.maxPredictMs()) {
+                break;
+            }
+            sleep(sample(tokenLatency));
+            content.append(token);
+            predicted++;
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>(finalFields(predicted, promptN, promptMs,
+                elapsedMs(start), cachedTokens));
+        body.put("content", content.toString());
+        if (request.nProbs() > 0) {
+            body.put("completion_probabilities", tokens.subList(0, predicted).stream()
+                    .map(token -> tokenProbability(request, token))
+                    .toList());
+        }
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        if (disconnect) {
+            // Closing before the announced length is written drops the connection
+            failed.incrementAndGet();
+            exchange.getResponseBody().write(bytes, 0, bytes.length / 2);
+            exchange.getResponseBody().flush();
+            return;
+        }
+        exchange.getResponseBody().write(bytes);
+        completed.incrementAndGet();
+    }
+
+    private Map<String, Object> finalFields(int predicted, int promptN, double promptMs, double predictedMs,
+                                            int cachedTokens) {
+        Map<String, Object> timings = new LinkedHashMap<>();
+        timings.put("prompt_n", promptN);
+        timings.put("prompt_ms", promptMs);
+        timings.put("prompt_per_token_ms", promptN > 0 ? promptMs / promptN : 0.0);
+        timings.put("prompt_per_second", promptMs > 0 ? promptN * 1000.0 / promptMs : 0.0);
+        timings.put("predicted_n", predicted);
+        timings.put("predicted_ms", predictedMs);
+        timings.put("predicted_per_token_ms", predicted > 0 ? predictedMs / predicted : 0.0);
+        timings.put("predicted_per_second", predictedMs > 0 ? predicted * 1000.0 / predictedMs : 0.0);
+
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("stop", true);
+        fields.put("model", "mock.gguf");
+        fields.put("tokens_predicted", predicted);
+        fields.put("tokens_evaluated", promptN + cachedTokens);
+        fields.put("generation_settings", Map.of("n_ctx", contextSize));
+        fields.put("truncated", promptN + cachedTokens > contextSize);
+        // Like llama-server: every token in the slot after generation
+        fields.put("tokens_cached", cachedTokens + promptN + predicted);
+        fields.put("timings", timings);
+        return fields;
+    }
+
+    /**
+     * A made-up log-probability, the same for a token sampled with the same seed.
+     */
+    private static Map<String, Object> tokenProbability(InfillRequest request, String token) {
+        double logProb = -new Random(31L * request.seed() + token.hashCode()).nextDouble();
+        return Map.of("token", token, "logprob", logProb);
+    }
+
+    private static InfillRequest parseRequest(JsonNode body) {
+        List<String> extra = new ArrayList<>();
+        for (JsonNode chunk : body.path("input_extra")) {
+            extra.add(chunk.path("text").asText(""));
+        }
+        return new InfillRequest(
+                body.path("input_prefix").asText(""),
+                body.path("input_suffix").asText(""),
+                extra,
+                body.path("n_predict").asInt(-1),
+                body.path("stream").asBoolean(false),
+                body.path("cache_prompt").asBoolean(false),
+                body.path("t_max_predict_ms").asLong(Long.MAX_VALUE),
+                body.path("seed").asInt(-1),
+                body.path("n_probs").asInt(0));
+    }
+
+    /**
+     * Lays out the prompt like llama.cpp does for fill-in-the-middle: extra context first, then the
+     * prefix and the suffix.
+     */
+    private static String buildPrompt(InfillRequest request) {
+        StringBuilder prompt = new StringBuilder();
+        for (String chunk : request.extra()) {
+            prompt.append(chunk);
+        }
+        return prompt.append("<|fim_prefix|>").append(request.prefix())
+                .append("<|fim_suffix|>").append(request.suffix())
+                .append("<|fim_middle|>").toString();
+    }
+
+    /**
+     * Replaces the cached prompt and returns the number of leading tokens it shared with the new one.
+     */
+    private synchronized int updateSlot(List<String> promptTokens) {
+        int common = 0;
+        int max = Math.min(slotTokens.size(), promptTokens.size());
+        while (common < max && slotTokens.get(common).equals(promptTokens.get(common))) {
+            common++;
+        }
+        slotTokens = promptTokens;
+        return common;
+    }
+
+    private FailureMode pickFailure() {
+        FailureMode scheduled = scheduledFailures.poll();
+        if (scheduled != null) {
+            return scheduled;
+        }
+        synchronized (failureRates) {
+            for (Map.Entry<FailureMode, Double> entry : failureRates.entrySet()) {
+                if (random.nextDouble() < entry.getValue()) {
+                    return entry.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    private double sample(LatencyDistribution distribution) {
+        synchronized (random) {
+            return distribution.sampleMs(random);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        return tokens;
+    }
+
+    private static void writeEvent(OutputStream out, Map<String, Object> event) throws IOException {
+        out.write(("data: " + MAPPER.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(double millis) throws InterruptedException {
+        if (millis > 0) {
+            long nanos = (long) (millis * 1_000_000);
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    private static double elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000.0;
+    }
+
+    /**
+     * Runs the mock standalone, for a load harness or for trying the plugin without a model:
+     * {@code MockLlamaServer [port] [tokensPerSecond] [promptLatencyMedianMs]}.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8012;
+        double tokensPerSecond = args.length > 1 ? Double.parseDouble(args[1]) : 100;
+        double promptMedianMs = args.length > 2 ? Double.parseDouble(args[2]) : 50;
+
+        MockLlamaServer server = new MockLlamaServer(port, System.nanoTime())
+                .setPromptLatency(LatencyDistribution.logNormal(promptMedianMs, 0.5))
+                .setPromptTokensPerSecond(2000)
+                .setTokensPerSecond(tokensPerSecond)
+                .start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("Mock llama-server listening on " + server.getEndpoint());
+    }
+}
@@ -0,0 +1,36 @@
+plugins {
+    application
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    implementation(project(":core"))
+    // The embedded mock server behind --mock
+    implementation(testFixtures(project(":core")))
+    implementation("com.fasterxml.jackson.core:jackson-databind:2.16.0")
+    compileOnly("org.jetbrains:annotations:24.0.1")
+
+    // Run against the mock server of the core test fixtures
+    testCompileOnly("org.jetbrains:annotations:24.0.1")
+    testImplementation("org.junit.jupiter:junit-jupiter-api:5.11.0-M2")
+    testImplementation("org.assertj:assertj-core:3.26.0")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.11.0-M2")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+// ./gradlew :proxy:run --args="--port 8013 --upstream http://gpu-box:8012"
+application {
+    mainClass.set("com.devoxx.llamacpp.proxy.LlamaProxy")
+}
@@ -0,0 +1,53 @@
+package com.devoxx.llamacpp.proxy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A token bucket per client: a client may send burst requests at once, then requestsPerSecond.
+ * Only requests that reach the server take a token, cache hits and shared requests are free.
+ */
+final class ClientRateLimiter {
+
+    private final double requestsPerSecond;
+    private final int burst;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private static final class Bucket {
+        private double tokens;
+        private long refilledNanos;
+
+        Bucket(int burst) {
+            this.tokens = burst;
+            this.refilledNanos = System.nanoTime();
+        }
+    }
+
+    ClientRateLimiter(double requestsPerSecond, int burst) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+    }
+
+    boolean tryAcquire(@NotNull String client) {
+        if (requestsPerSecond <= 0) {
+            return true;
+        }
+        Bucket bucket = buckets.computeIfAbsent(client, c -> new Bucket(burst));
+        synchronized (bucket) {
+            long now = System.nanoTime();
+            bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.refilledNanos) / 1e9 * requestsPerSecond);
+            bucket.refilledNanos = now;
+            if (bucket.tokens < 1) {
+                return false;
+            }
+            bucket.tokens--;
+            return true;
+        }
+    }
+
+    int getClientCount() {
+        return buckets.size();
+    }
+}
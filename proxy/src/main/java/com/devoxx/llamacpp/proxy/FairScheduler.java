@@ -0,0 +1,90 @@
+package com.devoxx.llamacpp.proxy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs upstream requests at most concurrency at a time, taking turns between the clients: each
+ * client has its own queue, and when a slot frees the next client in the rotation sends its oldest
+ * request. A client typing fast therefore delays its own requests, not everybody else's.
+ */
+final class FairScheduler {
+
+    private final Executor executor;
+    private final ProxyMetrics metrics;
+    private final int maxQueuedPerClient;
+    private final Map<String, ArrayDeque<Task<?>>> queues = new HashMap<>();
+    // The clients with queued requests, the next one to be served first
+    private final ArrayDeque<String> rotation = new ArrayDeque<>();
+    private int permits;
+
+    private record Task<T>(@NotNull Callable<T> work, @NotNull CompletableFuture<T> result, long queuedNanos) {
+    }
+
+    FairScheduler(@NotNull Executor executor, @NotNull ProxyMetrics metrics, int concurrency, int maxQueuedPerClient) {
+        this.executor = executor;
+        this.metrics = metrics;
+        this.permits = Math.max(1, concurrency);
+        this.maxQueuedPerClient = maxQueuedPerClient;
+    }
+
+    /**
+     * @return the result of the work, failed with a {@link RejectedExecutionException} when the
+     * client already has maxQueuedPerClient requests waiting
+     */
+    @NotNull
+    synchronized <T> CompletableFuture<T> submit(@NotNull String client, @NotNull Callable<T> work) {
+        ArrayDeque<Task<?>> queue = queues.computeIfAbsent(client, c -> new ArrayDeque<>());
+        if (queue.size() >= maxQueuedPerClient) {
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException(client + " has " + queue.size() + " requests queued"));
+        }
+        if (queue.isEmpty()) {
+            rotation.add(client);
+        }
+        Task<T> task = new Task<>(work, new CompletableFuture<>(), System.nanoTime());
+        queue.add(task);
+        dispatch();
+        return task.result();
+    }
+
+    synchronized int getQueuedCount() {
+        return queues.values().stream().mapToInt(ArrayDeque::size).sum();
+    }
+
+    private void dispatch() {
+        while (permits > 0 && !rotation.isEmpty()) {
+            String client = rotation.poll();
+            ArrayDeque<Task<?>> queue = queues.get(client);
+            Task<?> task = queue.poll();
+            if (queue.isEmpty()) {
+                queues.remove(client);
+            } else {
+                rotation.add(client);
+            }
+            permits--;
+            executor.execute(() -> run(task));
+        }
+    }
+
+    private <T> void run(@NotNull Task<T> task) {
+        metrics.recordQueueWait((System.nanoTime() - task.queuedNanos()) / 1_000_000.0);
+        try {
+            task.result().complete(task.work().call());
+        } catch (Exception e) {
+            task.result().completeExceptionally(e);
+        } finally {
+            synchronized (this) {
+                permits++;
+                dispatch();
+            }
+        }
+    }
+}
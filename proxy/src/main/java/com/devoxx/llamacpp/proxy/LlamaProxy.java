@@ -0,0 +1,414 @@
+package com.devoxx.llamacpp.proxy;
+
+import com.devoxx.llamacpp.core.CompletionMetrics;
+import com.devoxx.llamacpp.core.DefaultCompletionSettings;
+import com.devoxx.llamacpp.core.LRUCache;
+import com.devoxx.llamacpp.core.LlamaServer;
+import com.devoxx.llamacpp.core.ServerCapabilities;
+import com.devoxx.llamacpp.mock.LatencyDistribution;
+import com.devoxx.llamacpp.mock.MockLlamaServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A proxy in front of a llama-server shared by a team. The plugin points its endpoint at the proxy
+ * instead of the server and notices no difference, while developers working on the same code
+ * share the work:
+ * <ul>
+ *     <li>/infill responses go into a shared {@link LRUCache}, keyed on the whole request but its
+ *     stream flag: the sampling fields such as seed or temperature tell apart the alternative
+ *     candidates of a request, which must not share its response;</li>
+ *     <li>the credential sent upstream is part of the key too: a cached response was generated for a
+ *     client the server accepted, and is only shared with clients sending the same credential. With
+ *     the proxy's own API key every client shares it, the proxy does not check clients itself;</li>
+ *     <li>an /infill request identical to one already sent upstream waits for its response
+ *     rather than being sent again;</li>
+ *     <li>the remaining requests are rate limited per client and sent upstream by a
+ *     {@link FairScheduler}, one per server slot by default.</li>
+ * </ul>
+ * Upstream requests are not streamed, so their complete responses can be cached and shared. A
+ * client that asked for a stream gets the completion as a single event. Every other endpoint is
+ * passed through as it is. Counters and latencies are served as JSON on /proxy/metrics.
+ * <p>
+ * Clients are told apart by an X-Client-Id header when they send one, by their address otherwise.
+ */
+public final class LlamaProxy implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(LlamaProxy.class.getName());
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private static final long UPSTREAM_TIMEOUT_SECONDS = 60;
+    private static final String CLIENT_ID = "X-Client-Id";
+    private static final List<String> FORWARDED_HEADERS = List.of(LlamaServer.CONTENT_TYPE, "Accept");
+
+    private final String upstream;
+    private final String apiKey;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final LRUCache cache;
+    private final Map<String, CompletableFuture<UpstreamResponse>> inFlight = new ConcurrentHashMap<>();
+    private final FairScheduler scheduler;
+    private final ClientRateLimiter rateLimiter;
+    private final ProxyMetrics metrics = new ProxyMetrics();
+
+    private record UpstreamResponse(int status, @Nullable String contentType, byte[] body) {
+    }
+
+    LlamaProxy(@NotNull ProxyOptions options, @NotNull String upstream, int concurrency) throws IOException {
+        this.upstream = upstream;
+        this.apiKey = options.apiKey();
+        this.cache = new LRUCache(options.cacheKeys());
+        this.rateLimiter = new ClientRateLimiter(options.requestsPerSecond(), options.burst());
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "llama-proxy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = new FairScheduler(executor, metrics, concurrency, options.maxQueuedPerClient());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(executor)
+                .build();
+        this.server = HttpServer.create(new InetSocketAddress(options.port()), 0);
+        server.setExecutor(executor);
+        server.createContext("/" + LlamaServer.INFILL, exchange -> handle(exchange, this::infill));
+        server.createContext("/proxy/metrics", exchange -> handle(exchange, this::metrics));
+        server.createContext("/", exchange -> handle(exchange, this::forward));
+    }
+
+    @NotNull
+    LlamaProxy start() {
+        server.start();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the URL to use as the plugin's endpoint setting
+     */
+    @NotNull
+    public String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void handle(@NotNull HttpExchange exchange, @NotNull Handler handler) {
+        try {
+            handler.handle(exchange);
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Client went away", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void infill(@NotNull HttpExchange exchange) throws IOException {
+        long startTime = System.nanoTime();
+        JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+        if (!(body instanceof ObjectNode request)) {
+            sendError(exchange, 400, "Expected a JSON object");
+            return;
+        }
+        boolean stream = request.path(LlamaServer.STREAM).asBoolean(false);
+        // Responses are only shared between clients sending the same credential upstream
+        String authorization = authorizationOf(exchange);
+        String key = cache.generateKey(canonicalRequest(request), authorization != null ? authorization : "");
+
+        String cached = cache.get(key);
+        if (cached != null) {
+            metrics.recordCacheHit();
+            sendCompletion(exchange, cached, stream);
+            metrics.recordRequest(elapsedMs(startTime));
+            return;
+        }
+
+        CompletableFuture<UpstreamResponse> response = inFlight.get(key);
+        if (response != null) {
+            metrics.recordSharedRequest();
+        } else {
+            String client = clientOf(exchange);
+            if (!rateLimiter.tryAcquire(client)) {
+                metrics.recordRateLimited();
+                sendError(exchange, 429, "Too many requests from " + client);
+                return;
+            }
+            response = sendOnce(key, client, request, authorization);
+        }
+
+        UpstreamResponse upstreamResponse;
+        try {
+            upstreamResponse = response.get(UPSTREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                metrics.recordRejected();
+                sendError(exchange, 503, e.getCause().getMessage());
+            } else {
+                LOG.log(Level.WARNING, "Error forwarding to " + upstream, e.getCause());
+                sendError(exchange, 502, "Upstream error: " + e.getCause().getMessage());
+            }
+            return;
+        } catch (TimeoutException e) {
+            sendError(exchange, 504, "Upstream timeout");
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (upstreamResponse.status() == LlamaServer.STATUS_OK) {
+            sendCompletion(exchange, new String(upstreamResponse.body(), StandardCharsets.UTF_8), stream);
+        } else {
+            send(exchange, upstreamResponse.status(), upstreamResponse.contentType(), upstreamResponse.body());
+        }
+        metrics.recordRequest(elapsedMs(startTime));
+    }
+
+    /**
+     * @return the request with its fields sorted at every level and without stream, which only
+     * changes how the response is sent back
+     */
+    @NotNull
+    private static String canonicalRequest(@NotNull ObjectNode request) throws IOException {
+        ObjectNode fields = request.deepCopy();
+        fields.remove(LlamaServer.STREAM);
+        return CANONICAL_MAPPER.writeValueAsString(CANONICAL_MAPPER.treeToValue(fields, Object.class));
+    }
+
+    /**
+     * Sends the request upstream unless an identical one got there first, in which case its response is shared.
+     */
+    @NotNull
+    private CompletableFuture<UpstreamResponse> sendOnce(@NotNull String key, @NotNull String client,
+                                                         @NotNull ObjectNode request, @Nullable String authorization)
+            throws IOException {
+        CompletableFuture<UpstreamResponse> created = new CompletableFuture<>();
+        CompletableFuture<UpstreamResponse> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            metrics.recordSharedRequest();
+            return existing;
+        }
+
+        request.put(LlamaServer.STREAM, false);
+        byte[] body = MAPPER.writeValueAsBytes(request);
+        scheduler.submit(client, () -> post(body, authorization)).whenComplete((response, error) -> {
+            // Cached before leaving the in-flight map, so an identical request always finds one of them
+            if (response != null && response.status() == LlamaServer.STATUS_OK) {
+                cache.put(key, new String(response.body(), StandardCharsets.UTF_8));
+            }
+            inFlight.remove(key, created);
+            if (error != null) {
+                created.completeExceptionally(error);
+            } else {
+                created.complete(response);
+            }
+        });
+        return created;
+    }
+
+    @NotNull
+    private UpstreamResponse post(byte[] body, @Nullable String authorization) throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(upstream + "/" + LlamaServer.INFILL))
+                .header(LlamaServer.CONTENT_TYPE, LlamaServer.CONTENT_TYPE1)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .timeout(Duration.ofSeconds(UPSTREAM_TIMEOUT_SECONDS));
+        if (authorization != null) {
+            requestBuilder.header(LlamaServer.AUTHORIZATION, authorization);
+        }
+        try {
+            HttpResponse<byte[]> response = httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+            metrics.recordUpstream(elapsedMs(startTime), response.statusCode() == LlamaServer.STATUS_OK);
+            return new UpstreamResponse(response.statusCode(),
+                    response.headers().firstValue(LlamaServer.CONTENT_TYPE).orElse(null), response.body());
+        } catch (IOException e) {
+            metrics.recordUpstream(elapsedMs(startTime), false);
+            throw e;
+        }
+    }
+
+    /**
+     * Passes any other request through to the server, streaming the response back.
+     */
+    private void forward(@NotNull HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(upstream + exchange.getRequestURI()))
+                .method(method, body.length == 0
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofByteArray(body));
+        for (String header : FORWARDED_HEADERS) {
+            String value = exchange.getRequestHeaders().getFirst(header);
+            if (value != null) {
+                requestBuilder.header(header, value);
+            }
+        }
+        String authorization = authorizationOf(exchange);
+        if (authorization != null) {
+            requestBuilder.header(LlamaServer.AUTHORIZATION, authorization);
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException e) {
+            sendError(exchange, 502, "Upstream error: " + e.getMessage());
+            return;
+        }
+
+        response.headers().firstValue(LlamaServer.CONTENT_TYPE)
+                .ifPresent(value -> exchange.getResponseHeaders().set(LlamaServer.CONTENT_TYPE, value));
+        try (InputStream in = response.body()) {
+            exchange.sendResponseHeaders(response.statusCode(), "HEAD".equals(method) ? -1 : 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    private void metrics(@NotNull HttpExchange exchange) throws IOException {
+        Map<String, Object> snapshot = metrics.snapshot(cache.size(), scheduler.getQueuedCount(),
+                rateLimiter.getClientCount());
+        send(exchange, 200, LlamaServer.CONTENT_TYPE1, MAPPER.writeValueAsBytes(snapshot));
+    }
+
+    /**
+     * Answers with a cached or fresh /infill response, as a single server-sent event when the client asked for a stream.
+     */
+    private static void sendCompletion(@NotNull HttpExchange exchange, @NotNull String json, boolean stream)
+            throws IOException {
+        if (!stream) {
+            send(exchange, 200, LlamaServer.CONTENT_TYPE1, json.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        ObjectNode event = (ObjectNode) MAPPER.readTree(json);
+        event.put(LlamaServer.STOP, true);
+        String data = LlamaServer.SSE_DATA + MAPPER.writeValueAsString(event) + "\n\n";
+        send(exchange, 200, "text/event-stream", data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(@NotNull HttpExchange exchange, int status, @NotNull String message)
+            throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", status);
+        error.put("message", message);
+        send(exchange, status, LlamaServer.CONTENT_TYPE1, MAPPER.writeValueAsBytes(Map.of("error", error)));
+    }
+
+    private static void send(@NotNull HttpExchange exchange, int status, @Nullable String contentType, byte[] body)
+            throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set(LlamaServer.CONTENT_TYPE, contentType);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @NotNull
+    private static String clientOf(@NotNull HttpExchange exchange) {
+        String clientId = exchange.getRequestHeaders().getFirst(CLIENT_ID);
+        return clientId != null ? clientId : exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    /**
+     * @return the proxy's own API key when it has one, the client's authorization otherwise
+     */
+    @Nullable
+    private String authorizationOf(@NotNull HttpExchange exchange) {
+        return apiKey.isEmpty()
+                ? exchange.getRequestHeaders().getFirst(LlamaServer.AUTHORIZATION)
+                : LlamaServer.BEARER + apiKey;
+    }
+
+    private static double elapsedMs(long startTime) {
+        return (System.nanoTime() - startTime) / 1_000_000.0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ProxyOptions options;
+        try {
+            options = ProxyOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(ProxyOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        String upstream = options.upstream();
+        if (options.mock()) {
+            MockLlamaServer mock = new MockLlamaServer(0, options.seed())
+                    .setPromptLatency(LatencyDistribution.logNormal(30, 0.5))
+                    .setPromptTokensPerSecond(2000)
+                    .setTokensPerSecond(options.mockTokensPerSecond())
+                    .start();
+            Runtime.getRuntime().addShutdownHook(new Thread(mock::stop));
+            upstream = mock.getEndpoint();
+        }
+
+        int concurrency = options.concurrency();
+        if (concurrency <= 0) {
+            DefaultCompletionSettings settings = new DefaultCompletionSettings();
+            settings.setEndpoint(upstream);
+            settings.setApiKey(options.apiKey());
+            ServerCapabilities capabilities = new LlamaServer(new CompletionMetrics(), settings).probe();
+            concurrency = capabilities != null ? capabilities.totalSlots() : 1;
+            if (capabilities == null) {
+                System.err.println("Could not probe " + upstream + ", sending one request at a time");
+            }
+        }
+
+        LlamaProxy proxy = new LlamaProxy(options, upstream, concurrency).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(proxy::close));
+        System.out.printf("Proxy listening on %s in front of %s, %d requests at a time%n",
+                proxy.getEndpoint(), upstream, concurrency);
+    }
+}
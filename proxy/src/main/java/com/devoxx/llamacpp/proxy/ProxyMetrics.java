@@ -0,0 +1,93 @@
+package com.devoxx.llamacpp.proxy;
+
+import com.devoxx.llamacpp.core.LatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The proxy's counters and latencies, served as JSON on /proxy/metrics.
+ */
+final class ProxyMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder sharedRequests = new LongAdder();
+    private final LongAdder upstreamRequests = new LongAdder();
+    private final LongAdder upstreamErrors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyHistogram endToEnd = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram upstream = new LatencyHistogram();
+
+    void recordRequest(double millis) {
+        requests.increment();
+        endToEnd.record(millis);
+    }
+
+    void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * Records a request answered by joining an identical one already sent upstream.
+     */
+    void recordSharedRequest() {
+        sharedRequests.increment();
+    }
+
+    void recordUpstream(double millis, boolean success) {
+        upstreamRequests.increment();
+        upstream.record(millis);
+        if (!success) {
+            upstreamErrors.increment();
+        }
+    }
+
+    void recordRateLimited() {
+        rateLimited.increment();
+    }
+
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    void recordQueueWait(double millis) {
+        queueWait.record(millis);
+    }
+
+    @NotNull
+    Map<String, Object> snapshot(int cacheSize, int queued, int clients) {
+        long total = requests.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("requests", total);
+        snapshot.put("cache_hits", cacheHits.sum());
+        snapshot.put("shared_requests", sharedRequests.sum());
+        snapshot.put("saved_ratio", total == 0 ? 0.0 : (double) (cacheHits.sum() + sharedRequests.sum()) / total);
+        snapshot.put("upstream_requests", upstreamRequests.sum());
+        snapshot.put("upstream_errors", upstreamErrors.sum());
+        snapshot.put("rate_limited", rateLimited.sum());
+        snapshot.put("rejected", rejected.sum());
+        snapshot.put("cache_size", cacheSize);
+        snapshot.put("queued", queued);
+        snapshot.put("clients", clients);
+        snapshot.put("end_to_end_ms", percentiles(endToEnd));
+        snapshot.put("queue_wait_ms", percentiles(queueWait));
+        snapshot.put("upstream_ms", percentiles(upstream));
+        return snapshot;
+    }
+
+    @NotNull
+    private static Map<String, Object> percentiles(@NotNull LatencyHistogram histogram) {
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("count", histogram.getCount());
+        percentiles.put("mean", histogram.getMeanMs());
+        percentiles.put("p50", histogram.getPercentileMs(0.5));
+        percentiles.put("p95", histogram.getPercentileMs(0.95));
+        percentiles.put("p99", histogram.getPercentileMs(0.99));
+        return percentiles;
+    }
+}
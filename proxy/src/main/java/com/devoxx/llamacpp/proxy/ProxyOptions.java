@@ -0,0 +1,79 @@
+package com.devoxx.llamacpp.proxy;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The command line options of the {@link LlamaProxy}.
+ */
+record ProxyOptions(
+        int port,
+        @NotNull String upstream,
+        @NotNull String apiKey,
+        int concurrency,
+        int cacheKeys,
+        double requestsPerSecond,
+        int burst,
+        int maxQueuedPerClient,
+        boolean mock,
+        double mockTokensPerSecond,
+        long seed
+) {
+    static final String USAGE = """
+            Usage: LlamaProxy [options]
+              --port <n>              port to listen on (default 8013)
+              --upstream <url>        llama-server endpoint (default http://127.0.0.1:8012)
+              --api-key <key>         API key sent upstream, instead of the clients' own
+              --concurrency <n>       requests sent upstream at once, 0 for one per server slot (default 0)
+              --cache-keys <n>        completions kept in the shared cache (default 10000)
+              --rate <n>              upstream requests per second per client, 0 for no limit (default 10)
+              --burst <n>             requests a client may send at once above the rate (default 20)
+              --max-queued <n>        requests a client may have waiting for the server (default 8)
+              --mock [tokens/s]       run in front of an embedded mock server (default 100 tokens/s)
+              --seed <n>              random seed of the mock server (default 42)
+            """;
+
+    @NotNull
+    static ProxyOptions parse(@NotNull String[] args) {
+        int port = 8013;
+        String upstream = "http://127.0.0.1:8012";
+        String apiKey = "";
+        int concurrency = 0;
+        int cacheKeys = 10_000;
+        double rate = 10;
+        int burst = 20;
+        int maxQueued = 8;
+        boolean mock = false;
+        double mockTokensPerSecond = 100;
+        long seed = 42;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(value(args, ++i));
+                case "--upstream" -> upstream = value(args, ++i);
+                case "--api-key" -> apiKey = value(args, ++i);
+                case "--concurrency" -> concurrency = Integer.parseInt(value(args, ++i));
+                case "--cache-keys" -> cacheKeys = Integer.parseInt(value(args, ++i));
+                case "--rate" -> rate = Double.parseDouble(value(args, ++i));
+                case "--burst" -> burst = Integer.parseInt(value(args, ++i));
+                case "--max-queued" -> maxQueued = Integer.parseInt(value(args, ++i));
+                case "--mock" -> {
+                    mock = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        mockTokensPerSecond = Double.parseDouble(args[++i]);
+                    }
+                }
+                case "--seed" -> seed = Long.parseLong(value(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        return new ProxyOptions(port, upstream, apiKey, concurrency, cacheKeys, rate, burst, maxQueued,
+                mock, mockTokensPerSecond, seed);
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,73 @@
+package com.devoxx.llamacpp.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FairSchedulerTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void takesTurnsBetweenClients() throws Exception {
+        FairScheduler scheduler = new FairScheduler(executor, new ProxyMetrics(), 1, 8);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = scheduler.submit("alice", () -> {
+            release.await();
+            order.add("alice-1");
+            return "alice-1";
+        });
+        CompletableFuture<?> second = scheduler.submit("alice", () -> order.add("alice-2"));
+        CompletableFuture<?> third = scheduler.submit("alice", () -> order.add("alice-3"));
+        CompletableFuture<?> bob = scheduler.submit("bob", () -> order.add("bob-1"));
+        assertThat(scheduler.getQueuedCount()).isEqualTo(3);
+
+        release.countDown();
+        CompletableFuture.allOf(first, second, third, bob).get(5, TimeUnit.SECONDS);
+
+        // Bob waits for the request already running, not for all of Alice's
+        assertThat(order).containsExactly("alice-1", "alice-2", "bob-1", "alice-3");
+        assertThat(first.get()).isEqualTo("alice-1");
+        assertThat(scheduler.getQueuedCount()).isZero();
+    }
+
+    @Test
+    void rejectsRequestsAboveTheClientQueueLimit() throws Exception {
+        FairScheduler scheduler = new FairScheduler(executor, new ProxyMetrics(), 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> running = scheduler.submit("alice", () -> release.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = scheduler.submit("alice", () -> "queued");
+        CompletableFuture<String> rejected = scheduler.submit("alice", () -> "rejected");
+        CompletableFuture<String> otherClient = scheduler.submit("bob", () -> "bob");
+
+        assertThat(rejected.isCompletedExceptionally()).isTrue();
+        try {
+            rejected.get();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof RejectedExecutionException).isTrue();
+        }
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("queued");
+        assertThat(otherClient.get(5, TimeUnit.SECONDS)).isEqualTo("bob");
+    }
+}
@@ -0,0 +1,183 @@
+package com.devoxx.llamacpp.proxy;
+
+import com.devoxx.llamacpp.mock.LatencyDistribution;
+import com.devoxx.llamacpp.mock.MockLlamaServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlamaProxyTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String COMPLETION = "int total = 0 ;";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final MockLlamaServer server;
+    private LlamaProxy proxy;
+
+    LlamaProxyTest() throws IOException {
+        server = new MockLlamaServer()
+                .setPromptLatency(LatencyDistribution.fixed(200))
+                .setPromptTokensPerSecond(0)
+                .setTokenLatency(LatencyDistribution.fixed(0))
+                .setSlotCount(4)
+                .setResponder(request -> COMPLETION)
+                .start();
+    }
+
+    @AfterEach
+    void stop() {
+        if (proxy != null) {
+            proxy.close();
+        }
+        server.stop();
+    }
+
+    private LlamaProxy start(int concurrency, double requestsPerSecond, int burst, int maxQueued) throws IOException {
+        ProxyOptions options = new ProxyOptions(0, server.getEndpoint(), "", concurrency, 100,
+                requestsPerSecond, burst, maxQueued, false, 0, 42);
+        proxy = new LlamaProxy(options, server.getEndpoint(), concurrency).start();
+        return proxy;
+    }
+
+    private static Map<String, Object> infill(String prefix) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("input_prefix", prefix);
+        request.put("input_suffix", "\n}\n");
+        request.put("n_predict", 16);
+        request.put("seed", 1);
+        return request;
+    }
+
+    private CompletableFuture<HttpResponse<String>> send(Map<String, Object> fields, String clientId,
+                                                         String authorization) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(proxy.getEndpoint() + "/infill"))
+                .header("Content-Type", "application/json")
+                .header("X-Client-Id", clientId)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(fields)));
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> complete(Map<String, Object> fields, String clientId, String authorization)
+            throws Exception {
+        return send(fields, clientId, authorization).get(10, TimeUnit.SECONDS);
+    }
+
+    private JsonNode proxyMetrics() throws Exception {
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(proxy.getEndpoint() + "/proxy/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        return MAPPER.readTree(response.body());
+    }
+
+    @Test
+    void identicalConcurrentRequestsGoUpstreamOnce() throws Exception {
+        start(4, 0, 1, 8);
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(send(infill("int sum() {\n"), "client" + i, null));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> result = response.get(10, TimeUnit.SECONDS);
+            assertThat(result.statusCode()).isEqualTo(200);
+            assertThat(MAPPER.readTree(result.body()).path("content").asText()).isEqualTo(COMPLETION);
+        }
+
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        JsonNode metrics = proxyMetrics();
+        assertThat(metrics.path("upstream_requests").asLong()).isEqualTo(1);
+        assertThat(metrics.path("shared_requests").asLong() + metrics.path("cache_hits").asLong()).isEqualTo(7);
+    }
+
+    @Test
+    void cacheKeyIgnoresFieldOrderAndStreamButNotSamplingOrCredentials() throws Exception {
+        start(4, 0, 1, 8);
+        Map<String, Object> request = infill("int sum() {\n");
+        assertThat(complete(request, "alice", "Bearer alice").statusCode()).isEqualTo(200);
+
+        // Same fields in another order, streamed
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("stream", true);
+        reordered.put("seed", 1);
+        reordered.put("n_predict", 16);
+        reordered.put("input_suffix", "\n}\n");
+        reordered.put("input_prefix", "int sum() {\n");
+        HttpResponse<String> streamed = complete(reordered, "alice", "Bearer alice");
+        assertThat(streamed.statusCode()).isEqualTo(200);
+        assertThat(streamed.body()).startsWith("data: ").contains(COMPLETION);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+
+        // Another candidate of the same request
+        Map<String, Object> reseeded = infill("int sum() {\n");
+        reseeded.put("seed", 2);
+        assertThat(complete(reseeded, "alice", "Bearer alice").statusCode()).isEqualTo(200);
+        assertThat(server.getRequestCount()).isEqualTo(2);
+
+        // Another credential
+        assertThat(complete(request, "bob", "Bearer bob").statusCode()).isEqualTo(200);
+        assertThat(complete(request, "carol", null).statusCode()).isEqualTo(200);
+        assertThat(server.getRequestCount()).isEqualTo(4);
+
+        assertThat(proxyMetrics().path("cache_hits").asLong()).isEqualTo(1);
+    }
+
+    @Test
+    void rateLimitsEachClient() throws Exception {
+        start(4, 0.001, 1, 8);
+
+        assertThat(complete(infill("a"), "alice", null).statusCode()).isEqualTo(200);
+        assertThat(complete(infill("b"), "alice", null).statusCode()).isEqualTo(429);
+        // Cache hits take no token, other clients have their own bucket
+        assertThat(complete(infill("a"), "alice", null).statusCode()).isEqualTo(200);
+        assertThat(complete(infill("b"), "bob", null).statusCode()).isEqualTo(200);
+
+        assertThat(proxyMetrics().path("rate_limited").asLong()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsClientsWithTooManyQueuedRequests() throws Exception {
+        start(1, 0, 1, 1);
+
+        CompletableFuture<HttpResponse<String>> running = send(infill("a"), "alice", null);
+        waitFor(() -> server.getRequestCount() == 1);
+        CompletableFuture<HttpResponse<String>> queued = send(infill("b"), "alice", null);
+        waitFor(() -> proxyMetrics().path("queued").asInt() == 1);
+
+        assertThat(complete(infill("c"), "alice", null).statusCode()).isEqualTo(503);
+        assertThat(running.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+        assertThat(queued.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+        assertThat(proxyMetrics().path("rejected").asLong()).isEqualTo(1);
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean holds() throws Exception;
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.holds()) {
+            assertThat(System.nanoTime() < deadline).isTrue();
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+rootProject.name = "LlamaCPPCompletion"
+
+// core: the completion pipeline without IDE dependencies, cli: a load generator running it headless,
+// proxy: a caching proxy in front of a llama-server shared by a team
+include("core", "cli", "proxy")
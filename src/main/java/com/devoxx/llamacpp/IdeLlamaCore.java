@@ -0,0 +1,114 @@
+package com.devoxx.llamacpp;
+
+import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.core.LlamaResponse;
+import com.devoxx.llamacpp.core.SessionRecorder;
+import com.devoxx.llamacpp.settings.LlamaSettings;
+import com.devoxx.llamacpp.ui.LlamaStatusBarFactory;
+import com.devoxx.llamacpp.ui.LlamaStatusBarWidget;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.LowMemoryWatcher;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link LlamaCore} application service: reads the persisted settings, reports responses in the
+ * status bar, takes the indentation from the {@link CompletionState} and shrinks its caches when
+ * the IDE runs low on memory. When enabled in the settings it records the session. The server is
+ * probed at startup, the core probes it again after a reconnect. Until disposed, the queued context
+ * chunks move into the ring buffer every ringUpdateMs.
+ */
+public class IdeLlamaCore extends LlamaCore implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(IdeLlamaCore.class);
+
+    private volatile boolean disposed;
+    private volatile ScheduledFuture<?> ringUpdate;
+
+    public IdeLlamaCore() {
+        super(LlamaSettings.getInstance());
+        LowMemoryWatcher.register(this::shrinkCaches, ApplicationManager.getApplication());
+        getMetrics().registerMBean();
+        updateSessionRecording();
+        scheduleRingUpdate();
+        probeServer();
+    }
+
+    public static IdeLlamaCore getInstance() {
+        return (IdeLlamaCore) ApplicationManager.getApplication().getService(LlamaCore.class);
+    }
+
+    /**
+     * Starts or stops the session recording to follow the settings.
+     */
+    public synchronized void updateSessionRecording() {
+        SessionRecorder recorder = getSessionRecorder();
+        boolean enabled = LlamaSettings.getInstance().isRecordSessions();
+        if (enabled && recorder == null) {
+            try {
+                recorder = SessionRecorder.start(Path.of(PathManager.getLogPath(), "llama-sessions"));
+                setSessionRecorder(recorder);
+                LOG.info("Recording completion session to " + recorder.getPath());
+            } catch (IOException e) {
+                LOG.warn("Could not start recording the completion session", e);
+            }
+        } else if (!enabled && recorder != null) {
+            setSessionRecorder(null);
+            recorder.close();
+        }
+    }
+
+    /**
+     * Schedules the next ring buffer update, ringUpdateMs is read again each time so that a settings
+     * change applies from the next update.
+     */
+    private void scheduleRingUpdate() {
+        if (disposed) {
+            return;
+        }
+        ringUpdate = AppExecutorUtil.getAppScheduledExecutorService().schedule(() -> {
+            try {
+                getExtraContext().updateRingBuffer();
+            } finally {
+                scheduleRingUpdate();
+            }
+        }, LlamaSettings.getInstance().getRingUpdateMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        ScheduledFuture<?> update = ringUpdate;
+        if (update != null) {
+            update.cancel(false);
+        }
+        getMetrics().unregisterMBean();
+        SessionRecorder recorder = getSessionRecorder();
+        if (recorder != null) {
+            setSessionRecorder(null);
+            recorder.close();
+        }
+    }
+
+    @Override
+    public @Nullable LlamaResponse getCompletion(@NotNull String prefix, @NotNull String suffix) {
+        return getCompletion(prefix, suffix, CompletionState.getNIndent());
+    }
+
+    @Override
+    protected void showInfo(@Nullable LlamaResponse response) {
+        LlamaStatusBarWidget widget = LlamaStatusBarFactory.getCurrentWidget();
+        if (widget != null) {
+            widget.showInfo(response);
+        }
+    }
+}
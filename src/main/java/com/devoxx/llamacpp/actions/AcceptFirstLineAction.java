@@ -12,6 +12,8 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.devoxx.llamacpp.CompletionState;
 import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.core.SessionEvent;
+import com.devoxx.llamacpp.core.SessionRecorder;
 import org.jetbrains.annotations.NotNull;
 
 public class AcceptFirstLineAction extends AnAction {
@@ -59,5 +61,16 @@ public class AcceptFirstLineAction extends AnAction {
             document.insertString(offset, firstLine);
             caretModel.moveToOffset(offset + firstLine.length());
         });
+
+        SessionRecorder recorder = llamaCore.getSessionRecorder();
+        if (recorder != null) {
+            recorder.accept(SessionEvent.AcceptKind.LINE, firstLine.length());
+        }
+        llamaCore.getAcceptanceTracker().recordAccepted(true);
+
+        // Show what is left right away, the request is answered from the cache
+        if (llamaCore.acceptPartial(firstLine) != null) {
+            TriggerCompletionAction.invokeCompletion(project, editor);
+        }
     }
 }
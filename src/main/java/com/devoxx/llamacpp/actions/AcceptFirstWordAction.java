@@ -13,6 +13,8 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 import com.devoxx.llamacpp.CompletionState;
 import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.core.SessionEvent;
+import com.devoxx.llamacpp.core.SessionRecorder;
 import org.jetbrains.annotations.NotNull;
 
 public class AcceptFirstWordAction extends AnAction {
@@ -59,5 +61,16 @@ public class AcceptFirstWordAction extends AnAction {
             document.insertString(offset, firstWord);
             caretModel.moveToOffset(offset + firstWord.length());
         });
+
+        SessionRecorder recorder = llamaCore.getSessionRecorder();
+        if (recorder != null) {
+            recorder.accept(SessionEvent.AcceptKind.WORD, firstWord.length());
+        }
+        llamaCore.getAcceptanceTracker().recordAccepted(true);
+
+        // Show what is left right away, the request is answered from the cache
+        if (llamaCore.acceptPartial(firstWord) != null) {
+            TriggerCompletionAction.invokeCompletion(project, editor);
+        }
     }
 }
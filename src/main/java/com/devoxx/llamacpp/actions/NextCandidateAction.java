@@ -0,0 +1,49 @@
+package com.devoxx.llamacpp.actions;
+
+import com.intellij.openapi.actionSystem.ActionUpdateThread;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.devoxx.llamacpp.core.LlamaCore;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows the next candidate ranked for the last completion, without a server request.
+ */
+public class NextCandidateAction extends AnAction {
+    private final LlamaCore llamaCore;
+
+    public NextCandidateAction() {
+        this.llamaCore = ApplicationManager.getApplication().getService(LlamaCore.class);
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        Editor editor = e.getData(CommonDataKeys.EDITOR);
+        e.getPresentation().setEnabled(project != null && editor != null);
+    }
+
+    @Override
+    public @NotNull ActionUpdateThread getActionUpdateThread() {
+        return ActionUpdateThread.BGT;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Project project = e.getProject();
+        Editor editor = e.getData(CommonDataKeys.EDITOR);
+
+        if (project == null || editor == null) {
+            return;
+        }
+
+        // The cache now holds the next candidate, the lookup shows it first
+        if (llamaCore.nextCandidate() != null) {
+            TriggerCompletionAction.invokeCompletion(project, editor);
+        }
+    }
+}
@@ -35,7 +35,13 @@ public class TriggerCompletionAction extends AnAction {
         }
 
         LOG.info("TriggerCompletionAction invoked");
+        invokeCompletion(project, editor);
+    }
 
+    /**
+     * Invokes basic completion as if the user asked for it, bypassing the auto-trigger setting.
+     */
+    public static void invokeCompletion(@NotNull Project project, @NotNull Editor editor) {
         // Set manual trigger flag and invoke completion
         CompletionState.setManualTrigger(true);
         try {
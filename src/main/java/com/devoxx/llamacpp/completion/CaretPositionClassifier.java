@@ -0,0 +1,90 @@
+package com.devoxx.llamacpp.completion;
+
+import com.devoxx.llamacpp.core.TriggerPolicy;
+import com.intellij.lang.Language;
+import com.intellij.lang.LanguageParserDefinitions;
+import com.intellij.lang.ParserDefinition;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.highlighter.HighlighterIterator;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileTypes.LanguageFileType;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+/**
+ * Classifies the caret for the {@link TriggerPolicy} from the editor's syntax highlighter, which is
+ * already lexed for display, so it costs a token lookup rather than a PSI walk.
+ */
+public final class CaretPositionClassifier {
+
+    private CaretPositionClassifier() {
+    }
+
+    @NotNull
+    public static TriggerPolicy.Position classify(@NotNull Editor editor, int offset) {
+        Document document = editor.getDocument();
+        if (offset > 0 && editor instanceof EditorEx editorEx) {
+            // The token ending at the caret, a line comment ends right before the caret at the end of a line
+            HighlighterIterator iterator = editorEx.getHighlighter().createIterator(offset - 1);
+            if (!iterator.atEnd()) {
+                IElementType type = iterator.getTokenType();
+                if (isComment(type)) {
+                    return TriggerPolicy.Position.COMMENT;
+                }
+                if (isString(type) && (iterator.getEnd() > offset || !isClosingQuote(document, iterator))) {
+                    return TriggerPolicy.Position.STRING;
+                }
+            }
+        }
+        return TriggerPolicy.textPosition(document.getImmutableCharSequence(), offset);
+    }
+
+    /**
+     * @return the id of the editor's file language, lower case, empty when unknown
+     */
+    @NotNull
+    public static String languageOf(@NotNull Editor editor) {
+        VirtualFile file = FileDocumentManager.getInstance().getFile(editor.getDocument());
+        if (file != null && file.getFileType() instanceof LanguageFileType languageFileType) {
+            return languageFileType.getLanguage().getID().toLowerCase(Locale.ROOT);
+        }
+        return "";
+    }
+
+    private static boolean isComment(@NotNull IElementType type) {
+        ParserDefinition definition = parserDefinition(type);
+        // Highlighting lexers also emit tokens the parser does not know, like the parts of a doc comment
+        return definition != null && definition.getCommentTokens().contains(type)
+                || debugName(type).contains("COMMENT");
+    }
+
+    private static boolean isString(@NotNull IElementType type) {
+        ParserDefinition definition = parserDefinition(type);
+        // The escapes inside a string literal are tokens of their own
+        return definition != null && definition.getStringLiteralElements().contains(type)
+                || debugName(type).contains("STRING");
+    }
+
+    private static boolean isClosingQuote(@NotNull Document document, @NotNull HighlighterIterator iterator) {
+        if (iterator.getEnd() - iterator.getStart() < 2) {
+            return false;
+        }
+        char last = document.getImmutableCharSequence().charAt(iterator.getEnd() - 1);
+        return last == '"' || last == '\'' || last == '`';
+    }
+
+    private static ParserDefinition parserDefinition(@NotNull IElementType type) {
+        Language language = type.getLanguage();
+        return language == Language.ANY ? null : LanguageParserDefinitions.INSTANCE.forLanguage(language);
+    }
+
+    @NotNull
+    private static String debugName(@NotNull IElementType type) {
+        return type.getDebugName().toUpperCase(Locale.ROOT);
+    }
+}
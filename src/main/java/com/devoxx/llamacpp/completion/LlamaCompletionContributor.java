@@ -1,14 +1,23 @@
 package com.devoxx.llamacpp.completion;
 
+import com.devoxx.llamacpp.core.AcceptanceTracker;
+import com.devoxx.llamacpp.core.CompletionEvents;
+import com.devoxx.llamacpp.core.ContextBudget;
 import com.devoxx.llamacpp.core.LlamaCore;
 import com.devoxx.llamacpp.core.LlamaResponse;
+import com.devoxx.llamacpp.core.SessionEvent;
+import com.devoxx.llamacpp.core.SessionRecorder;
+import com.devoxx.llamacpp.core.TriggerPolicy;
 import com.intellij.codeInsight.completion.*;
 import com.intellij.codeInsight.lookup.*;
+import com.intellij.codeInsight.lookup.impl.LookupImpl;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.*;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.patterns.PlatformPatterns;
 import com.intellij.util.ProcessingContext;
 import com.devoxx.llamacpp.CompletionState;
@@ -16,6 +25,11 @@ import com.devoxx.llamacpp.settings.LlamaSettings;
 import com.devoxx.llamacpp.ui.LlamaStatusBarFactory;
 import com.devoxx.llamacpp.ui.LlamaStatusBarWidget;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class LlamaCompletionContributor extends CompletionContributor {
 
@@ -40,8 +54,30 @@ public class LlamaCompletionContributor extends CompletionContributor {
                         Editor editor = parameters.getEditor();
                         Document document = editor.getDocument();
 
+                        TriggerPolicy.Action positionAction = positionAction(editor, parameters.getOffset());
+                        if (positionAction == TriggerPolicy.Action.SKIP) {
+                            return;
+                        }
+                        if (positionAction == TriggerPolicy.Action.LOCAL) {
+                            // Offered in the lookup only, the panel may insert what the listeners hear
+                            LlamaResponse local = llamaCore.getProvisionalCompletion(
+                                    getPrefix(document, parameters.getOffset()));
+                            if (local != null) {
+                                result.addElement(createLookupElement(local.content()));
+                            }
+                            return;
+                        }
+
+                        // Skip auto-triggered requests where completions are rarely accepted lately
+                        AcceptanceTracker tracker = llamaCore.getAcceptanceTracker();
+                        AcceptanceTracker.Context acceptanceContext = acceptanceContext(document, parameters.getOffset());
+                        if (!CompletionState.isManuallyTriggered() && !tracker.shouldRequest(acceptanceContext)) {
+                            return;
+                        }
+
                         String prefix = getPrefix(document, parameters.getOffset());
                         String suffix = getSuffix(document, parameters.getOffset());
+                        recordTrigger(document, parameters.getOffset());
 
                         LlamaStatusBarWidget widget = LlamaStatusBarFactory.getCurrentWidget();
                         if (widget != null) {
@@ -50,37 +86,142 @@ public class LlamaCompletionContributor extends CompletionContributor {
 
                         CompletionState.setActiveCompletion(true);
 
-                        ApplicationManager.getApplication().invokeLater(() -> {
+                        // Show the local model's guess right away, the server result supersedes it.
+                        // The listeners only hear about the server result, the panel may insert it.
+                        LlamaResponse provisional = llamaCore.getProvisionalCompletion(prefix);
+                        ProvisionalLookupElement provisionalElement = null;
+                        if (provisional != null) {
+                            provisionalElement = new ProvisionalLookupElement(createLookupElement(provisional.content()));
+                            result.addElement(provisionalElement);
+                        }
+
+                        // Wait for a pause in the typing off the UI thread, manual triggers go out right away
+                        long triggerNanos = System.nanoTime();
+                        boolean manual = CompletionState.isManuallyTriggered();
+                        ProvisionalLookupElement provisionalShown = provisionalElement;
+                        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+                            LlamaResponse suggestion = null;
                             try {
-                                LlamaResponse suggestion = llamaCore.getCompletion(prefix, suffix);
-                                if (suggestion != null && !suggestion.content().isEmpty()) {
-                                    // Create lookup elements for each line of the suggestion
-                                    String[] lines = suggestion.content().split("\n");
-                                    for (String line : lines) {
-                                        if (!line.trim().isEmpty()) {
-                                            LookupElement element = createLookupElement(line);
-                                            result.addElement(
-                                                    PrioritizedLookupElement.withPriority(element, Double.MAX_VALUE)
-                                            );
-                                        }
-                                    }
-
-                                    // Notify any completion listeners (including the panel)
-                                    llamaCore.notifyListeners(suggestion);
+                                if (manual || llamaCore.getDebouncer().awaitPause(triggerNanos)) {
+                                    suggestion = llamaCore.getCompletion(prefix, suffix);
                                 }
                             } catch (Exception ex) {
                                 LOG.error("Error during completion:", ex);
-                            } finally {
-                                CompletionState.setActiveCompletion(false);
-                                if (widget != null) {
-                                    widget.showInfo(null);
-                                }
                             }
+                            LlamaResponse delivered = suggestion;
+                            ApplicationManager.getApplication().invokeLater(() -> deliver(
+                                    delivered, prefix, suffix, result, editor, provisionalShown, tracker,
+                                    acceptanceContext, widget));
                         });
                     }
                 });
     }
 
+    /**
+     * Adds the server suggestion to the lookup, on the UI thread, followed by the other candidates
+     * ranked for it, and drops the provisional guess it supersedes. A debounced request delivers
+     * null, the provisional guess then stays.
+     */
+    private void deliver(@Nullable LlamaResponse suggestion, @NotNull String prefix, @NotNull String suffix,
+                         @NotNull CompletionResultSet result, @NotNull Editor editor,
+                         @Nullable ProvisionalLookupElement provisional,
+                         @NotNull AcceptanceTracker tracker, @NotNull AcceptanceTracker.Context acceptanceContext,
+                         @Nullable LlamaStatusBarWidget widget) {
+        try {
+            if (suggestion != null && !suggestion.content().isEmpty()) {
+                CompletionEvents.UiDeliveryEvent deliveryEvent = new CompletionEvents.UiDeliveryEvent();
+                deliveryEvent.begin();
+
+                // Create lookup elements for each line of the suggestion
+                String[] lines = suggestion.content().split("\n");
+                Set<String> added = new HashSet<>();
+                int elements = 0;
+                for (String line : lines) {
+                    if (!line.trim().isEmpty() && added.add(line)) {
+                        LookupElement element = createLookupElement(line);
+                        result.addElement(
+                                PrioritizedLookupElement.withPriority(element, Double.MAX_VALUE)
+                        );
+                        elements++;
+                    }
+                }
+
+                // The alternatives below, in their rank order
+                List<String> candidates = llamaCore.getCandidates(prefix, suffix);
+                for (int rank = 0; rank < candidates.size(); rank++) {
+                    String candidate = candidates.get(rank);
+                    if (candidate.equals(suggestion.content())) {
+                        continue;
+                    }
+                    for (String line : candidate.split("\n")) {
+                        if (!line.trim().isEmpty() && added.add(line)) {
+                            result.addElement(PrioritizedLookupElement.withPriority(
+                                    createLookupElement(line), Double.MAX_VALUE / (rank + 2)));
+                            elements++;
+                        }
+                    }
+                }
+
+                if (provisional != null) {
+                    provisional.supersede();
+                    if (LookupManager.getActiveLookup(editor) instanceof LookupImpl lookup) {
+                        lookup.resort(false);
+                    }
+                }
+
+                // Notify any completion listeners (including the panel)
+                llamaCore.notifyListeners(suggestion);
+                tracker.recordShown(acceptanceContext);
+
+                deliveryEvent.completionId = llamaCore.getLastCompletionId();
+                deliveryEvent.elements = elements;
+                deliveryEvent.contentLength = suggestion.content().length();
+                deliveryEvent.commit();
+            }
+        } catch (Exception ex) {
+            LOG.error("Error during completion:", ex);
+        } finally {
+            CompletionState.setActiveCompletion(false);
+            if (widget != null) {
+                widget.showInfo(null);
+            }
+        }
+    }
+
+    private void recordTrigger(@NotNull Document document, int offset) {
+        SessionRecorder recorder = llamaCore.getSessionRecorder();
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        if (recorder != null && file != null) {
+            recorder.trigger(file.getPath(), offset, CompletionState.isManuallyTriggered(),
+                    document.getImmutableCharSequence());
+        }
+    }
+
+    /**
+     * Applies the trigger rules for the caret position, manual triggers are always allowed.
+     */
+    @NotNull
+    private TriggerPolicy.Action positionAction(@NotNull Editor editor, int offset) {
+        if (CompletionState.isManuallyTriggered()) {
+            return TriggerPolicy.Action.ALLOW;
+        }
+        TriggerPolicy.Action action = llamaCore.getTriggerPolicy().action(
+                CaretPositionClassifier.languageOf(editor),
+                CaretPositionClassifier.classify(editor, offset));
+        llamaCore.getMetrics().recordPositionRule(action);
+        return action;
+    }
+
+    @NotNull
+    private AcceptanceTracker.Context acceptanceContext(@NotNull Document document, int offset) {
+        VirtualFile file = FileDocumentManager.getInstance().getFile(document);
+        int line = document.getLineNumber(offset);
+        return llamaCore.getAcceptanceTracker().contextOf(
+                file != null ? file.getName() : "",
+                document.getText(TextRange.create(document.getLineStartOffset(line), offset)),
+                document.getText(TextRange.create(offset, document.getLineEndOffset(line))));
+    }
+
     private boolean shouldProvideCompletion(CompletionParameters parameters) {
         LlamaSettings settings = LlamaSettings.getInstance();
         if (!settings.isEnabled()) {
@@ -90,19 +231,25 @@ public class LlamaCompletionContributor extends CompletionContributor {
         return settings.isAutoTrigger() || CompletionState.isManuallyTriggered();
     }
 
-    private @NotNull String getPrefix(@NotNull Document document, int offset) {
-        LlamaSettings settings = LlamaSettings.getInstance();
-        int startLine = Math.max(0, document.getLineNumber(offset) - settings.getPrefixLines());
+    /**
+     * Returns the prefix lines of the {@link ContextBudget} before the offset. Only this window of the document is materialized.
+     */
+    public static @NotNull String getPrefix(@NotNull Document document, int offset) {
+        ContextBudget budget = ApplicationManager.getApplication().getService(LlamaCore.class).getContextBudget();
+        int startLine = Math.max(0, document.getLineNumber(offset) - budget.prefixLines());
         return document.getText(TextRange.create(
                 document.getLineStartOffset(startLine),
                 offset
         ));
     }
 
-    private @NotNull String getSuffix(@NotNull Document document, int offset) {
-        LlamaSettings settings = LlamaSettings.getInstance();
+    /**
+     * Returns the suffix lines of the {@link ContextBudget} after the offset. Only this window of the document is materialized.
+     */
+    public static @NotNull String getSuffix(@NotNull Document document, int offset) {
+        ContextBudget budget = ApplicationManager.getApplication().getService(LlamaCore.class).getContextBudget();
         int endLine = Math.min(document.getLineCount() - 1,
-                document.getLineNumber(offset) + settings.getSuffixLines());
+                document.getLineNumber(offset) + budget.suffixLines());
         return document.getText(TextRange.create(
                 offset,
                 document.getLineEndOffset(endLine)
@@ -141,8 +288,35 @@ public class LlamaCompletionContributor extends CompletionContributor {
                         editor.getCaretModel().moveToOffset(startOffset + suggestion.length());
                     });
 
+                    SessionRecorder recorder = llamaCore.getSessionRecorder();
+                    if (recorder != null) {
+                        recorder.accept(SessionEvent.AcceptKind.LOOKUP, suggestion.length());
+                    }
+                    llamaCore.getAcceptanceTracker().recordAccepted(false);
+
                     // Mark completion as no longer active
                     CompletionState.setActiveCompletion(false);
                 });
     }
+
+    /**
+     * The local model's guess, shown while the server request runs. Once superseded by the server
+     * result it matches no prefix anymore, so the lookup drops it when it filters its items again.
+     */
+    private static final class ProvisionalLookupElement extends LookupElementDecorator<LookupElement> {
+        private volatile boolean superseded;
+
+        ProvisionalLookupElement(@NotNull LookupElement delegate) {
+            super(delegate);
+        }
+
+        void supersede() {
+            superseded = true;
+        }
+
+        @Override
+        public @NotNull Set<String> getAllLookupStrings() {
+            return superseded ? Set.of() : super.getAllLookupStrings();
+        }
+    }
 }
@@ -6,10 +6,14 @@ import com.intellij.openapi.editor.event.BulkAwareDocumentListener;
 import com.intellij.openapi.editor.event.CaretEvent;
 import com.intellij.openapi.editor.event.CaretListener;
 import com.intellij.openapi.editor.event.DocumentEvent;
-import com.intellij.openapi.editor.impl.EditorImpl;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.ex.FocusChangeListener;
 import com.intellij.openapi.fileEditor.*;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.devoxx.llamacpp.core.LineIndex;
 import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.core.SessionRecorder;
+import com.devoxx.llamacpp.settings.LlamaSettings;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -21,7 +25,9 @@ public class LlamaFileEditorListener implements FileEditorManagerListener {
     private final LlamaCore llamaCore;
 
     public LlamaFileEditorListener() {
-        this.llamaCore = new LlamaCore();
+        // Share the service instance, so the context gathered here reaches the completion requests.
+        // The service also moves the queued chunks into the ring buffer.
+        this.llamaCore = ApplicationManager.getApplication().getService(LlamaCore.class);
     }
 
     @Override
@@ -36,21 +42,35 @@ public class LlamaFileEditorListener implements FileEditorManagerListener {
 
     private void setupEditorListeners(@NotNull TextEditor editor, VirtualFile file) {
         Editor textEditor = editor.getEditor();
+        recordSnapshot(textEditor.getDocument(), file);
 
         // Listen for cursor movements
         textEditor.getCaretModel().addCaretListener(new CaretListener() {
             @Override
             public void caretPositionChanged(@NotNull CaretEvent e) {
-                EditorImpl editorImpl = (EditorImpl) e.getEditor();
-                Document document = editorImpl.getDocument();
-                int line = document.getLineNumber(e.getNewPosition().column); // .offset);
+                Document document = e.getEditor().getDocument();
+                int line = e.getNewPosition().line;
+                llamaCore.getExtraContext().recordCaretMove(file.getPath());
+                SessionRecorder recorder = llamaCore.getSessionRecorder();
+                if (recorder != null) {
+                    recorder.caretMove(file.getPath(), line, document.getImmutableCharSequence());
+                }
 
-                String text = document.getText();
-                llamaCore.updateExtraContext(text, file.getPath());
-                updateContextAroundCursor(text, line, file.getPath());
+                updateContextAroundCursor(document, line, file.getPath());
             }
         });
 
+        // Warm the server connections up when the user comes back to the editor, after a pause the
+        // server has closed them
+        if (textEditor instanceof EditorEx editorEx) {
+            editorEx.addFocusListener(new FocusChangeListener() {
+                @Override
+                public void focusGained(@NotNull Editor focused) {
+                    llamaCore.preconnect();
+                }
+            });
+        }
+
         // Listen for document changes
         textEditor.getDocument().addDocumentListener(new BulkAwareDocumentListener() {
             @Override
@@ -59,25 +79,56 @@ public class LlamaFileEditorListener implements FileEditorManagerListener {
                     handleDocumentChange(event, file);
                 }
             }
+
+            @Override
+            public void bulkUpdateFinished(@NotNull Document document) {
+                // The edits of a bulk update are not recorded one by one
+                recordSnapshot(document, file);
+                LlamaIndexUpdater.getInstance().scheduleUpdate(file);
+            }
         });
     }
 
-    private void updateContextAroundCursor(String text, int line, String filepath) {
+    private void updateContextAroundCursor(@NotNull Document document, int line, String filepath) {
+        if (line >= document.getLineCount()) {
+            return;
+        }
+
+        // Snapshot only the ringScope window around the caret, the immutable sequence makes this cheap
+        int ringScope = LlamaSettings.getInstance().getRingScope();
+        int fromLine = Math.max(0, line - ringScope);
+        int toLine = Math.min(document.getLineCount() - 1, line + ringScope);
+        CharSequence window = document.getImmutableCharSequence().subSequence(
+                document.getLineStartOffset(fromLine), document.getLineEndOffset(toLine));
+
         ApplicationManager.getApplication().executeOnPooledThread(() -> {
-            llamaCore.updateExtraContext(text, filepath);
+            llamaCore.getExtraContext().updateContextAroundCursor(line, LineIndex.of(window, fromLine), filepath);
         });
     }
 
+    private void recordSnapshot(@NotNull Document document, VirtualFile file) {
+        SessionRecorder recorder = llamaCore.getSessionRecorder();
+        if (recorder != null) {
+            recorder.fileOpened(file.getPath(), document.getImmutableCharSequence());
+        }
+    }
+
     private void handleDocumentChange(@NotNull DocumentEvent event, VirtualFile file) {
         Document document = event.getDocument();
-        if (document.getText().isEmpty()) {
+        llamaCore.recordKeystroke();
+        SessionRecorder recorder = llamaCore.getSessionRecorder();
+        if (recorder != null) {
+            recorder.edit(file.getPath(), event.getOffset(), event.getOldLength(), event.getNewFragment(),
+                    document.getImmutableCharSequence());
+        }
+        if (document.getTextLength() == 0) {
             return;
         }
 
-        // Schedule context update
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
-            llamaCore.updateExtraContext(document.getText(), file.getPath());
-        });
+        llamaCore.getExtraContext().recordEdit(file.getPath());
+
+        // Schedule an index update, coalesced with the following keystrokes
+        LlamaIndexUpdater.getInstance().documentChanged(file, event);
     }
 }
 
@@ -0,0 +1,222 @@
+package com.devoxx.llamacpp.listeners;
+
+import com.devoxx.llamacpp.core.ContextIndex;
+import com.devoxx.llamacpp.core.LineIndex;
+import com.devoxx.llamacpp.core.LlamaCore;
+import com.devoxx.llamacpp.settings.LlamaSettings;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the project context index in sync with the project files and open editors.
+ * Updates are coalesced per file and always run on a pooled thread, never on the EDT.
+ */
+public class LlamaIndexUpdater {
+
+    private static final Logger LOG = Logger.getInstance(LlamaIndexUpdater.class);
+
+    private final LlamaCore llamaCore;
+    private final Map<String, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+    public LlamaIndexUpdater() {
+        this.llamaCore = ApplicationManager.getApplication().getService(LlamaCore.class);
+    }
+
+    public static LlamaIndexUpdater getInstance() {
+        return ApplicationManager.getApplication().getService(LlamaIndexUpdater.class);
+    }
+
+    /**
+     * Indexes all content files of the project in the background.
+     */
+    public void indexProject(@NotNull Project project) {
+        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+            LlamaSettings settings = LlamaSettings.getInstance();
+            List<VirtualFile> files = ReadAction.compute(() -> {
+                List<VirtualFile> result = new ArrayList<>();
+                if (!project.isDisposed()) {
+                    ProjectFileIndex.getInstance(project).iterateContent(file -> {
+                        if (isIndexable(file)) {
+                            result.add(file);
+                        }
+                        return result.size() < settings.getMaxIndexedFiles();
+                    });
+                }
+                return result;
+            });
+
+            for (VirtualFile file : files) {
+                if (project.isDisposed()) {
+                    return;
+                }
+                indexFile(file);
+            }
+            LOG.info("Indexed " + files.size() + " files of " + project.getName() + " for extra context");
+        });
+    }
+
+    /**
+     * Schedules a full (re)index of the file, replacing any update that is still pending for it.
+     */
+    public void scheduleUpdate(@NotNull VirtualFile file) {
+        schedule(file, PendingUpdate::markFull);
+    }
+
+    /**
+     * Records an edit of an open document. Edits are coalesced, and when the update runs only the
+     * edited lines are re-chunked, so the cost does not grow with the size of the file.
+     */
+    public void documentChanged(@NotNull VirtualFile file, @NotNull DocumentEvent event) {
+        Document document = event.getDocument();
+        int fromLine = document.getLineNumber(event.getOffset());
+        int toLine = document.getLineNumber(event.getOffset() + event.getNewLength()) + 1;
+        int lineDelta = StringUtil.countNewLines(event.getNewFragment()) - StringUtil.countNewLines(event.getOldFragment());
+        schedule(file, pending -> pending.addEdit(fromLine, toLine, lineDelta));
+    }
+
+    public void remove(@NotNull String path) {
+        PendingUpdate pending = pendingUpdates.remove(path);
+        if (pending != null) {
+            pending.cancel();
+        }
+        getIndex().removeFile(path);
+    }
+
+    private void schedule(@NotNull VirtualFile file, @NotNull Consumer<PendingUpdate> change) {
+        PendingUpdate pending = pendingUpdates.computeIfAbsent(file.getPath(), path -> new PendingUpdate());
+        synchronized (pending) {
+            change.accept(pending);
+            pending.cancel();
+            pending.future = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> runUpdate(file, pending), LlamaSettings.INDEX_UPDATE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runUpdate(@NotNull VirtualFile file, @NotNull PendingUpdate pending) {
+        // Edits run in write actions, so inside this read action no edit can slip in between taking the
+        // pending ranges and reading the document they refer to
+        boolean updated = ReadAction.compute(() -> {
+            if (!pendingUpdates.remove(file.getPath(), pending) || !file.isValid() || !isInOpenProject(file)) {
+                return true;
+            }
+            synchronized (pending) {
+                Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+                return !pending.full && document != null && updateLines(file, document, pending);
+            }
+        });
+
+        if (!updated) {
+            indexFile(file);
+        }
+    }
+
+    private boolean updateLines(@NotNull VirtualFile file, @NotNull Document document, @NotNull PendingUpdate pending) {
+        int margin = getIndex().getChunkLines();
+        int fromLine = Math.max(0, pending.fromLine - margin);
+        int toLine = Math.min(document.getLineCount(), pending.toLine + margin);
+        if (toLine <= fromLine) {
+            return true;
+        }
+
+        CharSequence window = document.getImmutableCharSequence().subSequence(
+                document.getLineStartOffset(fromLine), document.getLineEndOffset(toLine - 1));
+        return getIndex().updateLines(file.getPath(), LineIndex.of(window, fromLine),
+                pending.fromLine, pending.toLine, pending.lineDelta);
+    }
+
+    private void indexFile(@NotNull VirtualFile file) {
+        if (!file.isValid()) {
+            getIndex().removeFile(file.getPath());
+            return;
+        }
+        if (!isIndexable(file)) {
+            return;
+        }
+
+        try {
+            // Prefer the editor content, it may not have been saved yet
+            CharSequence text = ReadAction.compute(() -> {
+                Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+                return document != null ? document.getImmutableCharSequence() : null;
+            });
+            if (text == null) {
+                text = VfsUtilCore.loadText(file);
+            }
+            getIndex().indexFile(file.getPath(), text);
+        } catch (IOException e) {
+            LOG.debug("Could not index " + file.getPath(), e);
+        }
+    }
+
+    private boolean isIndexable(@NotNull VirtualFile file) {
+        return !file.isDirectory()
+                && !file.getFileType().isBinary()
+                && file.getLength() <= LlamaSettings.getInstance().getMaxIndexedFileKb() * 1024L;
+    }
+
+    private static boolean isInOpenProject(@NotNull VirtualFile file) {
+        for (Project project : ProjectManager.getInstance().getOpenProjects()) {
+            if (!project.isDisposed() && ProjectFileIndex.getInstance(project).isInContent(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private ContextIndex getIndex() {
+        return llamaCore.getExtraContext().getContextIndex();
+    }
+
+    /**
+     * The edits of a file that have not been indexed yet, as one line range in the current document.
+     */
+    private static final class PendingUpdate {
+        private ScheduledFuture<?> future;
+        private boolean full;
+        private int fromLine = Integer.MAX_VALUE;
+        private int toLine = -1;
+        private int lineDelta;
+
+        void markFull() {
+            full = true;
+        }
+
+        void addEdit(int from, int to, int delta) {
+            // Lines of earlier edits below this one moved with it
+            if (toLine > from) {
+                toLine += delta;
+            }
+            fromLine = Math.min(fromLine, from);
+            toLine = Math.max(toLine, to);
+            lineDelta += delta;
+        }
+
+        void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
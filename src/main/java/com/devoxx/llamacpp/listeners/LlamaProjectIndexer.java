@@ -0,0 +1,16 @@
+package com.devoxx.llamacpp.listeners;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Builds the context index for a project once it has been opened.
+ */
+public class LlamaProjectIndexer implements StartupActivity.DumbAware {
+
+    @Override
+    public void runActivity(@NotNull Project project) {
+        LlamaIndexUpdater.getInstance().indexProject(project);
+    }
+}
@@ -0,0 +1,37 @@
+package com.devoxx.llamacpp.listeners;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Forwards file system changes to the context index, so files changed outside the editors
+ * (VCS updates, generated sources, deletes and renames) stay searchable.
+ */
+public class LlamaVfsListener implements BulkFileListener {
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        LlamaIndexUpdater updater = LlamaIndexUpdater.getInstance();
+
+        for (VFileEvent event : events) {
+            if (event instanceof VFileDeleteEvent) {
+                updater.remove(event.getPath());
+            } else if (event instanceof VFileMoveEvent moveEvent) {
+                updater.remove(moveEvent.getOldPath());
+                updater.scheduleUpdate(moveEvent.getFile());
+            } else if (event instanceof VFilePropertyChangeEvent propertyEvent && propertyEvent.isRename()) {
+                updater.remove(propertyEvent.getOldPath());
+                updater.scheduleUpdate(propertyEvent.getFile());
+            } else if (event instanceof VFileContentChangeEvent || event instanceof VFileCreateEvent) {
+                VirtualFile file = event.getFile();
+                if (file != null) {
+                    updater.scheduleUpdate(file);
+                }
+            }
+        }
+    }
+}
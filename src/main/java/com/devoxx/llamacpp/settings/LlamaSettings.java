@@ -1,5 +1,7 @@
 package com.devoxx.llamacpp.settings;
 
+import com.devoxx.llamacpp.core.CacheKeyPolicy;
+import com.devoxx.llamacpp.core.CompletionSettings;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.*;
 import com.intellij.util.xmlb.XmlSerializerUtil;
@@ -14,7 +16,7 @@ import org.jetbrains.annotations.Nullable;
         name = "LlamaSettings",
         storages = @Storage("llama-settings.xml")
 )
-public class LlamaSettings implements PersistentStateComponent<LlamaSettings> {
+public class LlamaSettings implements PersistentStateComponent<LlamaSettings>, CompletionSettings {
     private String endpoint = "http://127.0.0.1:8012";
     private boolean autoTrigger = true;
     private String apiKey = "";
@@ -26,17 +28,31 @@ public class LlamaSettings implements PersistentStateComponent<LlamaSettings> {
     private boolean showInfo = true;
     private int maxLineSuffix = 8;
     private int maxCacheKeys = 250;
+    private int cacheKeyLines = 16;
+    private CacheKeyPolicy.Verification cacheKeyVerification = CacheKeyPolicy.Verification.NONE;
     private int ringChunks = 16;
     private int ringChunkSize = 64;
     private int ringScope = 1024;
     private int ringUpdateMs = 1000;
+    private int ringChunksPerFile = 4;
     private String language = "en";
     private boolean enabled = true;
     private boolean insertEnabled = false;
+    private boolean streamCompletions = true;
+    private boolean localCompletionEnabled = true;
+    private int extraContextTokens = 1024;
+    private int maxIndexedFiles = 2000;
+    private int maxIndexedFileKb = 256;
+    private int maxIndexMemoryKb = 32 * 1024;
+    private int maxContextMemoryKb = 4 * 1024;
+    private int minAcceptancePercent = 5;
+    private String triggerRules = DEFAULT_TRIGGER_RULES;
+    private boolean adaptiveDebounce = true;
+    private boolean autoConfigure = true;
+    private int completionCandidates = 1;
+    private boolean recordSessions = false;
 
-    public static final Integer RING_UPDATE_MIN_TIME_LAST_COMPL = 3000;
-    public static final Integer MAX_QUEUED_CHUNKS = 16;
-    public static final Integer MAX_LAST_PICK_LINE_DISTANCE = 32;
+    public static final Integer INDEX_UPDATE_DELAY_MS = 500;
 
     public static LlamaSettings getInstance() {
         return ApplicationManager.getApplication().getService(LlamaSettings.class);
@@ -1,5 +1,6 @@
 package com.devoxx.llamacpp.settings;
 
+import com.devoxx.llamacpp.IdeLlamaCore;
 import com.intellij.openapi.options.Configurable;
 import org.jetbrains.annotations .*;
 
@@ -10,6 +11,8 @@ public class LlamaSettingsConfigurable implements Configurable {
     private JPanel mainPanel;
     private JTextField endpointField;
     private JCheckBox autoTriggerCheckbox;
+    private JCheckBox autoConfigureCheckbox;
+    private JCheckBox recordSessionsCheckbox;
 
     @Nls(capitalization = Nls.Capitalization.Title)
     @Override
@@ -31,6 +34,10 @@ public class LlamaSettingsConfigurable implements Configurable {
 
         addLabelAndComponent("Endpoint:", endpointField = new JTextField(settings.getEndpoint()), c);
         addLabelAndComponent("Auto-trigger:", autoTriggerCheckbox = new JCheckBox("", settings.isAutoTrigger()), c);
+        addLabelAndComponent("Auto-configure from server:", autoConfigureCheckbox = new JCheckBox(
+                "Shrink the context to fit the server's slots, one request per slot", settings.isAutoConfigure()), c);
+        addLabelAndComponent("Record sessions:", recordSessionsCheckbox = new JCheckBox(
+                "Anonymized, to the llama-sessions log directory", settings.isRecordSessions()), c);
 
         return mainPanel;
     }
@@ -52,7 +59,9 @@ public class LlamaSettingsConfigurable implements Configurable {
     public boolean isModified() {
         LlamaSettings settings = LlamaSettings.getInstance();
         return !settings.getEndpoint().equals(endpointField.getText()) ||
-                settings.isAutoTrigger() != autoTriggerCheckbox.isSelected();
+                settings.isAutoTrigger() != autoTriggerCheckbox.isSelected() ||
+                settings.isAutoConfigure() != autoConfigureCheckbox.isSelected() ||
+                settings.isRecordSessions() != recordSessionsCheckbox.isSelected();
     }
 
     @Override
@@ -60,5 +69,8 @@ public class LlamaSettingsConfigurable implements Configurable {
         LlamaSettings settings = LlamaSettings.getInstance();
         settings.setEndpoint(endpointField.getText());
         settings.setAutoTrigger(autoTriggerCheckbox.isSelected());
+        settings.setAutoConfigure(autoConfigureCheckbox.isSelected());
+        settings.setRecordSessions(recordSessionsCheckbox.isSelected());
+        IdeLlamaCore.getInstance().updateSessionRecording();
     }
 }
@@ -1,8 +1,11 @@
 package com.devoxx.llamacpp.ui;
 
+import com.devoxx.llamacpp.completion.LlamaCompletionContributor;
 import com.devoxx.llamacpp.core.CompletionListener;
 import com.devoxx.llamacpp.core.LlamaResponse;
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.project.Project;
+import com.intellij.ui.components.JBList;
 import com.intellij.ui.components.JBScrollPane;
 import com.intellij.util.ui.JBUI;
 import com.devoxx.llamacpp.core.LlamaCore;
@@ -16,40 +19,45 @@ import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows the lines of the latest completions, newest first, in a list that only renders the visible
+ * rows. Completions are notified from any thread, sometimes many times per keystroke while
+ * streaming: they are queued and shown at most once per frame, in one model update. The listener
+ * is removed when the panel is disposed.
+ */
+public class LlamaCompletionPanel extends JPanel implements Disposable {
+
+    private static final int HISTORY_SIZE = 200;
+    private static final int FRAME_MS = 16;
 
-public class LlamaCompletionPanel extends JPanel {
     private final Project project;
     private final LlamaCore llamaCore;
     private final LlamaSettings settings;
     private final JCheckBox enabledCheckbox;
-    private final JPanel outputPanel;
+    private final HistoryModel historyModel = new HistoryModel();
+    private final ConcurrentLinkedQueue<LlamaResponse> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final Timer flushTimer = new Timer(FRAME_MS, e -> flush());
+    private final CompletionListener completionListener = this::onNewCompletion;
 
     public LlamaCompletionPanel(Project project) {
         this.project = project;
         this.llamaCore = ApplicationManager.getApplication().getService(LlamaCore.class);
         this.settings = LlamaSettings.getInstance();
 
-        outputPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        flushTimer.setRepeats(false);
+
+        JBList<CompletionItem> outputList = new JBList<>(historyModel);
+        // Rows of one height let the list lay out without measuring every row
+        outputList.setFixedCellHeight(outputList.getFontMetrics(outputList.getFont()).getHeight() + JBUI.scale(4));
 
         // Register as completion listener
-        llamaCore.addCompletionListener(new CompletionListener() {
-            @Override
-            public void onNewCompletion(LlamaResponse response) {
-                SwingUtilities.invokeLater(() -> {
-                    clearOutputPanel();
-                    if (response != null && response.content() != null) {
-                        String[] lines = response.content().split("\n");
-                        for (String line : lines) {
-                            if (!line.trim().isEmpty()) {
-                                CompletionItem completionItem = new CompletionItem(line, response.timings());
-                                insertCompletion(completionItem);
-                                outputPanel.add(new JLabel(completionItem.toString()));
-                            }
-                        }
-                    }
-                });
-            }
-        });
+        llamaCore.addCompletionListener(completionListener);
 
         setLayout(new BorderLayout());
         setBorder(JBUI.Borders.empty(5));
@@ -68,7 +76,7 @@ public class LlamaCompletionPanel extends JPanel {
         controlsPanel.add(insertCheckbox, BorderLayout.CENTER);
 
         // Add to scroll pane
-        JBScrollPane scrollPane = new JBScrollPane(outputPanel);
+        JBScrollPane scrollPane = new JBScrollPane(outputList);
         add(scrollPane, BorderLayout.CENTER);
 
         // Add toolbar with actions
@@ -78,6 +86,31 @@ public class LlamaCompletionPanel extends JPanel {
         add(controlsPanel, BorderLayout.NORTH);
     }
 
+    private void onNewCompletion(LlamaResponse response) {
+        if (response != null && response.content() != null) {
+            pending.add(response);
+            if (flushScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(flushTimer::restart);
+            }
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        // Hidden before the scheduled flush ran: without the reset no flush would be scheduled again
+        flushTimer.stop();
+        pending.clear();
+        flushScheduled.set(false);
+        super.removeNotify();
+    }
+
+    @Override
+    public void dispose() {
+        llamaCore.removeCompletionListener(completionListener);
+        flushTimer.stop();
+        pending.clear();
+    }
+
     private @NotNull JToolBar createToolbar() {
         JToolBar toolbar = new JToolBar();
         toolbar.setFloatable(false);
@@ -89,7 +122,7 @@ public class LlamaCompletionPanel extends JPanel {
 
         // Add clear button
         JButton clearButton = new JButton("Clear");
-        clearButton.addActionListener(e -> clearOutputPanel());
+        clearButton.addActionListener(e -> historyModel.clear());
         toolbar.add(clearButton);
 
         return toolbar;
@@ -102,52 +135,102 @@ public class LlamaCompletionPanel extends JPanel {
         Document document = editor.getDocument();
         int offset = editor.getCaretModel().getOffset();
 
-        // Get the text before and after cursor
-        String prefix = document.getText().substring(0, offset);
-        String suffix = document.getText().substring(offset);
-
-        // Clear existing completions
-        clearOutputPanel();
-
-        // Request new completion
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
-            var completion = llamaCore.getCompletion(prefix, suffix);
-            if (completion != null) {
-                SwingUtilities.invokeLater(() -> {
-                    String[] lines = completion.content().split("\n");
-                    for (String line : lines) {
-                        if (!line.trim().isEmpty()) {
-                            CompletionItem completionItem = new CompletionItem(line, completion.timings());
-                            insertCompletion(completionItem);
-                            outputPanel.add(new JLabel(completionItem.toString()));
-                        }
-                    }
-                });
-            }
-        });
+        // Get the text before and after cursor, limited to the prefix and suffix windows
+        String prefix = LlamaCompletionContributor.getPrefix(document, offset);
+        String suffix = LlamaCompletionContributor.getSuffix(document, offset);
+
+        // Request new completion, it comes back through the completion listener
+        ApplicationManager.getApplication().executeOnPooledThread(() -> llamaCore.getCompletion(prefix, suffix));
     }
 
-    private void clearOutputPanel() {
-        outputPanel.removeAll();
-        outputPanel.repaint();
+    /**
+     * Shows the completions notified since the last frame, on the UI thread.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<CompletionItem> items = new ArrayList<>();
+        LlamaResponse latest = null;
+        LlamaResponse response;
+        while ((response = pending.poll()) != null) {
+            String[] lines = response.content().split("\n");
+            // Newest completion first, its lines in order
+            for (int i = lines.length - 1; i >= 0; i--) {
+                if (!lines[i].trim().isEmpty()) {
+                    items.add(0, new CompletionItem(lines[i], response.timings()));
+                }
+            }
+            latest = response;
+        }
+        if (latest == null) {
+            return;
+        }
+
+        historyModel.prepend(items);
+        // The earlier completions of the frame were replaced by the latest one already
+        insertCompletion(latest.content());
     }
 
-    private void insertCompletion(CompletionItem item) {
-        if (settings.isInsertEnabled()) {
+    private void insertCompletion(String text) {
+        if (settings.isInsertEnabled() && !text.isBlank()) {
             Editor editor = FileEditorManager.getInstance(project).getSelectedTextEditor();
             if (editor == null) return;
 
             WriteCommandAction.runWriteCommandAction(project, () -> {
                 Document document = editor.getDocument();
                 int offset = editor.getCaretModel().getOffset();
-                document.insertString(offset, item.text());
-                editor.getCaretModel().moveToOffset(offset + item.text().length());
+                document.insertString(offset, text);
+                editor.getCaretModel().moveToOffset(offset + text.length());
             });
         }
     }
 
+    /**
+     * The last HISTORY_SIZE completion lines, newest first, changed with one event per update.
+     */
+    private static final class HistoryModel extends AbstractListModel<CompletionItem> {
+        private final List<CompletionItem> items = new ArrayList<>();
+
+        @Override
+        public int getSize() {
+            return items.size();
+        }
+
+        @Override
+        public CompletionItem getElementAt(int index) {
+            return items.get(index);
+        }
+
+        void prepend(@NotNull List<CompletionItem> newItems) {
+            List<CompletionItem> added = newItems.size() > HISTORY_SIZE
+                    ? newItems.subList(0, HISTORY_SIZE)
+                    : newItems;
+            if (added.isEmpty()) {
+                return;
+            }
+            items.addAll(0, added);
+            fireIntervalAdded(this, 0, added.size() - 1);
+
+            int oldSize = items.size();
+            if (oldSize > HISTORY_SIZE) {
+                items.subList(HISTORY_SIZE, oldSize).clear();
+                fireIntervalRemoved(this, HISTORY_SIZE, oldSize - 1);
+            }
+        }
+
+        void clear() {
+            int oldSize = items.size();
+            if (oldSize > 0) {
+                items.clear();
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+        }
+    }
+
     record CompletionItem(String text, LlamaResponse.Timings timings) {
         public @NotNull String toString() {
+            if (timings == null) {
+                return text;
+            }
             return String.format("%s (%.0f ms)",
                     text,
                     timings.prompt_ms());
@@ -0,0 +1,133 @@
+package com.devoxx.llamacpp.ui;
+
+import com.devoxx.llamacpp.core.CompletionMetrics;
+import com.devoxx.llamacpp.core.LatencyHistogram;
+import com.devoxx.llamacpp.core.LRUCache;
+import com.devoxx.llamacpp.core.LlamaCore;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.table.JBTable;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+
+/**
+ * Dashboard of the {@link CompletionMetrics}, refreshed every second while it is showing.
+ */
+public class LlamaMetricsPanel extends JPanel {
+
+    private static final int REFRESH_MS = 1000;
+    private static final String[] LATENCY_COLUMNS = {"Latency", "Count", "Mean", "p50", "p95", "p99"};
+    private static final String[] COUNTER_COLUMNS = {"Counter", "Value"};
+
+    private final CompletionMetrics metrics;
+    private final DefaultTableModel latencyModel = new DefaultTableModel(LATENCY_COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final DefaultTableModel counterModel = new DefaultTableModel(COUNTER_COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final Timer refreshTimer = new Timer(REFRESH_MS, e -> refresh());
+
+    public LlamaMetricsPanel() {
+        this.metrics = ApplicationManager.getApplication().getService(LlamaCore.class).getMetrics();
+
+        setLayout(new BorderLayout());
+        setBorder(JBUI.Borders.empty(5));
+
+        JPanel tables = new JPanel(new GridLayout(2, 1, 0, 5));
+        tables.add(new JBScrollPane(new JBTable(latencyModel)));
+        tables.add(new JBScrollPane(new JBTable(counterModel)));
+        add(tables, BorderLayout.CENTER);
+
+        JToolBar toolbar = new JToolBar();
+        toolbar.setFloatable(false);
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            metrics.reset();
+            refresh();
+        });
+        toolbar.add(resetButton);
+        add(toolbar, BorderLayout.NORTH);
+
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        latencyModel.setRowCount(0);
+        addLatencyRow("End to end", metrics.getEndToEnd());
+        addLatencyRow("Queue wait", metrics.getQueueWait());
+        addLatencyRow("Prompt", metrics.getPrompt());
+        addLatencyRow("Predicted", metrics.getPredicted());
+        addLatencyRow("Time to first byte", metrics.getTimeToFirstByte());
+        addLatencyRow("First byte after idle", metrics.getColdTimeToFirstByte());
+        addLatencyRow("Preconnect", metrics.getConnect());
+
+        counterModel.setRowCount(0);
+        for (CompletionMetrics.CacheTier tier : CompletionMetrics.CacheTier.values()) {
+            String name = tier == CompletionMetrics.CacheTier.COMPLETION ? "Completion cache" : "Prompt cache";
+            counterModel.addRow(new Object[]{name + " hits", metrics.getCacheHits(tier)});
+            counterModel.addRow(new Object[]{name + " misses", metrics.getCacheMisses(tier)});
+            counterModel.addRow(new Object[]{name + " hit rate", percent(metrics.getCacheHitRate(tier))});
+        }
+        counterModel.addRow(new Object[]{"Speculative entry hits",
+                metrics.getCompletionCacheHits(LRUCache.Origin.SPECULATIVE)});
+        counterModel.addRow(new Object[]{"Candidate requests", metrics.getCandidateRequests()});
+        counterModel.addRow(new Object[]{"Reranked completions", metrics.getRerankedCompletions()});
+        counterModel.addRow(new Object[]{"Candidate cycles", metrics.getCandidateCycles()});
+        counterModel.addRow(new Object[]{"Prefetch requests", metrics.getPrefetchRequests()});
+        counterModel.addRow(new Object[]{"Prefetch batch size", String.format("%.1f", metrics.getPrefetchBatchSize())});
+        counterModel.addRow(new Object[]{"Prefetch dropped", metrics.getPrefetchDropped()});
+        counterModel.addRow(new Object[]{"Tokens cached ratio", percent(metrics.getTokensCachedRatio())});
+        counterModel.addRow(new Object[]{"Cancelled streams", metrics.getCancelledStreams()});
+        counterModel.addRow(new Object[]{"Unused n_predict tokens", metrics.getUnusedPredictTokens()});
+        counterModel.addRow(new Object[]{"Dropped requests", metrics.getDroppedRequests()});
+        counterModel.addRow(new Object[]{"Stale connections", metrics.getStaleConnections()});
+        counterModel.addRow(new Object[]{"Debounced requests", metrics.getDebouncedRequests()});
+        counterModel.addRow(new Object[]{"Skipped by position", metrics.getPositionSkippedRequests()});
+        counterModel.addRow(new Object[]{"Local only by position", metrics.getPositionLocalRequests()});
+        counterModel.addRow(new Object[]{"Acceptance rate", percent(metrics.getAcceptanceRate())});
+        counterModel.addRow(new Object[]{"Suppressed requests", metrics.getSuppressedRequests()});
+        counterModel.addRow(new Object[]{"Saved request rate", percent(metrics.getSavedRequestRate())});
+    }
+
+    private void addLatencyRow(String name, @NotNull LatencyHistogram histogram) {
+        latencyModel.addRow(new Object[]{
+                name,
+                histogram.getCount(),
+                millis(histogram.getMeanMs()),
+                millis(histogram.getPercentileMs(0.50)),
+                millis(histogram.getPercentileMs(0.95)),
+                millis(histogram.getPercentileMs(0.99))
+        });
+    }
+
+    private static @NotNull String millis(double value) {
+        return String.format("%.1f ms", value);
+    }
+
+    private static @NotNull String percent(double ratio) {
+        return String.format("%.1f%%", ratio * 100);
+    }
+}
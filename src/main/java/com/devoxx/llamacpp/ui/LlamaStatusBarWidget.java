@@ -1,10 +1,14 @@
 package com.devoxx.llamacpp.ui;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.StatusBar;
 import com.intellij.openapi.wm.StatusBarWidget;
 import com.intellij.util.Consumer;
+import com.devoxx.llamacpp.core.LlamaCore;
 import com.devoxx.llamacpp.core.LlamaResponse;
+import com.devoxx.llamacpp.core.LlamaServer;
+import com.devoxx.llamacpp.core.ServerCapabilities;
 import com.devoxx.llamacpp.settings.LlamaSettings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -69,15 +73,16 @@ public class LlamaStatusBarWidget implements StatusBarWidget,
         } else {
             if (settings.isShowInfo()) {
                 currentText = String.format("llama-idea | c: %d/%d | p: %d (%.2f ms, %.2f t/s) | " +
-                                "g: %d (%.2f ms, %.2f t/s) | t: %d ms",
+                                "g: %d (%.2f ms, %.2f t/s) | s: %d | t: %d ms",
                         data.tokens_cached(),
-                        Integer.parseInt((String)data.generation_settings().get("n_ctx")),
+                        getContextSize(data),
                         data.timings().prompt_n(),
                         data.timings().prompt_ms(),
                         data.timings().prompt_per_second(),
                         data.timings().predicted_n(),
                         data.timings().predicted_ms(),
                         data.timings().predicted_per_second(),
+                        data.tokens_saved(),
                         elapsed);
             } else {
                 currentText = String.format("llama-idea | t: %d ms", elapsed);
@@ -89,6 +94,20 @@ public class LlamaStatusBarWidget implements StatusBarWidget,
         }
     }
 
+    private int getContextSize(@NotNull LlamaResponse data) {
+        // Cancelled streams never receive the generation settings from the server
+        Object nCtx = data.generation_settings() == null ? null : data.generation_settings().get(LlamaServer.N_CTX);
+        if (nCtx instanceof Number number) {
+            return number.intValue();
+        }
+        if (nCtx == null) {
+            ServerCapabilities capabilities = ApplicationManager.getApplication().getService(LlamaCore.class)
+                    .getServerCapabilities();
+            return capabilities != null ? capabilities.contextSize() : 0;
+        }
+        return Integer.parseInt(nCtx.toString());
+    }
+
 //    public void showCachedInfo() {
 //        long elapsed = System.currentTimeMillis() - completionStartTime;
 //
@@ -12,7 +12,12 @@ public class LlamaToolWindowFactory implements ToolWindowFactory {
     public void createToolWindowContent(@NotNull Project project, @NotNull ToolWindow toolWindow) {
         LlamaCompletionPanel completionPanel = new LlamaCompletionPanel(project);
         Content content = ContentFactory.getInstance()
-                .createContent(completionPanel, "", false);
+                .createContent(completionPanel, "Completions", false);
+        content.setDisposer(completionPanel);
         toolWindow.getContentManager().addContent(content);
+
+        Content metricsContent = ContentFactory.getInstance()
+                .createContent(new LlamaMetricsPanel(), "Metrics", false);
+        toolWindow.getContentManager().addContent(metricsContent);
     }
 }